@@ -8,6 +8,16 @@ var ioc = {
 		// 0 none 1 common 2 pay 3 ad
 		"netty.module" : 1,
 		"netty.ssl" : 8443,
+		// SSL证书及私钥的PEM文件, 为空时使用自签名证书(仅用于测试)
+		"netty.sslCertFile" : "",
+		"netty.sslKeyFile" : "",
+		"netty.sslKeyPassword" : "",
+		// SSL引擎: auto, openssl, jdk. OpenSSL需以mvn -Popenssl引入netty-tcnative
+		"netty.sslProvider" : "auto",
+		// SSL session cache的大小及超时(秒)
+		"netty.sslSessionCacheSize" : 20480,
+		"netty.sslSessionTimeout" : 3600,
+		"netty.sslSessionTickets" : true,
 
 		"netty.ioBossNum" : 5,
 		"netty.ioWorkerNum" : 20,
@@ -17,13 +27,125 @@ var ioc = {
 		"netty.SO_SNDBUF" : 65536,
 		"netty.SO_KEEPALIVE" : false,
 		"netty.SO_REUSEADDR" : true,
+		"netty.SO_REUSEPORT" : true,
+		// acceptor数, 大于1时在epoll下以SO_REUSEPORT绑定多个监听channel
+		"netty.acceptorNum" : 1,
 		"netty.TCP_NODELAY" : true,
+		// 连接写缓冲的低/高水位, 超过高水位时分块响应暂停写出
+		"netty.writeBufferLowWaterMark" : 32768,
+		"netty.writeBufferHighWaterMark" : 65536,
+		// 分块响应每块的大小
+		"netty.responseChunkSize" : 8192,
+		// 合并flush: 一次读取中产生的多个响应合并为一次写出, 连续这么多次flush后强制写出一次, 0为关闭
+		"netty.flushConsolidation" : 256,
+
+		// PooledByteBufAllocator配置, -1为netty默认值, chunk大小为 pageSize << maxOrder
+		"netty.allocPreferDirect" : true,
+		"netty.allocHeapArenas" : -1,
+		"netty.allocDirectArenas" : -1,
+		"netty.allocPageSize" : -1,
+		"netty.allocMaxOrder" : -1,
+		"netty.allocTinyCacheSize" : -1,
+		"netty.allocSmallCacheSize" : -1,
+		"netty.allocNormalCacheSize" : -1,
+		"netty.allocUseCacheForAllThreads" : true,
+
+		// 读完请求头的超时(毫秒), 超时返回408并关闭连接
 		"netty.CONNECT_TIMEOUT_MILLIS" : 4000,
+		// 请求body两次读取之间, 及响应写出没有进展的超时(毫秒)
 		"netty.SO_TIMEOUT" : 6000,
 
 		// Request Handler 对象是否使用对象连接池
 		"netty.useObjectPool" : true,
 
+		// HTTP/1.1 长连接模式, false则每个响应后关闭连接
+		"netty.httpKeepAlive" : true,
+		// 每个长连接最多处理的请求数, 0为不限制
+		"netty.keepAliveMaxRequests" : 10000,
+		// 长连接空闲超时时间(毫秒), 0为不限制
+		"netty.keepAliveIdleTimeout" : 60000,
+		// AsyncRequestHandler的默认期限(毫秒), 超过时返回504, 0为不限制
+		"netty.asyncTimeout" : 30000,
+		// 内存中session的上限个数, 0为不使用session
+		"netty.sessionMaxSize" : 100000,
+		// session的空闲超时时间(秒)
+		"netty.sessionTimeout" : 1800,
+		// 保存session id的cookie名
+		"netty.sessionCookieName" : "SESSIONID",
+		// 是否支持HTTP/2, SSL时ALPN协商h2, 非SSL时为h2c
+		"netty.http2" : false,
+		// HTTP/1.x解码的上限(字节): 请求行, 请求头, 每块body
+		"netty.httpMaxInitialLineLength" : 4096,
+		"netty.httpMaxHeaderSize" : 8192,
+		"netty.httpMaxChunkSize" : 8192,
+		// 是否校验请求头中的非法字符
+		"netty.httpValidateHeaders" : false,
+		// 解码请求行/请求头的初始缓冲大小
+		"netty.httpInitialBufferSize" : 128,
+		// 请求body的最大长度, 超过时返回413
+		"netty.httpMaxContentLength" : 1048576,
+		// 单独指定的路由body上限, 格式: /path=bytes,/prefix/*=bytes; 流式接收的路由没有指定时不限制
+		"netty.httpRouteMaxContentLength" : "/upload=67108864",
+		// 以一个HttpServerCodec代替分开的decoder和encoder
+		"netty.httpServerCodec" : false,
+
+		// 按Accept-Encoding压缩响应body
+		"netty.compression" : false,
+		// 支持的编码, 按优先顺序: gzip, deflate, snappy, lz4
+		"netty.compressionEncodings" : "gzip,deflate",
+		// 小于此长度(字节)的响应不压缩
+		"netty.compressionMinSize" : 1024,
+		// 压缩的Content-Type前缀
+		"netty.compressionTypes" : "text/,application/json,application/javascript,application/xml,application/cbor,image/svg+xml",
+		// 压缩线程数, 大于0时不小于compressionOffloadSize的响应不在I/O线程上压缩
+		"netty.compressionThreads" : 0,
+		"netty.compressionOffloadSize" : 65536,
+		// 压缩线程的队列长度, 已满时在I/O线程上压缩
+		"netty.compressionQueueSize" : 1024,
+
+		// 业务处理的执行方式: inline, group, pool, virtual(JDK21+)
+		"netty.executorMode" : "inline",
+		"netty.executorThreads" : 64,
+		// 业务任务队列长度, 队列满时返回503
+		"netty.executorQueueSize" : 10000,
+
+		// 服务器统计信息的访问路径, 为空则不开放
+		"netty.statsPath" : "",
+
+		// 静态文件的url前缀(例如/static), 为空则不开放
+		"netty.staticPath" : "",
+		// 静态文件的根目录
+		"netty.staticRoot" : "static",
+		// 缓存的已打开文件数
+		"netty.staticFileCacheSize" : 256,
+		// 静态文件响应的Cache-Control max-age(秒)
+		"netty.staticMaxAge" : 3600,
+
+		// 限流: 每个客户端IP对每个路由每秒的请求数, 超过时返回429, 0为不限制
+		"netty.rateLimitRate" : 0,
+		// 允许的突发请求数
+		"netty.rateLimitBurst" : 20,
+		// 单独指定的路由速率, 格式: /path=rate,/prefix/*=rate, rate为0则该路由不限流
+		"netty.rateLimitRoutes" : "",
+		// 令牌桶总数的上限
+		"netty.rateLimitMaxClients" : 100000,
+		// 可信的反向代理IP, 逗号分隔; 只有来自这些地址的连接才按X-Forwarded-For区分客户端
+		"netty.rateLimitTrustedProxies" : "",
+
+		// 过载保护: 同时处理中的请求数上限, 超过时直接返回503, 0为不限制
+		"netty.admissionMaxInFlight" : 0,
+		// 每个路由同时处理中的请求数上限, 0为不限制
+		"netty.admissionRouteMaxInFlight" : 0,
+		// 单独指定的路由上限, 格式: /path=limit,/prefix/*=limit
+		"netty.admissionRouteLimits" : "",
+		// I/O线程待执行任务数的上限, 0为不限制
+		"netty.admissionMaxPendingTasks" : 0,
+		// 按响应延迟在admissionMinInFlight与admissionMaxInFlight之间自动调整上限
+		"netty.admissionAdaptive" : false,
+		"netty.admissionMinInFlight" : 16,
+		// 自动调整的目标响应延迟(毫秒)
+		"netty.admissionLatencyTarget" : 200,
+
 		// init_cache_span_time 初始化缓存的间隔时长
 		"netty.initCacheSpanTime" : 1800000,
 
@@ -0,0 +1,86 @@
+package com.fqserver.core.utils;
+
+import io.netty.util.concurrent.DefaultEventExecutor;
+import io.netty.util.concurrent.EventExecutor;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 多个线程同时在一个Pool上obtain+free的开销.
+ * sharedQueue在JMH的普通线程上执行, 只使用共享队列; nettyThread在每个JMH线程各自的Netty线程上成批执行,
+ * 使用线程本地栈.
+ *
+ * mvn -Pjmh test-compile exec:exec -Djmh.args="PoolBenchmark -t 8"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(1)
+public class PoolBenchmark {
+
+    private static final int BATCH = 1000;
+
+    private final Pool<Object> pool = new Pool<Object>(1024) {
+        @Override
+        protected Object newObject() {
+            return new Object();
+        }
+    };
+
+    @State(Scope.Thread)
+    public static class NettyThread {
+        EventExecutor executor;
+
+        @Setup
+        public void start() {
+            executor = new DefaultEventExecutor();
+        }
+
+        @TearDown
+        public void stop() {
+            executor.shutdownGracefully(0, 0, TimeUnit.SECONDS).syncUninterruptibly();
+        }
+    }
+
+    @Benchmark
+    public Object sharedQueue() {
+        Object object = pool.obtain();
+        pool.free(object);
+        return object;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public Object nettyThread(NettyThread thread) throws InterruptedException, ExecutionException {
+        return thread.executor.submit(new Callable<Object>() {
+            @Override
+            public Object call() {
+                Object object = null;
+                for (int i = 0; i < BATCH; i++) {
+                    object = pool.obtain();
+                    pool.free(object);
+                }
+                return object;
+            }
+        }).get();
+    }
+}
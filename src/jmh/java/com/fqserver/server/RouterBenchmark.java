@@ -0,0 +1,99 @@
+package com.fqserver.server;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 1000个静态路由加50个前缀路由时, Router与原来的查找方式(HashMap精确匹配, 再逐级截短匹配前缀路由)的比较.
+ * 查找的路径中命中静态路由, 命中前缀路由和没有匹配的各占三分之一.
+ *
+ * mvn -Pjmh test-compile exec:exec -Djmh.args="RouterBenchmark"
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RouterBenchmark {
+
+    public static class Handler extends RequestHandler {}
+
+    private static final int STATIC_ROUTES = 1000;
+    private static final int PREFIX_ROUTES = 50;
+    // 2的幂, 以掩码轮换路径
+    private static final int PATHS = 1024;
+
+    private final Map<String, Class<? extends RequestHandler>> urlMap = new HashMap<String, Class<? extends RequestHandler>>();
+    private Router router;
+    private final String[] paths = new String[PATHS];
+    private int next;
+
+    @Setup
+    public void setup() {
+        for (int i = 0; i < STATIC_ROUTES; i++) {
+            urlMap.put("/api/v" + (i % 4) + "/module" + (i / 4) + "/action", Handler.class);
+        }
+        for (int i = 0; i < PREFIX_ROUTES; i++) {
+            urlMap.put("/files/bucket" + i + UrlMap.WILDCARD, Handler.class);
+        }
+        router = new Router(urlMap,
+                            Collections.<String, Map<String, Class<? extends RequestHandler>>> emptyMap(),
+                            Collections.<Class<?>, Supplier<? extends RequestHandler>> emptyMap());
+
+        for (int i = 0; i < PATHS; i++) {
+            switch (i % 3) {
+            case 0:
+                paths[i] = "/api/v" + (i % 4) + "/module" + (i * 7 % (STATIC_ROUTES / 4)) + "/action";
+                break;
+            case 1:
+                paths[i] = "/files/bucket" + (i % PREFIX_ROUTES) + "/2020/01/img" + i + ".png";
+                break;
+            default:
+                paths[i] = "/api/v" + (i % 4) + "/unknown" + i + "/action";
+                break;
+            }
+        }
+    }
+
+    private String nextPath() {
+        return paths[next++ & (PATHS - 1)];
+    }
+
+    @Benchmark
+    public Router.Match router() {
+        return router.find(null, nextPath());
+    }
+
+    @Benchmark
+    public Class<? extends RequestHandler> hashMapPrefixScan() {
+        String path = nextPath();
+        Class<? extends RequestHandler> cls = urlMap.get(path);
+        if (cls != null) {
+            return cls;
+        }
+
+        int i = path.length();
+        while (i > 0 && (i = path.lastIndexOf('/', i - 1)) >= 0) {
+            cls = urlMap.get(path.substring(0, i) + UrlMap.WILDCARD);
+            if (cls != null) {
+                return cls;
+            }
+        }
+        return null;
+    }
+}
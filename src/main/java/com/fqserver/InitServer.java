@@ -1,21 +1,37 @@
 package com.fqserver;
 
-import com.fqserver.action.IndexDo;
-import com.fqserver.core.utils.Pools;
+import com.fqserver.server.HandlerPools;
+import com.fqserver.server.HttpServer;
+import com.fqserver.server.Router;
+import com.fqserver.server.ServerContext;
+import com.fqserver.server.StaticFileRequestHandler;
+import com.fqserver.server.StatsRequestHandler;
 import com.fqserver.server.UrlMap;
 
 public class InitServer {
 
 	public  static void init() {
 		
-		//加载url路由
-		
-		IndexDo.initUrl();
+		//加载@Route在编译时生成的路由表
+		UrlMap.load();
+
+		//统计信息路由
+		HttpServer server = ServerContext.httpServer;
+		if (server != null && server.getConfig().statsPath.length() > 0) {
+			UrlMap.urlMap.put(server.getConfig().statsPath, StatsRequestHandler.class);
+		}
+
+		//静态文件路由
+		if (server != null && server.getConfig().staticPath.length() > 0) {
+			UrlMap.urlMap.put(server.getConfig().staticPath + UrlMap.WILDCARD, StaticFileRequestHandler.class);
+		}
 
-		//加载对象池
-		for(String key : UrlMap.urlMap.keySet()){
-			
-		Pools.set(UrlMap.urlMap.get(key), null);}
+		//编译路由并建立对象池
+		Router router = UrlMap.compile();
+		HandlerPools pools = server != null ? HandlerPools.create(server.getConfig()) : null;
+		if (pools != null) {
+			pools.install(router);
+		}
 	}
 
 }
@@ -1,17 +1,34 @@
 package com.fqserver.action;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.stream.ChunkedInput;
+import io.netty.util.CharsetUtil;
+
+import java.security.MessageDigest;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+
+import com.fqserver.core.http.HttpUtil;
+import com.fqserver.server.AsyncRequestHandler;
+import com.fqserver.server.RequestHandler;
 import com.fqserver.server.RequestHandlerV2;
-import com.fqserver.server.UrlMap;
+import com.fqserver.server.Route;
+import com.fqserver.server.StreamingRequestHandler;
 
 public class IndexDo {
 	
+	// /delay的延迟和期限上限(毫秒), 客户端不能让请求占用更久
+	static final long MAX_DELAY = 10000;
 	
-	public static void initUrl(){
-		System.out.println("----------加载url路由---------------");
-		
-		UrlMap.urlMap.put("/", index.class);
-	}
+	// /export的行数上限
+	static final long MAX_EXPORT_ROWS = 1000000;
 	
+	@Route(path = "/")
 	public static class index extends RequestHandlerV2{
 		
 	
@@ -27,11 +44,136 @@ public class IndexDo {
 		
 	}
 	
+	/**
+	 * 异步处理的示例: ms毫秒后在定时回调中写出响应, 等待期间不占用I/O线程或业务线程.
+	 * ms和deadline都不超过MAX_DELAY
+	 */
+	@Route(path = "/delay")
+	public static class delay extends AsyncRequestHandler{
+		
+		@Override
+		public CompletionStage<?> getAsync() {
+			final long ms = longParameter(this, "ms", 100, MAX_DELAY);
+			setDeadline(longParameter(this, "deadline", 0, MAX_DELAY));
+			
+			final CompletableFuture<Void> done = new CompletableFuture<Void>();
+			getCtx().executor().schedule(new Runnable() {
+				@Override
+				public void run() {
+					write("------server delay " + ms + "ms------");
+					done.complete(null);
+				}
+			}, ms, TimeUnit.MILLISECONDS);
+			return done;
+		}
+	}
 	
-
-	
+	/**
+	 * 分块响应的示例: 按需逐行生成, 客户端读得慢时暂停生成, 不在内存中拼出整个响应.
+	 * rows不超过MAX_EXPORT_ROWS
+	 */
+	@Route(path = "/export")
+	public static class export extends RequestHandlerV2{
+		
+		@Override
+		public void get() {
+			final int rows = (int) longParameter(this, "rows", 1000, MAX_EXPORT_ROWS);
+			
+			writeChunked(HttpResponseStatus.OK, HttpUtil.TYPE_PLAIN, new ChunkedInput<ByteBuf>() {
+				private int row;
+				
+				@Override
+				public boolean isEndOfInput() {
+					return row >= rows;
+				}
+				
+				@Override
+				public ByteBuf readChunk(ByteBufAllocator allocator) {
+					if (isEndOfInput()) {
+						return null;
+					}
+					ByteBuf buf = allocator.buffer(8192);
+					while (row < rows && buf.writableBytes() > 64) {
+						row++;
+						buf.writeCharSequence(row + ",row-" + row + "\n", CharsetUtil.UTF_8);
+					}
+					return buf;
+				}
+				
+				@Override
+				@Deprecated
+				public ByteBuf readChunk(ChannelHandlerContext ctx) {
+					return readChunk(ctx.alloc());
+				}
+				
+				@Override
+				public long length() {
+					return -1;
+				}
+				
+				@Override
+				public long progress() {
+					return row;
+				}
+				
+				@Override
+				public void close() {}
+			});
+		}
+		
+	}
 	
+	/**
+	 * 流式接收body的示例: 边接收边计算长度和md5, 不缓存整个body.
+	 * 流式接收的路由默认不限制body长度, 上限在netty.httpRouteMaxContentLength中配置(/upload=67108864)
+	 */
+	@Route(path = "/upload")
+	public static class upload extends StreamingRequestHandler{
+		
+		private MessageDigest md5;
+		private long size;
+		
+		@Override
+		protected void onStart() throws Exception {
+			md5 = MessageDigest.getInstance("MD5");
+			size = 0;
+		}
+		
+		@Override
+		protected void onContent(ByteBuf chunk) {
+			size += chunk.readableBytes();
+			md5.update(chunk.nioBuffer());
+		}
+		
+		@Override
+		protected void onEnd() {
+			sendMap.put("size", size);
+			sendMap.put("md5", ByteBufUtil.hexDump(md5.digest()));
+			write(sendMap);
+		}
+		
+		@Override
+		public void reset() {
+			super.reset();
+			md5 = null;
+			size = 0;
+		}
+		
+	}
 	
+	/**
+	 * 客户端传入的数值参数, 没有或不是数字时取defaultValue, 限制在0到max之间
+	 */
+	static long longParameter(RequestHandler handler, String name, long defaultValue, long max) {
+		long value;
+		try {
+			value = Long.parseLong(handler.getParameter(name, String.valueOf(defaultValue)).trim());
+		}
+		catch (NumberFormatException e) {
+			value = defaultValue;
+		}
+		return Math.max(0, Math.min(value, max));
+	}
 
 }
 
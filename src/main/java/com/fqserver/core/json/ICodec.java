@@ -2,6 +2,7 @@ package com.fqserver.core.json;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 
 import com.fasterxml.jackson.core.JsonParseException;
 import com.fasterxml.jackson.core.JsonProcessingException;
@@ -21,4 +22,9 @@ public interface ICodec {
 
     byte[] encodeByte(Object value) throws JsonProcessingException;
 
+    /**
+     * 直接编码到out中, 不生成中间的byte[], 不关闭out
+     */
+    void encode(Object value, OutputStream out) throws IOException;
+
 }
\ No newline at end of file
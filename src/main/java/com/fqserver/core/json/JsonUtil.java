@@ -2,7 +2,10 @@ package com.fqserver.core.json;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonParseException;
 import com.fasterxml.jackson.core.JsonParser;
@@ -72,6 +75,9 @@ public class JsonUtil {
             catch (IllegalAccessException e) {
                 System.out.println("IllegalAccessException:" + e);
             }
+            // 编码/解码的缓冲区由每个线程(I/O线程及业务线程)的BufferRecycler重用
+            this.mapper.getFactory().enable(JsonFactory.Feature.USE_THREAD_LOCAL_FOR_BUFFER_RECYCLING);
+
             // 设置输入时忽略JSON字符串中存在而Java对象实际没有的属性
             this.mapper.disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
 
@@ -151,5 +157,23 @@ public class JsonUtil {
         public byte[] encodeByte(Object value) throws JsonProcessingException {
             return this.mapper.writeValueAsBytes(value);
         }
+
+        /*
+         * (non-Javadoc)
+         * 
+         * @see com.sdk.core.json.ICodec#encode(java.lang.Object, java.io.OutputStream)
+         */
+        @Override
+        public void encode(Object value, OutputStream out) throws IOException {
+            JsonGenerator generator = this.mapper.getFactory().createGenerator(out, JsonEncoding.UTF8);
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            try {
+                this.mapper.writeValue(generator, value);
+            }
+            finally {
+                // 写出剩余的数据并把缓冲区还给BufferRecycler
+                generator.close();
+            }
+        }
     }
 }
@@ -16,35 +16,88 @@
 
 package com.fqserver.core.utils;
 
+import io.netty.util.concurrent.FastThreadLocal;
+import io.netty.util.concurrent.FastThreadLocalThread;
+
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * A pool of objects that can be reused to avoid allocation.
+ * <p>
+ * In the style of Netty's {@code Recycler}, each thread keeps its own bounded
+ * stack of free objects, so {@link #obtain()} and {@link #free(Object)} on
+ * the same thread (an event loop or a handler thread) take no lock. Objects
+ * freed while the local stack is full go to a bounded shared overflow queue
+ * that every thread can obtain from; when that is full too the object is
+ * dropped and counted as an eviction.
+ * <p>
+ * Only Netty threads ({@link FastThreadLocalThread}: event loops and the
+ * handler executors) keep a local stack. Other threads, such as virtual
+ * threads that live for a single request, use the shared overflow only.
  * 
  * @author Nathan Sweet
  */
 abstract public class Pool<T> {
-    /** The maximum number of objects that will be pooled. */
+    /** Default number of free objects kept by each thread. */
+    public static final int DEFAULT_MAX_PER_THREAD = 32;
+
+    /** The maximum number of objects that will be pooled in the shared overflow. */
     public final int max;
-    /** The highest number of free objects. Can be reset any time. */
-    public int peak;
+    /** The maximum number of free objects kept by each thread. */
+    public final int maxPerThread;
+    /** The highest number of free objects in the shared overflow. Can be reset any time. */
+    public final AtomicInteger peak = new AtomicInteger();
+
+    private final ConcurrentLinkedQueue<T> shared = new ConcurrentLinkedQueue<T>();
+    // ConcurrentLinkedQueue.size() is O(n)
+    private final AtomicInteger sharedSize = new AtomicInteger();
+
+    // incremented by clear(), stacks of an older generation are dropped on next use
+    private volatile int generation;
+
+    private final FastThreadLocal<Stack> local = new FastThreadLocal<Stack>() {
+        @Override
+        protected Stack initialValue() {
+            return new Stack(maxPerThread);
+        }
+    };
 
-    private final ConcurrentLinkedQueue<T> freeObjects;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder sharedHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    // free objects in all thread stacks and the shared overflow
+    private final LongAdder idle = new LongAdder();
 
-    /** Creates a pool with an initial capacity of 16 and no maximum. */
+    /** Creates a pool with no maximum. */
     public Pool() {
         this(Integer.MAX_VALUE);
     }
 
     /**
      * @param max
-     *            The maximum number of free objects to store in this pool.
-     *            (default Integer.MAX_VALUE)
+     *            The maximum number of free objects to store in the shared
+     *            overflow. (default Integer.MAX_VALUE)
      */
     public Pool(int max) {
-        freeObjects = new ConcurrentLinkedQueue<T>();
+        this(max, DEFAULT_MAX_PER_THREAD);
+    }
+
+    /**
+     * @param max
+     *            The maximum number of free objects to store in the shared
+     *            overflow.
+     * @param maxPerThread
+     *            The maximum number of free objects kept by each thread.
+     */
+    public Pool(int max, int maxPerThread) {
         this.max = max;
+        this.maxPerThread = Math.max(0, maxPerThread);
     }
 
     abstract protected T newObject();
@@ -53,26 +106,88 @@ abstract public class Pool<T> {
      * Returns an object from this pool. The object may be new (from
      * {@link #newObject()}) or reused (previously {@link #free(Object) freed}).
      */
-    public synchronized T obtain() {
-        // synchronized (freeObjects) {
-        return freeObjects.isEmpty() ? newObject() : freeObjects.poll();
-        // }
+    public T obtain() {
+        Stack stack = stack();
+        T object = stack != null ? stack.pop() : null;
+        if (object != null) {
+            idle.decrement();
+            hits.increment();
+            return object;
+        }
+
+        object = shared.poll();
+        if (object != null) {
+            sharedSize.decrementAndGet();
+            idle.decrement();
+            sharedHits.increment();
+            return object;
+        }
+
+        misses.increment();
+        return newObject();
     }
 
     /**
      * Puts the specified object in the pool, making it eligible to be returned
-     * by {@link #obtain()}. If the pool already contains {@link #max} free
-     * objects, the specified object is reset but not added to the pool.
+     * by {@link #obtain()}. If the calling thread's stack and the shared
+     * overflow are full, the specified object is reset but not added to the
+     * pool.
      */
-    public synchronized void free(T object) {
+    public void free(T object) {
         if (object == null)
             throw new IllegalArgumentException("object cannot be null.");
         if (object instanceof Poolable)
             ((Poolable) object).reset();
-        if (freeObjects.size() < max) {
-            freeObjects.add(object);
-            peak = Math.max(peak, freeObjects.size());
+        Stack stack = stack();
+        if (stack != null && stack.push(object)) {
+            idle.increment();
+        } else if (!offerShared(object)) {
+            evictions.increment();
+        }
+    }
+
+    private boolean offerShared(T object) {
+        int size = sharedSize.incrementAndGet();
+        if (size > max) {
+            sharedSize.decrementAndGet();
+            return false;
         }
+        shared.offer(object);
+        idle.increment();
+        int p;
+        while (size > (p = peak.get()) && !peak.compareAndSet(p, size)) {
+            // raced with another thread, retry unless it recorded a higher peak
+        }
+        return true;
+    }
+
+    /**
+     * Adds up to the specified number of new objects to the shared overflow,
+     * so the first requests of every thread don't have to create them.
+     * 
+     * @return the number of objects added, less than size if the shared
+     *         overflow is full
+     */
+    public int fill(int size) {
+        for (int i = 0; i < size; i++) {
+            if (!offerShared(newObject()))
+                return i;
+        }
+        return size;
+    }
+
+    /** The calling thread's stack, null if it does not keep one. */
+    private Stack stack() {
+        if (maxPerThread == 0 || !(Thread.currentThread() instanceof FastThreadLocalThread))
+            return null;
+        Stack stack = local.get();
+        int gen = generation;
+        if (stack.generation != gen) {
+            idle.add(-stack.size);
+            stack.clear();
+            stack.generation = gen;
+        }
+        return stack;
     }
 
     /**
@@ -81,33 +196,91 @@ abstract public class Pool<T> {
      * 
      * @see #free(Object)
      */
-    public synchronized void freeAll(List<T> objects) {
+    public void freeAll(List<T> objects) {
         if (objects == null)
             throw new IllegalArgumentException("object cannot be null.");
-        ConcurrentLinkedQueue<T> freeObjects = this.freeObjects;
 
         for (int i = 0; i < objects.size(); i++) {
             T object = objects.get(i);
             if (object == null)
                 continue;
-            if (object instanceof Poolable)
-                ((Poolable) object).reset();
-            if (freeObjects.size() < max)
-                freeObjects.add(object);
+            free(object);
         }
-        peak = Math.max(peak, freeObjects.size());
     }
 
-    /** Removes all free objects from this pool. */
+    /**
+     * Removes all free objects from this pool. Stacks of other threads are
+     * dropped the next time those threads use the pool.
+     */
     public synchronized void clear() {
-        // synchronized (freeObjects) {
-        freeObjects.clear();
-        // }
+        generation++;
+        T object;
+        while ((object = shared.poll()) != null) {
+            sharedSize.decrementAndGet();
+            idle.decrement();
+        }
     }
 
-    /** The number of objects available to be obtained. */
+    /**
+     * The number of objects available to be obtained by the calling thread:
+     * its own stack plus the shared overflow.
+     */
     public int getFree() {
-        return freeObjects.size();
+        Stack stack = stack();
+        return (stack != null ? stack.size : 0) + sharedSize.get();
+    }
+
+    /**
+     * Counters: hits (local stack), sharedHits, misses (new objects) and
+     * evictions (freed objects dropped because the pool was full), and the
+     * number of free objects in all threads (idle) and in the shared overflow.
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<String, Object>();
+        stats.put("max", max);
+        stats.put("maxPerThread", maxPerThread);
+        stats.put("idle", idle.sum());
+        stats.put("hits", hits.sum());
+        stats.put("sharedHits", sharedHits.sum());
+        stats.put("misses", misses.sum());
+        stats.put("evictions", evictions.sum());
+        stats.put("shared", sharedSize.get());
+        stats.put("peak", peak.get());
+        return stats;
+    }
+
+    /** Free objects of one thread, only accessed by that thread. */
+    private final class Stack {
+        private final Object[] elements;
+        private int size;
+        int generation;
+
+        Stack(int capacity) {
+            this.elements = new Object[capacity];
+            this.generation = Pool.this.generation;
+        }
+
+        boolean push(T object) {
+            if (size == elements.length)
+                return false;
+            elements[size++] = object;
+            return true;
+        }
+
+        @SuppressWarnings("unchecked")
+        T pop() {
+            if (size == 0)
+                return null;
+            T object = (T) elements[--size];
+            elements[size] = null;
+            return object;
+        }
+
+        void clear() {
+            while (size > 0) {
+                elements[--size] = null;
+            }
+        }
     }
 
     /**
@@ -16,31 +16,48 @@
 
 package com.fqserver.core.utils;
 
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Stores a map of {@link Pool}s (usually {@link ReflectionPool}s) by type for
  * convenient static access.
+ * <p>
+ * Lookups go through a {@link ClassValue}, which caches the pool slot on the
+ * class itself, so {@link #obtain(Class)} and {@link #free(Object)} take no
+ * lock and do no hashing once a type has been seen.
  * 
  * @author Nathan Sweet
  */
 public class Pools {
-    static private final HashMap<Class<?>, Pool<?>> typePools = new HashMap<Class<?>, Pool<?>>();
+    static private final ConcurrentHashMap<Class<?>, Slot> typePools = new ConcurrentHashMap<Class<?>, Slot>();
+
+    static private final ClassValue<Slot> slots = new ClassValue<Slot>() {
+        @Override
+        protected Slot computeValue(Class<?> type) {
+            Slot slot = new Slot();
+            Slot existing = typePools.putIfAbsent(type, slot);
+            return existing != null ? existing : slot;
+        }
+    };
 
     /**
      * Returns a new or existing pool for the specified type, stored in a Class
      * to {@link Pool} map. Note the max size is ignored if this is not the
      * first time this pool has been requested.
      */
+    @SuppressWarnings("unchecked")
     static public <T> Pool<T> get(Class<T> type, int max) {
-        Pool pool = typePools.get(type);
+        Slot slot = slots.get(type);
+        Pool pool = slot.pool;
         if (pool == null) {
-            synchronized (typePools) {
-                pool = typePools.get(type);
+            synchronized (slot) {
+                pool = slot.pool;
                 if (pool == null) {
                     pool = new ReflectionPool<T>(type, max);
-                    typePools.put(type, pool);
+                    slot.pool = pool;
                 }
             }
         }
@@ -57,10 +74,13 @@ public class Pools {
 
     /**
      * Sets an existing pool for the specified type, stored in a Class to
-     * {@link Pool} map.
+     * {@link Pool} map. A null pool is created on first use.
      */
     static public <T> void set(Class<T> type, Pool<T> pool) {
-        typePools.put(type, pool);
+        Slot slot = slots.get(type);
+        synchronized (slot) {
+            slot.pool = pool;
+        }
     }
 
     /** Obtains an object from the {@link #get(Class) pool}. */
@@ -69,10 +89,11 @@ public class Pools {
     }
 
     /** Frees an object from the {@link #get(Class) pool}. */
+    @SuppressWarnings("unchecked")
     static public void free(Object object) {
         if (object == null)
             throw new IllegalArgumentException("Object cannot be null.");
-        Pool pool = typePools.get(object.getClass());
+        Pool pool = slots.get(object.getClass()).pool;
         if (pool == null)
             return; // Ignore freeing an object that was never retained.
         pool.free(object);
@@ -95,6 +116,7 @@ public class Pools {
      *            If true, objects don't need to be from the same pool but the
      *            pool must be looked up for each object.
      */
+    @SuppressWarnings("unchecked")
     static public void freeAll(List objects, boolean samePool) {
         if (objects == null)
             throw new IllegalArgumentException("Objects cannot be null.");
@@ -104,7 +126,7 @@ public class Pools {
             if (object == null)
                 continue;
             if (pool == null) {
-                pool = typePools.get(object.getClass());
+                pool = slots.get(object.getClass()).pool;
                 if (pool == null)
                     continue; // Ignore freeing an object that was never
                               // retained.
@@ -115,5 +137,24 @@ public class Pools {
         }
     }
 
+    /**
+     * Returns the {@link Pool#stats() counters} of every pool created so far,
+     * keyed by the pooled type's name.
+     */
+    static public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<String, Object>();
+        for (Map.Entry<Class<?>, Slot> e : typePools.entrySet()) {
+            Pool<?> pool = e.getValue().pool;
+            if (pool != null)
+                stats.put(e.getKey().getName(), pool.stats());
+        }
+        return stats;
+    }
+
+    /** The pool of one type, null until it is set or first requested. */
+    static private final class Slot {
+        volatile Pool<?> pool;
+    }
+
     private Pools() {}
 }
@@ -16,59 +16,60 @@
 
 package com.fqserver.core.utils;
 
+import java.util.function.Supplier;
+
 import com.fqserver.core.utils.reflect.ClassReflection;
-import com.fqserver.core.utils.reflect.Constructor;
 import com.fqserver.core.utils.reflect.ReflectionException;
 
 
 
 
 /**
- * Pool that creates new instances of a type using reflection. The type must
- * have a zero argument constructor. {@link Constructor#setAccessible(boolean)}
- * will be used if the class and/or constructor is not visible.
+ * Pool that creates new instances of a type with a factory resolved once from
+ * its zero argument constructor (see {@link ClassReflection#newFactory(Class)}),
+ * so no reflective call is made when the pool grows. The constructor is made
+ * accessible if the class and/or constructor is not visible.
  * 
  * @author Nathan Sweet
  */
 public class ReflectionPool<T> extends Pool<T> {
-    private final Constructor constructor;
+    private final Class<T> type;
+    private final Supplier<T> factory;
 
     public ReflectionPool(Class<T> type) {
         this(type, Integer.MAX_VALUE);
     }
 
     public ReflectionPool(Class<T> type, int max) {
-        super(max);
-        constructor = findConstructor(type);
-        if (constructor == null)
-            throw new RuntimeException("Class cannot be created (missing no-arg constructor): "
-                                       + type.getName());
+        this(type, max, null);
     }
 
-    private Constructor findConstructor(Class<T> type) {
-        try {
-            return ClassReflection.getConstructor(type, (Class[]) null);
-        }
-        catch (Exception ex1) {
+    /**
+     * @param factory
+     *            creates new instances, resolved from the zero argument
+     *            constructor when null
+     */
+    public ReflectionPool(Class<T> type, int max, Supplier<T> factory) {
+        super(max);
+        this.type = type;
+        if (factory == null) {
             try {
-                Constructor constructor = ClassReflection.getDeclaredConstructor(type,
-                                                                                 (Class[]) null);
-                constructor.setAccessible(true);
-                return constructor;
+                factory = ClassReflection.newFactory(type);
             }
-            catch (ReflectionException ex2) {
-                return null;
+            catch (ReflectionException e) {
+                throw new RuntimeException("Class cannot be created (missing no-arg constructor): "
+                                           + type.getName(), e);
             }
         }
+        this.factory = factory;
     }
 
     protected T newObject() {
         try {
-            return (T) constructor.newInstance((Object[]) null);
+            return factory.get();
         }
         catch (Exception ex) {
-            throw new RuntimeException("Unable to create new instance: "
-                                       + constructor.getDeclaringClass().getName(), ex);
+            throw new RuntimeException("Unable to create new instance: " + type.getName(), ex);
         }
     }
 }
@@ -16,7 +16,13 @@
 
 package com.fqserver.core.utils.reflect;
 
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Modifier;
+import java.util.function.Supplier;
 
 /**
  * Utilities for Class reflection.
@@ -152,6 +158,69 @@ public final class ClassReflection {
         }
     }
 
+    /**
+     * Returns a {@link Supplier} that creates instances of the supplied class
+     * with its zero argument constructor. Public constructors of public
+     * classes are bound through {@link LambdaMetafactory}, so calling the
+     * supplier is a plain constructor call; other constructors are made
+     * accessible and invoked through a {@link MethodHandle}.
+     */
+    @SuppressWarnings("unchecked")
+    static public <T> Supplier<T> newFactory(final Class<T> c) throws ReflectionException {
+        if (c.isInterface() || Modifier.isAbstract(c.getModifiers())) {
+            throw new ReflectionException("Class cannot be created (abstract): " + c.getName());
+        }
+
+        java.lang.reflect.Constructor<T> constructor;
+        try {
+            constructor = c.getDeclaredConstructor();
+        }
+        catch (NoSuchMethodException e) {
+            throw new ReflectionException("Class cannot be created (missing no-arg constructor): "
+                                          + c.getName(),
+                                          e);
+        }
+
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        if (Modifier.isPublic(c.getModifiers()) && Modifier.isPublic(constructor.getModifiers())) {
+            try {
+                MethodHandle handle = lookup.findConstructor(c, MethodType.methodType(void.class));
+                CallSite site = LambdaMetafactory.metafactory(lookup,
+                                                              "get",
+                                                              MethodType.methodType(Supplier.class),
+                                                              MethodType.methodType(Object.class),
+                                                              handle,
+                                                              MethodType.methodType(c));
+                return (Supplier<T>) site.getTarget().invoke();
+            }
+            catch (Throwable e) {
+                // e.g. an enclosing class is not public, fall back to a MethodHandle
+            }
+        }
+
+        try {
+            constructor.setAccessible(true);
+            final MethodHandle handle = lookup.unreflectConstructor(constructor);
+            return new Supplier<T>() {
+                @Override
+                public T get() {
+                    try {
+                        return (T) handle.invoke();
+                    }
+                    catch (RuntimeException e) {
+                        throw e;
+                    }
+                    catch (Throwable e) {
+                        throw new RuntimeException("Unable to create new instance: " + c.getName(), e);
+                    }
+                }
+            };
+        }
+        catch (Exception e) {
+            throw new ReflectionException("Class cannot be created: " + c.getName(), e);
+        }
+    }
+
     /**
      * Returns an array of {@link Method} containing the public member methods
      * of the class represented by the supplied Class.
@@ -0,0 +1,52 @@
+package com.fqserver.server;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+
+import java.net.SocketAddress;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 挂在服务端(监听)channel上, 统计该acceptor接受的连接数
+ */
+public class AcceptCounter extends ChannelInboundHandlerAdapter {
+    private final int index;
+    private final LongAdder accepted = new LongAdder();
+
+    private volatile SocketAddress localAddress;
+
+    public AcceptCounter(int index) {
+        this.index = index;
+    }
+
+    @Override
+    public void channelActive(ChannelHandlerContext ctx) throws Exception {
+        localAddress = ctx.channel().localAddress();
+        super.channelActive(ctx);
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        // 服务端channel读到的消息即新接受的子连接
+        accepted.increment();
+        ctx.fireChannelRead(msg);
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public long getAccepted() {
+        return accepted.sum();
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<String, Object>();
+        stats.put("index", index);
+        stats.put("localAddress", String.valueOf(localAddress));
+        stats.put("accepted", accepted.sum());
+        return stats;
+    }
+}
@@ -0,0 +1,255 @@
+package com.fqserver.server;
+
+import io.netty.channel.Channel;
+import io.netty.channel.EventLoop;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.util.concurrent.SingleThreadEventExecutor;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 过载保护的准入控制, 在请求头到达时决定是否接受请求, 拒绝的请求由AdmissionHandler直接返回503.
+ *
+ * <ul>
+ * <li>全局: 同时处理中(已收到请求头, 还没有写出完整响应)的请求数不超过上限</li>
+ * <li>路由: 每个路由(注册的路径, 同一个handler类的多个路径分别计数)同时处理中的请求数不超过上限</li>
+ * <li>I/O线程: 连接所在event loop的待执行任务数不超过上限</li>
+ * </ul>
+ *
+ * 开启admissionAdaptive时, 全局上限每秒按最近一秒的平均响应延迟调整(gradient方式):
+ * 延迟高于目标时按target/latency的比例收缩(最多减半), 否则逐步放大, 上限保持在admissionMinInFlight与admissionMaxInFlight之间.
+ */
+public class AdmissionController {
+
+    // 没有上限的请求(例如统计信息的访问路径)使用的许可
+    static final Permit UNLIMITED = new Permit(null, null);
+
+    // 未开启自动调整又没有配置全局上限时
+    private static final int NO_LIMIT = Integer.MAX_VALUE;
+
+    private final int maxInFlight;
+    private final int minInFlight;
+    private final int routeMaxInFlight;
+    private final int maxPendingTasks;
+    private final boolean adaptive;
+    private final long latencyTargetNanos;
+    private final String statsPath;
+
+    // 单独指定了上限的路由
+    private final Map<String, Integer> routeLimits;
+    private final ConcurrentHashMap<Router.Route, Route> routes = new ConcurrentHashMap<Router.Route, Route>();
+    // 没有匹配的路由的请求共用
+    private final Route unmatched;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile int limit;
+
+    private final LongAdder admitted = new LongAdder();
+    private final LongAdder rejectedInFlight = new LongAdder();
+    private final LongAdder rejectedRoute = new LongAdder();
+    private final LongAdder rejectedPendingTasks = new LongAdder();
+
+    // 最近一秒的响应延迟, 由tick()汇总
+    private final LongAdder latencySum = new LongAdder();
+    private final LongAdder latencyCount = new LongAdder();
+    private volatile long latencyMillis;
+
+    /**
+     * 没有配置任何上限时返回null, 此时不在pipeline中加入准入控制
+     */
+    public static AdmissionController create(NettyConfig config) {
+        if (config.admissionMaxInFlight <= 0
+            && config.admissionRouteMaxInFlight <= 0
+            && config.admissionRouteLimits.trim().length() == 0
+            && config.admissionMaxPendingTasks <= 0) {
+            return null;
+        }
+        return new AdmissionController(config);
+    }
+
+    AdmissionController(NettyConfig config) {
+        this.maxInFlight = config.admissionMaxInFlight > 0 ? config.admissionMaxInFlight : NO_LIMIT;
+        this.minInFlight = Math.max(1, Math.min(config.admissionMinInFlight, this.maxInFlight));
+        this.routeMaxInFlight = config.admissionRouteMaxInFlight;
+        this.maxPendingTasks = config.admissionMaxPendingTasks;
+        this.adaptive = config.admissionAdaptive && config.admissionMaxInFlight > 0;
+        this.latencyTargetNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1,
+                                                                         config.admissionLatencyTarget));
+        this.statsPath = config.statsPath;
+        this.routeLimits = UrlMap.parseRouteValues(config.admissionRouteLimits);
+        this.limit = this.maxInFlight;
+        this.unmatched = new Route("unmatched", routeMaxInFlight > 0 ? routeMaxInFlight : NO_LIMIT);
+    }
+
+    /**
+     * 在I/O线程上收到请求头时调用, 返回null表示拒绝
+     */
+    Permit acquire(Channel channel, HttpRequest req) {
+        EventLoop loop = channel.eventLoop();
+        String uri = req.uri();
+        if (isStatsPath(uri)) {
+            return UNLIMITED;
+        }
+
+        if (maxPendingTasks > 0
+            && loop instanceof SingleThreadEventExecutor
+            && ((SingleThreadEventExecutor) loop).pendingTasks() > maxPendingTasks) {
+            rejectedPendingTasks.increment();
+            return null;
+        }
+
+        if (inFlight.incrementAndGet() > limit) {
+            inFlight.decrementAndGet();
+            rejectedInFlight.increment();
+            return null;
+        }
+
+        Route route = null;
+        if (routeMaxInFlight > 0 || !routeLimits.isEmpty()) {
+            route = route(UrlMap.match(channel, req));
+            if (route.inFlight.incrementAndGet() > route.limit) {
+                route.inFlight.decrementAndGet();
+                route.rejected.increment();
+                inFlight.decrementAndGet();
+                rejectedRoute.increment();
+                return null;
+            }
+        }
+
+        admitted.increment();
+        return new Permit(this, route);
+    }
+
+    private boolean isStatsPath(String uri) {
+        if (statsPath.length() == 0 || !uri.startsWith(statsPath)) {
+            return false;
+        }
+        return uri.length() == statsPath.length() || uri.charAt(statsPath.length()) == '?';
+    }
+
+    private Route route(Router.Match match) {
+        if (match == null) {
+            return unmatched;
+        }
+        Router.Route key = match.getRoute();
+        Route route = routes.get(key);
+        if (route == null) {
+            Route created = new Route(key.toString(), routeLimit(key));
+            route = routes.putIfAbsent(key, created);
+            if (route == null) {
+                route = created;
+            }
+        }
+        return route;
+    }
+
+    private int routeLimit(Router.Route key) {
+        Integer limit = UrlMap.routeValue(routeLimits, key);
+        if (limit != null && limit > 0) {
+            return limit;
+        }
+        return routeMaxInFlight > 0 ? routeMaxInFlight : NO_LIMIT;
+    }
+
+    void release(Permit permit) {
+        inFlight.decrementAndGet();
+        if (permit.route != null) {
+            permit.route.inFlight.decrementAndGet();
+        }
+        if (permit.start > 0) {
+            latencySum.add(System.nanoTime() - permit.start);
+            latencyCount.increment();
+        }
+    }
+
+    /**
+     * 每秒调用一次, 汇总最近一秒的响应延迟并调整上限
+     */
+    public synchronized void tick() {
+        long count = latencyCount.sumThenReset();
+        long sum = latencySum.sumThenReset();
+        if (count == 0) {
+            return;
+        }
+
+        long latency = sum / count;
+        latencyMillis = TimeUnit.NANOSECONDS.toMillis(latency);
+
+        if (adaptive) {
+            int current = limit;
+            double gradient = Math.max(0.5, Math.min(1.0, (double) latencyTargetNanos / latency));
+            int newLimit = (int) (current * gradient + Math.sqrt(current));
+            limit = Math.max(minInFlight, Math.min(maxInFlight, newLimit));
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<String, Object>();
+        stats.put("inFlight", inFlight.get());
+        stats.put("limit", limit == NO_LIMIT ? 0 : limit);
+        stats.put("latencyMillis", latencyMillis);
+        stats.put("admitted", admitted.sum());
+        stats.put("rejectedInFlight", rejectedInFlight.sum());
+        stats.put("rejectedRoute", rejectedRoute.sum());
+        stats.put("rejectedPendingTasks", rejectedPendingTasks.sum());
+
+        Map<String, Object> routeStats = new LinkedHashMap<String, Object>();
+        List<Route> all = new ArrayList<Route>(routes.values());
+        all.add(unmatched);
+        for (Route route : all) {
+            if (route.limit == NO_LIMIT) {
+                continue;
+            }
+            Map<String, Object> r = new LinkedHashMap<String, Object>();
+            r.put("inFlight", route.inFlight.get());
+            r.put("limit", route.limit);
+            r.put("rejected", route.rejected.sum());
+            routeStats.put(route.name, r);
+        }
+        if (!routeStats.isEmpty()) {
+            stats.put("routes", routeStats);
+        }
+        return stats;
+    }
+
+    private static final class Route {
+        final String name;
+        final int limit;
+        final AtomicInteger inFlight = new AtomicInteger();
+        final LongAdder rejected = new LongAdder();
+
+        Route(String name, int limit) {
+            this.name = name;
+            this.limit = limit;
+        }
+    }
+
+    /**
+     * 一个已接受的请求, 写出完整响应(或连接关闭)时释放
+     */
+    static final class Permit {
+        private final AdmissionController controller;
+        private final Route route;
+
+        // 请求body接收完的时间, 从此时起计算响应延迟
+        long start;
+
+        Permit(AdmissionController controller, Route route) {
+            this.controller = controller;
+            this.route = route;
+        }
+
+        void release() {
+            if (controller != null) {
+                controller.release(this);
+            }
+        }
+    }
+}
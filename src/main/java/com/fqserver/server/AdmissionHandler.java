@@ -0,0 +1,70 @@
+package com.fqserver.server;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponseStatus;
+
+import java.util.ArrayDeque;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 准入控制阶段: 请求头到达时由AdmissionController决定是否接受, 拒绝时返回预先生成的503.
+ *
+ * 每个已接受的请求持有一个许可, 在该请求的最终响应写出时释放; 响应按请求的顺序写出, 因此许可按先进先出对应.
+ */
+public class AdmissionHandler extends RequestGate {
+
+    private static Logger log = LoggerFactory.getLogger(AdmissionHandler.class);
+
+    private static final Rejection SERVICE_UNAVAILABLE = new Rejection(HttpResponseStatus.SERVICE_UNAVAILABLE,
+                                                                       1);
+
+    private final AdmissionController controller;
+
+    // 已接受还没有应答的请求
+    private final ArrayDeque<AdmissionController.Permit> permits = new ArrayDeque<AdmissionController.Permit>();
+
+    public AdmissionHandler(AdmissionController controller) {
+        super(SERVICE_UNAVAILABLE);
+        this.controller = controller;
+    }
+
+    @Override
+    protected boolean accept(ChannelHandlerContext ctx, HttpRequest req) {
+        AdmissionController.Permit permit = controller.acquire(ctx.channel(), req);
+        if (permit == null) {
+            if (log.isDebugEnabled()) {
+                log.debug("overloaded, reject request:" + req.uri());
+            }
+            return false;
+        }
+        permits.add(permit);
+        return true;
+    }
+
+    @Override
+    protected void requestRead(ChannelHandlerContext ctx) {
+        AdmissionController.Permit permit = permits.peekLast();
+        if (permit != null) {
+            permit.start = System.nanoTime();
+        }
+    }
+
+    @Override
+    protected void requestCompleted(ChannelHandlerContext ctx) {
+        AdmissionController.Permit permit = permits.poll();
+        if (permit != null) {
+            permit.release();
+        }
+    }
+
+    @Override
+    protected void connectionClosed() {
+        AdmissionController.Permit permit;
+        while ((permit = permits.poll()) != null) {
+            permit.release();
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.fqserver.server;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 异步的RequestHandler: getAsync/postAsync返回CompletionStage, 方法返回后不占用I/O线程或业务线程,
+ * 例如在异步HTTP客户端或数据库驱动的回调中写出响应, 再完成返回的CompletionStage.
+ *
+ * <ul>
+ * <li>CompletionStage完成(正常或异常)时请求结束: 没有写出响应时返回500, 之后handler才放回对象池</li>
+ * <li>超过期限(NettyConfig.asyncTimeout或setDeadline)时取消CompletionStage; 还没有写出响应则返回504并关闭连接,
+ * 已开始写出响应(例如分块响应还在写出)则直接关闭连接</li>
+ * <li>连接在完成前关闭时取消CompletionStage</li>
+ * </ul>
+ *
+ * 超时或连接关闭时请求即被释放, 不等待CompletionStage完成: 请求body(getHttpContent, getPostStr, getPostAttrs)
+ * 需在getAsync/postAsync返回前读取, 读取时复制一份, 回调中使用读取的结果, 不能再访问请求的content().
+ * 超时或连接关闭后isExpired()为true, 之后写出的响应被丢弃; 与超时同时写出时只有先开始的一个写出.
+ * 已超时的handler可能仍被回调引用, 不会放回对象池. 同一连接上的后续请求在当前请求结束后才处理.
+ */
+public abstract class AsyncRequestHandler extends RequestHandler {
+
+    // 不需要等待的请求
+    protected static final CompletionStage<Void> COMPLETED = CompletableFuture.completedFuture(null);
+
+    // 响应的状态, 由写出响应的线程与超时的定时器竞争, 先改变状态的一方写出响应
+    private static final int OPEN = 0;
+    private static final int RESPONDED = 1;
+    private static final int EXPIRED = 2;
+
+    // 本次请求的期限(毫秒), 0时使用NettyConfig.asyncTimeout
+    private long deadline = 0;
+    private final AtomicInteger state = new AtomicInteger(OPEN);
+
+    /**
+     * 默认同步执行get(), 需要异步时重写
+     */
+    public CompletionStage<?> getAsync() {
+        get();
+        return COMPLETED;
+    }
+
+    /**
+     * 默认同步执行post(), 需要异步时重写
+     */
+    public CompletionStage<?> postAsync() {
+        post();
+        return COMPLETED;
+    }
+
+    @Override
+    public void doGet() {
+        getAsync();
+    }
+
+    @Override
+    public void doPost() {
+        postAsync();
+    }
+
+    /**
+     * 本次请求的期限(毫秒), 在getAsync/postAsync返回前设置, 小于等于0时使用NettyConfig.asyncTimeout
+     */
+    public void setDeadline(long millis) {
+        this.deadline = millis;
+    }
+
+    public long getDeadline() {
+        return deadline;
+    }
+
+    /**
+     * 总是复制请求body: 请求在超时或连接关闭时释放, 底层数组随后可能被重用
+     */
+    @Override
+    public byte[] getHttpContent() {
+        byte[] content = super.getHttpContent();
+        if (httpContent == null) {
+            httpContent = ByteBufToBytes.read(request.content());
+            return httpContent;
+        }
+        return content;
+    }
+
+    /**
+     * 请求已超时或连接已关闭, 不应再写出响应
+     */
+    public boolean isExpired() {
+        return state.get() == EXPIRED;
+    }
+
+    /**
+     * 超时或连接关闭时调用, 返回true表示还没有开始写出响应, 由调用者写出超时的响应
+     */
+    boolean expire() {
+        for (;;) {
+            int s = state.get();
+            if (s == EXPIRED) {
+                return false;
+            }
+            if (state.compareAndSet(s, EXPIRED)) {
+                return s == OPEN;
+            }
+        }
+    }
+
+    @Override
+    boolean startResponse() {
+        for (;;) {
+            int s = state.get();
+            if (s == EXPIRED) {
+                return false;
+            }
+            if (s == RESPONDED || state.compareAndSet(OPEN, RESPONDED)) {
+                return true;
+            }
+        }
+    }
+
+    @Override
+    public void reset() {
+        super.reset();
+        deadline = 0;
+        state.set(OPEN);
+    }
+}
@@ -0,0 +1,80 @@
+package com.fqserver.server;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.util.ReferenceCountUtil;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 请求body长度检查阶段: Content-Length超过路由的上限时返回预先生成的413, 不读取body, 也不会发送100 Continue.
+ *
+ * 没有Content-Length(分块上传)的请求在接收过程中累计长度, 超过上限时已有部分body交给了后面的阶段, 只能关闭连接.
+ */
+public class BodyLimitHandler extends RequestGate {
+
+    private static Logger log = LoggerFactory.getLogger(BodyLimitHandler.class);
+
+    private static final Rejection REQUEST_ENTITY_TOO_LARGE = new Rejection(HttpResponseStatus.REQUEST_ENTITY_TOO_LARGE,
+                                                                            0);
+
+    private final BodyLimits limits;
+
+    // 当前请求剩余可接收的body长度, 小于0为不限制
+    private long remaining = BodyLimits.UNLIMITED;
+
+    // 分块上传超过上限, 连接正在关闭
+    private boolean overflowed;
+
+    public BodyLimitHandler(BodyLimits limits) {
+        super(REQUEST_ENTITY_TOO_LARGE);
+        this.limits = limits;
+    }
+
+    @Override
+    protected boolean accept(ChannelHandlerContext ctx, HttpRequest req) {
+        remaining = BodyLimits.UNLIMITED;
+        if (!req.decoderResult().isSuccess()) {
+            return true;
+        }
+
+        long limit = limits.limit(UrlMap.match(ctx.channel(), req));
+        if (limit < 0) {
+            return true;
+        }
+
+        long length = HttpUtil.getContentLength(req, -1L);
+        if (length > limit) {
+            limits.rejected();
+            if (log.isDebugEnabled()) {
+                log.debug("request body too large, reject request:" + req.uri() + " " + length);
+            }
+            return false;
+        }
+        remaining = limit;
+        return true;
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (overflowed) {
+            ReferenceCountUtil.release(msg);
+            return;
+        }
+        if (remaining >= 0 && msg instanceof HttpContent && !(msg instanceof HttpRequest)) {
+            remaining -= ((HttpContent) msg).content().readableBytes();
+            if (remaining < 0) {
+                overflowed = true;
+                limits.overflowed();
+                ReferenceCountUtil.release(msg);
+                ctx.close();
+                return;
+            }
+        }
+        super.channelRead(ctx, msg);
+    }
+}
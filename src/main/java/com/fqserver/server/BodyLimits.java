@@ -0,0 +1,94 @@
+package com.fqserver.server;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 请求body的长度上限, 由BodyLimitHandler在请求头到达时按Content-Length检查, 超过时直接返回413,
+ * 不再读取和聚合body.
+ *
+ * 聚合的路由默认上限为httpMaxContentLength; 流式接收(StreamingRequestHandler)的路由不经过聚合,
+ * 只在httpRouteMaxContentLength中单独指定时才有上限. httpRouteMaxContentLength按注册的路径指定,
+ * 同一个handler类的多个路径各自有上限.
+ */
+public class BodyLimits {
+
+    // 不限制
+    static final long UNLIMITED = -1;
+
+    private final int maxContentLength;
+    private final int aggregatorMaxContentLength;
+
+    // 单独指定了上限的路由
+    private final Map<String, Integer> routeLimits;
+    private final ConcurrentHashMap<Router.Route, Long> limits = new ConcurrentHashMap<Router.Route, Long>();
+
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder overflowed = new LongAdder();
+
+    BodyLimits(NettyConfig config) {
+        this.maxContentLength = config.httpMaxContentLength;
+        this.routeLimits = UrlMap.parseRouteValues(config.httpRouteMaxContentLength);
+
+        int max = config.httpMaxContentLength;
+        for (Integer limit : routeLimits.values()) {
+            max = Math.max(max, limit);
+        }
+        this.aggregatorMaxContentLength = max;
+    }
+
+    /**
+     * HttpObjectAggregator的上限, 取所有路由上限中最大的, 各路由的上限由BodyLimitHandler检查
+     */
+    public int aggregatorMaxContentLength() {
+        return aggregatorMaxContentLength;
+    }
+
+    /**
+     * 匹配到的路由的body上限, 没有上限时返回UNLIMITED; match为null(没有匹配的路由)时为httpMaxContentLength
+     */
+    long limit(Router.Match match) {
+        if (match == null) {
+            return defaultLimit();
+        }
+        Router.Route route = match.getRoute();
+        Long limit = limits.get(route);
+        if (limit == null) {
+            limit = newLimit(route);
+            limits.putIfAbsent(route, limit);
+        }
+        return limit;
+    }
+
+    private long newLimit(Router.Route route) {
+        Integer limit = UrlMap.routeValue(routeLimits, route);
+        if (limit != null) {
+            return limit > 0 ? limit : UNLIMITED;
+        }
+        if (StreamingRequestHandler.class.isAssignableFrom(route.getHandler())) {
+            return UNLIMITED;
+        }
+        return defaultLimit();
+    }
+
+    private long defaultLimit() {
+        return maxContentLength > 0 ? maxContentLength : UNLIMITED;
+    }
+
+    void rejected() {
+        rejected.increment();
+    }
+
+    void overflowed() {
+        overflowed.increment();
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<String, Object>();
+        stats.put("rejected", rejected.sum());
+        stats.put("overflowed", overflowed.sum());
+        return stats;
+    }
+}
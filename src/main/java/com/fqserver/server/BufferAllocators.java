@@ -0,0 +1,95 @@
+package com.fqserver.server;
+
+import io.netty.buffer.PoolArenaMetric;
+import io.netty.buffer.PoolChunkListMetric;
+import io.netty.buffer.PoolChunkMetric;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocatorMetric;
+import io.netty.util.internal.PlatformDependent;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 根据NettyConfig创建服务器共用的PooledByteBufAllocator, 并导出其内存统计
+ */
+public final class BufferAllocators {
+
+    /**
+     * 创建allocator, 配置项小于0时使用netty的默认值
+     */
+    public static PooledByteBufAllocator create(NettyConfig config) {
+        return new PooledByteBufAllocator(config.allocPreferDirect,
+                                          orDefault(config.allocHeapArenas,
+                                                    PooledByteBufAllocator.defaultNumHeapArena()),
+                                          orDefault(config.allocDirectArenas,
+                                                    PooledByteBufAllocator.defaultNumDirectArena()),
+                                          orDefault(config.allocPageSize,
+                                                    PooledByteBufAllocator.defaultPageSize()),
+                                          orDefault(config.allocMaxOrder,
+                                                    PooledByteBufAllocator.defaultMaxOrder()),
+                                          orDefault(config.allocTinyCacheSize,
+                                                    PooledByteBufAllocator.defaultTinyCacheSize()),
+                                          orDefault(config.allocSmallCacheSize,
+                                                    PooledByteBufAllocator.defaultSmallCacheSize()),
+                                          orDefault(config.allocNormalCacheSize,
+                                                    PooledByteBufAllocator.defaultNormalCacheSize()),
+                                          config.allocUseCacheForAllThreads);
+    }
+
+    private static int orDefault(int value, int defaultValue) {
+        return value < 0 ? defaultValue : value;
+    }
+
+    public static Map<String, Object> stats(PooledByteBufAllocator allocator) {
+        PooledByteBufAllocatorMetric metric = allocator.metric();
+
+        Map<String, Object> stats = new LinkedHashMap<String, Object>();
+        stats.put("usedHeapMemory", metric.usedHeapMemory());
+        stats.put("usedDirectMemory", metric.usedDirectMemory());
+        stats.put("maxDirectMemory", PlatformDependent.maxDirectMemory());
+        stats.put("chunkSize", metric.chunkSize());
+        stats.put("numThreadLocalCaches", metric.numThreadLocalCaches());
+        stats.put("tinyCacheSize", metric.tinyCacheSize());
+        stats.put("smallCacheSize", metric.smallCacheSize());
+        stats.put("normalCacheSize", metric.normalCacheSize());
+        stats.put("heapArenas", arenaStats(metric.heapArenas()));
+        stats.put("directArenas", arenaStats(metric.directArenas()));
+        return stats;
+    }
+
+    private static List<Map<String, Object>> arenaStats(List<PoolArenaMetric> arenas) {
+        List<Map<String, Object>> list = new ArrayList<Map<String, Object>>(arenas.size());
+        for (PoolArenaMetric arena : arenas) {
+            Map<String, Object> stats = new LinkedHashMap<String, Object>();
+            stats.put("numThreadCaches", arena.numThreadCaches());
+            stats.put("activeBytes", arena.numActiveBytes());
+            stats.put("activeAllocations", arena.numActiveAllocations());
+            stats.put("allocations", arena.numAllocations());
+            stats.put("deallocations", arena.numDeallocations());
+            stats.put("hugeAllocations", arena.numHugeAllocations());
+
+            // 每个chunk list中各chunk的使用率(%)
+            List<Map<String, Object>> chunkLists = new ArrayList<Map<String, Object>>();
+            for (PoolChunkListMetric chunkList : arena.chunkLists()) {
+                List<Integer> usages = new ArrayList<Integer>();
+                for (PoolChunkMetric chunk : chunkList) {
+                    usages.add(chunk.usage());
+                }
+                Map<String, Object> cl = new LinkedHashMap<String, Object>();
+                cl.put("minUsage", chunkList.minUsage());
+                cl.put("maxUsage", chunkList.maxUsage());
+                cl.put("chunks", usages);
+                chunkLists.add(cl);
+            }
+            stats.put("chunkLists", chunkLists);
+
+            list.add(stats);
+        }
+        return list;
+    }
+
+    private BufferAllocators() {}
+}
@@ -0,0 +1,57 @@
+package com.fqserver.server;
+
+import io.netty.handler.codec.DateFormatter;
+import io.netty.util.AsciiString;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.fqserver.core.http.HttpUtil;
+
+/**
+ * 预先编码为AsciiString的常用响应头值. HttpResponseEncoder写出AsciiString时直接复制字节,
+ * 不再逐字符编码; Date由HttpServer每秒更新一次, 不在每个请求上格式化时间.
+ */
+public final class CachedHeaders {
+
+    // 响应头名保持原来的大小写, HttpHeaderNames中的是小写
+    public static final AsciiString CONTENT_TYPE = AsciiString.cached("Content-Type");
+    public static final AsciiString CONTENT_LENGTH = AsciiString.cached("Content-Length");
+    public static final AsciiString CONNECTION = AsciiString.cached("Connection");
+    public static final AsciiString TRANSFER_ENCODING = AsciiString.cached("Transfer-Encoding");
+    public static final AsciiString SERVER = AsciiString.cached("Server");
+    public static final AsciiString DATE = AsciiString.cached("Date");
+    public static final AsciiString X_FORWARDED_FOR = AsciiString.cached("X-Forwarded-For");
+
+    public static final AsciiString TYPE_PLAIN = AsciiString.cached(HttpUtil.TYPE_PLAIN);
+    public static final AsciiString TYPE_BINARY = AsciiString.cached(HttpUtil.TYPE_BINARY);
+    public static final AsciiString TYPE_JSON = AsciiString.cached(HttpUtil.TYPE_JSON);
+    public static final AsciiString TYPE_CBOR = AsciiString.cached(HttpUtil.TYPE_CBOR);
+
+    private static final Map<String, AsciiString> CONTENT_TYPES = new HashMap<String, AsciiString>();
+
+    static {
+        CONTENT_TYPES.put(HttpUtil.TYPE_PLAIN, TYPE_PLAIN);
+        CONTENT_TYPES.put(HttpUtil.TYPE_BINARY, TYPE_BINARY);
+        CONTENT_TYPES.put(HttpUtil.TYPE_JSON, TYPE_JSON);
+        CONTENT_TYPES.put(HttpUtil.TYPE_CBOR, TYPE_CBOR);
+    }
+
+    /**
+     * 常用的Content-Type返回预先编码的值, 其他的原样返回
+     */
+    public static CharSequence contentType(String type) {
+        AsciiString cached = CONTENT_TYPES.get(type);
+        return cached != null ? cached : type;
+    }
+
+    /**
+     * RFC 1123格式的Date响应头
+     */
+    static AsciiString date(long millis) {
+        return AsciiString.cached(DateFormatter.format(new Date(millis)));
+    }
+
+    private CachedHeaders() {}
+}
@@ -0,0 +1,333 @@
+package com.fqserver.server;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpStatusClass;
+import io.netty.util.AsciiString;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fqserver.core.compress.GZipUtils;
+import com.fqserver.core.compress.LZ4Util;
+import com.fqserver.core.compress.SnappyUtil;
+import com.fqserver.core.http.HttpUtil.HeaderNames;
+
+/**
+ * 按Accept-Encoding压缩响应body, 由CompressionHandler在pipeline中调用.
+ *
+ * 支持gzip, deflate(zlib格式), 以及snappy, lz4(与SDK的Original-Encoding相同的整块格式, lz4另带Original-Length).
+ * 只压缩FullHttpResponse: 分块和文件(sendfile)响应, 已经压缩(Content-Encoding或SDK的Original-Encoding)的响应,
+ * 小于compressionMinSize或Content-Type不在compressionTypes中的响应都原样写出.
+ */
+public class Compression {
+
+    public static final String GZIP = "gzip";
+    public static final String DEFLATE = "deflate";
+    public static final String SNAPPY = "snappy";
+    public static final String LZ4 = "lz4";
+
+    private static final AsciiString CONTENT_ENCODING = AsciiString.cached("Content-Encoding");
+    private static final AsciiString VARY = AsciiString.cached("Vary");
+    private static final AsciiString ACCEPT_ENCODING = AsciiString.cached("Accept-Encoding");
+
+    private static Logger log = LoggerFactory.getLogger(Compression.class);
+
+    // 按服务器优先顺序排列的编码
+    private final String[] encodings;
+    private final AsciiString[] encodingValues;
+    private final String[] types;
+    private final int minSize;
+    private final int offloadSize;
+
+    private final ExecutorService executor;
+
+    private final LongAdder compressed = new LongAdder();
+    private final LongAdder offloaded = new LongAdder();
+    private final LongAdder offloadRejected = new LongAdder();
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    /**
+     * 没有开启压缩时返回null, 此时不在pipeline中加入压缩阶段
+     */
+    public static Compression create(NettyConfig config) {
+        if (!config.compression) {
+            return null;
+        }
+        return new Compression(config);
+    }
+
+    Compression(NettyConfig config) {
+        List<String> list = new ArrayList<String>();
+        for (String item : config.compressionEncodings.split(",")) {
+            String encoding = item.trim().toLowerCase();
+            if (GZIP.equals(encoding) || DEFLATE.equals(encoding) || SNAPPY.equals(encoding)
+                || LZ4.equals(encoding)) {
+                list.add(encoding);
+            } else if (encoding.length() > 0) {
+                log.warn("unsupported compression encoding: " + item);
+            }
+        }
+        this.encodings = list.toArray(new String[list.size()]);
+        this.encodingValues = new AsciiString[encodings.length];
+        for (int i = 0; i < encodings.length; i++) {
+            this.encodingValues[i] = AsciiString.cached(encodings[i]);
+        }
+
+        List<String> typeList = new ArrayList<String>();
+        for (String item : config.compressionTypes.split(",")) {
+            if (item.trim().length() > 0) {
+                typeList.add(item.trim().toLowerCase());
+            }
+        }
+        this.types = typeList.toArray(new String[typeList.size()]);
+        this.minSize = Math.max(1, config.compressionMinSize);
+
+        if (config.compressionThreads > 0) {
+            this.offloadSize = Math.max(this.minSize, config.compressionOffloadSize);
+            this.executor = new ThreadPoolExecutor(config.compressionThreads,
+                                                   config.compressionThreads,
+                                                   60,
+                                                   TimeUnit.SECONDS,
+                                                   new ArrayBlockingQueue<Runnable>(Math.max(1,
+                                                                                             config.compressionQueueSize)),
+                                                   new DefaultThreadFactory("compress"));
+        } else {
+            this.offloadSize = Integer.MAX_VALUE;
+            this.executor = null;
+        }
+    }
+
+    /**
+     * 按Accept-Encoding及q值选出的编码在encodings中的下标, 没有可用的编码时返回-1.
+     * q值相同时按服务器的优先顺序
+     */
+    int negotiate(CharSequence acceptEncoding) {
+        if (acceptEncoding == null || acceptEncoding.length() == 0) {
+            return -1;
+        }
+
+        int best = -1;
+        float bestQ = 0;
+        float starQ = 0;
+        float[] qs = new float[encodings.length];
+        boolean[] listed = new boolean[encodings.length];
+
+        for (String item : acceptEncoding.toString().split(",")) {
+            String name = item;
+            float q = 1.0f;
+            int semi = item.indexOf(';');
+            if (semi >= 0) {
+                name = item.substring(0, semi);
+                q = parseQ(item.substring(semi + 1));
+            }
+            name = name.trim().toLowerCase();
+
+            if ("*".equals(name)) {
+                starQ = q;
+                continue;
+            }
+            for (int i = 0; i < encodings.length; i++) {
+                if (encodings[i].equals(name) || ("x-" + encodings[i]).equals(name)) {
+                    qs[i] = q;
+                    listed[i] = true;
+                }
+            }
+        }
+
+        for (int i = 0; i < encodings.length; i++) {
+            float q = listed[i] ? qs[i] : starQ;
+            if (q > bestQ) {
+                bestQ = q;
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    private static float parseQ(String params) {
+        for (String param : params.split(";")) {
+            param = param.trim();
+            if (param.startsWith("q=") || param.startsWith("Q=")) {
+                try {
+                    return Float.parseFloat(param.substring(2).trim());
+                }
+                catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1.0f;
+    }
+
+    /**
+     * 响应是否可以压缩(不考虑Accept-Encoding), 可以压缩的响应都带Vary: Accept-Encoding
+     */
+    boolean isCompressible(FullHttpResponse response) {
+        HttpResponseStatus status = response.status();
+        if (status.codeClass() == HttpStatusClass.INFORMATIONAL
+            || status.code() == HttpResponseStatus.NO_CONTENT.code()
+            || status.code() == HttpResponseStatus.NOT_MODIFIED.code()) {
+            return false;
+        }
+
+        HttpHeaders headers = response.headers();
+        if (headers.contains(CONTENT_ENCODING) || headers.contains(HeaderNames.ORIGINAL_ENCODING)) {
+            return false;
+        }
+
+        String type = headers.get(CachedHeaders.CONTENT_TYPE);
+        if (type == null) {
+            return false;
+        }
+        type = type.toLowerCase();
+        for (String allowed : types) {
+            if (type.startsWith(allowed)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    int minSize() {
+        return minSize;
+    }
+
+    /**
+     * body不小于此长度时交给压缩线程, 没有开启时为Integer.MAX_VALUE
+     */
+    int offloadSize() {
+        return offloadSize;
+    }
+
+    ExecutorService executor() {
+        return executor;
+    }
+
+    void offloaded() {
+        offloaded.increment();
+    }
+
+    /**
+     * 压缩线程的队列已满, 改在I/O线程上压缩
+     */
+    void offloadRejected() {
+        offloadRejected.increment();
+    }
+
+    /**
+     * 以encodings[index]压缩content, 压缩后没有变小或压缩失败时返回null
+     */
+    ByteBuf compress(ByteBufAllocator alloc, ByteBuf content, int index) {
+        int length = content.readableBytes();
+        byte[] data = ByteBufUtil.getBytes(content, content.readerIndex(), length, false);
+        String encoding = encodings[index];
+
+        ByteBuf out = null;
+        try {
+            if (SNAPPY.equals(encoding)) {
+                out = Unpooled.wrappedBuffer(SnappyUtil.compress(data));
+            } else if (LZ4.equals(encoding)) {
+                out = Unpooled.wrappedBuffer(LZ4Util.compress(data));
+            } else {
+                out = alloc.buffer(length / 2 + 64);
+                ByteBufOutputStream os = new ByteBufOutputStream(out);
+                if (GZIP.equals(encoding)) {
+                    GZipUtils.compress(data, os);
+                } else {
+                    deflate(data, os);
+                }
+            }
+        }
+        catch (IOException e) {
+            failed.increment();
+            log.warn("compress response failed: " + encoding, e);
+            if (out != null) {
+                out.release();
+            }
+            return null;
+        }
+
+        if (out.readableBytes() >= length) {
+            out.release();
+            return null;
+        }
+
+        compressed.increment();
+        bytesIn.add(length);
+        bytesOut.add(out.readableBytes());
+        return out;
+    }
+
+    private static void deflate(byte[] data, ByteBufOutputStream os) throws IOException {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        DeflaterOutputStream zlib = new DeflaterOutputStream(os, deflater);
+        try {
+            zlib.write(data, 0, data.length);
+            zlib.finish();
+        }
+        finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * 以压缩后的body替换响应, 设置编码相关的响应头; 原响应的body可能是共用的, 不在原处修改
+     */
+    FullHttpResponse apply(FullHttpResponse response, ByteBuf compressed, int index) {
+        int length = response.content().readableBytes();
+        FullHttpResponse encoded = response.replace(compressed);
+        HttpHeaders headers = encoded.headers();
+        headers.set(CONTENT_ENCODING, encodingValues[index]);
+        headers.setInt(CachedHeaders.CONTENT_LENGTH, compressed.readableBytes());
+        if (LZ4.equals(encodings[index])) {
+            headers.setInt(HeaderNames.ORIGINAL_LENGTH, length);
+        }
+        return encoded;
+    }
+
+    void vary(FullHttpResponse response) {
+        response.headers().set(VARY, ACCEPT_ENCODING);
+    }
+
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    public Map<String, Object> stats() {
+        long in = bytesIn.sum();
+        Map<String, Object> stats = new LinkedHashMap<String, Object>();
+        stats.put("compressed", compressed.sum());
+        stats.put("offloaded", offloaded.sum());
+        stats.put("offloadRejected", offloadRejected.sum());
+        stats.put("failed", failed.sum());
+        stats.put("bytesIn", in);
+        stats.put("bytesOut", bytesOut.sum());
+        stats.put("ratio", in == 0 ? 0 : (double) bytesOut.sum() / in);
+        return stats;
+    }
+}
@@ -0,0 +1,177 @@
+package com.fqserver.server;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpStatusClass;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 响应压缩阶段: 记录每个请求的Accept-Encoding, 写出对应的响应时由Compression选择编码并压缩.
+ *
+ * body不小于compressionOffloadSize时交给压缩线程, 等待结果期间这个连接之后的写出和flush按顺序排队,
+ * 压缩完成后回到I/O线程依次写出, 响应的顺序不变. 压缩线程的队列(compressionQueueSize)已满时在I/O线程上压缩.
+ */
+public class CompressionHandler extends ChannelDuplexHandler {
+
+    private static Logger log = LoggerFactory.getLogger(CompressionHandler.class);
+
+    // 排队中的flush
+    private static final Object FLUSH = new Object();
+
+    private final Compression compression;
+
+    // 还没有应答的请求的Accept-Encoding, 按请求的顺序
+    private final ArrayDeque<CharSequence> acceptEncodings = new ArrayDeque<CharSequence>();
+
+    // 压缩线程处理中时排队的写出(PendingWrite)和flush(FLUSH)
+    private final ArrayDeque<Object> pending = new ArrayDeque<Object>();
+    private boolean compressing;
+
+    public CompressionHandler(Compression compression) {
+        this.compression = compression;
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (msg instanceof HttpRequest) {
+            CharSequence acceptEncoding = ((HttpRequest) msg).headers()
+                                                             .get(HttpHeaderNames.ACCEPT_ENCODING);
+            acceptEncodings.add(acceptEncoding != null ? acceptEncoding : "");
+        }
+        ctx.fireChannelRead(msg);
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise)
+            throws Exception {
+        if (compressing) {
+            pending.add(new PendingWrite(msg, promise));
+            return;
+        }
+        encodeAndWrite(ctx, msg, promise);
+    }
+
+    @Override
+    public void flush(ChannelHandlerContext ctx) throws Exception {
+        if (compressing) {
+            pending.add(FLUSH);
+            return;
+        }
+        ctx.flush();
+    }
+
+    private void encodeAndWrite(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
+        if (!(msg instanceof HttpResponse)
+            || ((HttpResponse) msg).status().codeClass() == HttpStatusClass.INFORMATIONAL) {
+            ctx.write(msg, promise);
+            return;
+        }
+
+        CharSequence acceptEncoding = acceptEncodings.poll();
+        if (!(msg instanceof FullHttpResponse)) {
+            // 分块和文件响应不压缩
+            ctx.write(msg, promise);
+            return;
+        }
+
+        FullHttpResponse response = (FullHttpResponse) msg;
+        if (!compression.isCompressible(response)) {
+            ctx.write(msg, promise);
+            return;
+        }
+        compression.vary(response);
+
+        int length = response.content().readableBytes();
+        int index = length >= compression.minSize() ? compression.negotiate(acceptEncoding) : -1;
+        if (index < 0) {
+            ctx.write(msg, promise);
+            return;
+        }
+
+        if (length >= compression.offloadSize()) {
+            offload(ctx, response, index, promise);
+            return;
+        }
+        ctx.write(encode(ctx, response, index), promise);
+    }
+
+    private FullHttpResponse encode(ChannelHandlerContext ctx, FullHttpResponse response, int index) {
+        try {
+            ByteBuf compressed = compression.compress(ctx.alloc(), response.content(), index);
+            if (compressed == null) {
+                return response;
+            }
+            FullHttpResponse encoded = compression.apply(response, compressed, index);
+            response.release();
+            return encoded;
+        }
+        catch (RuntimeException e) {
+            log.warn("compress response failed", e);
+            return response;
+        }
+    }
+
+    private void offload(final ChannelHandlerContext ctx,
+                         final FullHttpResponse response,
+                         final int index,
+                         final ChannelPromise promise) {
+        compressing = true;
+        try {
+            compression.executor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    final FullHttpResponse encoded = encode(ctx, response, index);
+                    ctx.executor().execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            compressing = false;
+                            ctx.write(encoded, promise);
+                            drain(ctx);
+                        }
+                    });
+                }
+            });
+        }
+        catch (RejectedExecutionException e) {
+            // 压缩线程的队列已满或已关闭, 在I/O线程上压缩
+            compressing = false;
+            compression.offloadRejected();
+            ctx.write(encode(ctx, response, index), promise);
+            return;
+        }
+        compression.offloaded();
+    }
+
+    private void drain(ChannelHandlerContext ctx) {
+        Object item;
+        while (!compressing && (item = pending.poll()) != null) {
+            if (item == FLUSH) {
+                ctx.flush();
+            } else {
+                PendingWrite write = (PendingWrite) item;
+                encodeAndWrite(ctx, write.msg, write.promise);
+            }
+        }
+    }
+
+    private static final class PendingWrite {
+        final Object msg;
+        final ChannelPromise promise;
+
+        PendingWrite(Object msg, ChannelPromise promise) {
+            this.msg = msg;
+            this.promise = promise;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.fqserver.server;
+
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+
+import java.util.concurrent.Future;
+
+/**
+ * 合并flush: 读取过程中的flush推迟到channelReadComplete, 不在读取过程中的flush(例如业务线程写出的响应)
+ * 推迟到I/O线程的下一个任务; 连续explicitFlushAfterFlushes次flush后强制写出一次.
+ *
+ * 与netty的FlushConsolidationHandler(4.1.39)的区别:
+ * <ul>
+ * <li>channel变为不可写时不flush. 这一事件是在写出过程中触发的: flush后又变为可写, ChunkedWriteHandler随即写出下一块,
+ * 此时HttpResponseEncoder还没有写完上一块编码出的各部分, 分块响应因此错乱</li>
+ * <li>推迟的flush执行时先清除任务再flush. 写出完成的listener中再次写出并flush时(例如HTTP/2的stream在响应后关闭,
+ * 写出RST_STREAM), 会重新安排一次flush; FlushConsolidationHandler在flush之后才清除任务, 这次flush因此丢失,
+ * 数据一直留在缓冲中</li>
+ * </ul>
+ */
+final class ConsolidateFlushHandler extends ChannelDuplexHandler {
+
+    private final int explicitFlushAfterFlushes;
+
+    private ChannelHandlerContext ctx;
+    private boolean readInProgress;
+    private int flushPendingCount;
+    private Future<?> nextScheduledFlush;
+
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            nextScheduledFlush = null;
+            // 读取中的flush由channelReadComplete写出
+            if (flushPendingCount > 0 && !readInProgress) {
+                flushPendingCount = 0;
+                ctx.flush();
+            }
+        }
+    };
+
+    ConsolidateFlushHandler(int explicitFlushAfterFlushes) {
+        if (explicitFlushAfterFlushes <= 0) {
+            throw new IllegalArgumentException("explicitFlushAfterFlushes: " + explicitFlushAfterFlushes);
+        }
+        this.explicitFlushAfterFlushes = explicitFlushAfterFlushes;
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
+        this.ctx = ctx;
+    }
+
+    @Override
+    public void flush(ChannelHandlerContext ctx) throws Exception {
+        if (++flushPendingCount == explicitFlushAfterFlushes) {
+            flushNow(ctx);
+        } else if (!readInProgress && nextScheduledFlush == null) {
+            // 尽快执行, 但先让出I/O线程, 同时到达的写出可以一起flush
+            nextScheduledFlush = ctx.channel().eventLoop().submit(flushTask);
+        }
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        readInProgress = true;
+        ctx.fireChannelRead(msg);
+    }
+
+    @Override
+    public void channelReadComplete(ChannelHandlerContext ctx) throws Exception {
+        resetReadAndFlushIfNeeded(ctx);
+        ctx.fireChannelReadComplete();
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
+        resetReadAndFlushIfNeeded(ctx);
+        ctx.fireExceptionCaught(cause);
+    }
+
+    @Override
+    public void disconnect(ChannelHandlerContext ctx, ChannelPromise promise) throws Exception {
+        resetReadAndFlushIfNeeded(ctx);
+        ctx.disconnect(promise);
+    }
+
+    @Override
+    public void close(ChannelHandlerContext ctx, ChannelPromise promise) throws Exception {
+        resetReadAndFlushIfNeeded(ctx);
+        ctx.close(promise);
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+        if (flushPendingCount > 0) {
+            flushNow(ctx);
+        }
+    }
+
+    private void resetReadAndFlushIfNeeded(ChannelHandlerContext ctx) {
+        readInProgress = false;
+        if (flushPendingCount > 0) {
+            flushNow(ctx);
+        }
+    }
+
+    private void flushNow(ChannelHandlerContext ctx) {
+        if (nextScheduledFlush != null) {
+            nextScheduledFlush.cancel(false);
+            nextScheduledFlush = null;
+        }
+        flushPendingCount = 0;
+        ctx.flush();
+    }
+}
@@ -2,13 +2,36 @@ package com.fqserver.server;
 
 import com.fqserver.core.utils.Pools;
 import com.fqserver.utils.time.DateUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
 import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderValues;
 import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http2.Http2StreamChannel;
+import io.netty.handler.timeout.IdleState;
+import io.netty.handler.timeout.IdleStateEvent;
 
 import java.net.InetSocketAddress;
-import java.net.URI;
+import java.util.ArrayDeque;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -16,16 +39,42 @@ import org.slf4j.LoggerFactory;
 public class FullHttpServerHandler extends SimpleChannelInboundHandler<FullHttpRequest> {
     private final HttpServer server;
 
-    private FullHttpRequest httpRequest;
+    private final HandlerExecutor handlerExecutor;
 
-    private RequestHandler reqHandler;
+    // 当前连接的业务执行器, 连接上的请求依次提交, 保证按请求顺序响应
+    private Executor executor;
 
-    private String requestUri;
+    // 当前连接正在处理请求时, 后续(pipelining)的请求在此排队
+    private final ArrayDeque<PendingRequest> pending = new ArrayDeque<PendingRequest>();
+
+    private boolean processing;
+
+    // 已返回503并将关闭连接, 不再处理请求
+    private boolean closing;
+
+    // 等待当前连接上的请求全部处理完成后执行的任务, 见StreamingRequestDispatcher
+    private final ArrayDeque<Runnable> idleTasks = new ArrayDeque<Runnable>();
+
+    // 当前连接已处理的请求数, 每个连接一个handler实例
+    private int requestCount;
+
+    // 请求按顺序处理, 每个请求的uri都在此解析
+    private final RequestUri parsedUri = new RequestUri();
+
+    // 排队的请求超过该数目时暂停读取
+    private static final int MAX_PENDING_REQUESTS = 16;
 
     private static Logger log = LoggerFactory.getLogger(FullHttpServerHandler.class);
 
     public FullHttpServerHandler(HttpServer svr) {
+        this(svr, svr.getHandlerExecutor());
+    }
+
+    public FullHttpServerHandler(HttpServer svr, HandlerExecutor handlerExecutor) {
+        // 请求在业务线程处理完成后才释放
+        super(false);
         this.server = svr;
+        this.handlerExecutor = handlerExecutor;
     }
 
     @Override
@@ -34,40 +83,155 @@ public class FullHttpServerHandler extends SimpleChannelInboundHandler<FullHttpR
     }
 
     public void messageReceived(ChannelHandlerContext ctx, FullHttpRequest msg) throws Exception {
+        if (closing) {
+            msg.release();
+            return;
+        }
+
+        PendingRequest req = new PendingRequest(msg, isKeepAlive(ctx, msg));
+
+        if (processing) {
+            pending.add(req);
+            if (pending.size() >= MAX_PENDING_REQUESTS) {
+                ctx.channel().config().setAutoRead(false);
+            }
+            return;
+        }
+
+        dispatch(ctx, req);
+    }
+
+    /**
+     * 在I/O线程上调用, 把请求交给业务执行阶段
+     */
+    private void dispatch(final ChannelHandlerContext ctx, final PendingRequest req) {
+        processing = true;
+
+        if (handlerExecutor == null || handlerExecutor.isInline()) {
+            process(ctx, req);
+            return;
+        }
+
+        if (executor == null) {
+            executor = handlerExecutor.next();
+        }
+
+        try {
+            handlerExecutor.execute(executor, new Runnable() {
+                @Override
+                public void run() {
+                    process(ctx, req);
+                }
+            });
+        }
+        catch (RejectedExecutionException e) {
+            if (log.isWarnEnabled()) {
+                log.warn("handler executor is full, reject request:" + req.request.getUri());
+            }
+            req.request.release();
+            sendStatus(ctx, HttpResponseStatus.SERVICE_UNAVAILABLE);
+            // 503后关闭连接, 排队的请求和之后收到的请求都不再处理
+            closing = true;
+            releasePending();
+        }
+    }
+
+    private void process(ChannelHandlerContext ctx, PendingRequest req) {
+        boolean async = false;
+        try {
+            async = handleRequest(ctx, req.request, req.keepAlive);
+        }
+        finally {
+            // 异步处理中的请求由AsyncRequest释放
+            if (!async) {
+                req.request.release();
+                complete(ctx);
+            }
+        }
+    }
 
-        httpRequest = msg;
-
-        URI uri = new URI(httpRequest.getUri());
-        String path = requestUri = uri.getPath();
-
-        if (log.isInfoEnabled()) {
-            String clientIP = httpRequest.headers().get("X-Forwarded-For");
-            if (clientIP == null) {
-                InetSocketAddress insocket = (InetSocketAddress) ctx.channel().remoteAddress();
-                clientIP = insocket.getAddress().getHostAddress();
-            }
-            String reqStr = "clientIP:"
-                            + clientIP
-                            + "\t request uri=="
-                            + requestUri
-                            + "\t"
-                            + "Requser Method:"
-                            + httpRequest.getMethod()
-                            + "\t Access time:"
-                            + DateUtil.now();
-            log.info(reqStr);
-        }
-
-        Class<? extends RequestHandler> cls = null;
-        if (UrlMap.urlMap.containsKey(path)) {
-            cls = UrlMap.urlMap.get(path);
-        } else if (path.contains("/referrer")) {
-            cls = UrlMap.urlMap.get("/referrer");
+    /**
+     * 当前请求处理完成, 回到I/O线程处理排队的下一个请求
+     */
+    private void complete(final ChannelHandlerContext ctx) {
+        if (!ctx.executor().inEventLoop()) {
+            ctx.executor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    complete(ctx);
+                }
+            });
+            return;
+        }
+
+        processing = false;
+
+        PendingRequest next = pending.poll();
+        if (next != null) {
+            dispatch(ctx, next);
+            return;
+        }
+
+        Runnable task = idleTasks.poll();
+        if (task != null) {
+            task.run();
+        } else if (!ctx.channel().config().isAutoRead()) {
+            ctx.channel().config().setAutoRead(true);
+        }
+    }
+
+    /**
+     * 当前连接上没有正在处理或排队的请求
+     */
+    boolean isIdle() {
+        return !processing && pending.isEmpty();
+    }
+
+    /**
+     * 在当前连接上的请求全部处理完成后执行task, 只能在I/O线程上调用
+     */
+    void runWhenIdle(Runnable task) {
+        if (isIdle()) {
+            task.run();
         } else {
-            cls = RequestHandler.class;
+            idleTasks.add(task);
         }
+    }
+
+    /**
+     * 处理一个请求, AsyncRequestHandler还没有完成时返回true
+     */
+    private boolean handleRequest(ChannelHandlerContext ctx, FullHttpRequest httpRequest,
+                                  boolean keepAlive) {
+
+        RequestHandler reqHandler = null;
+        String requestUri = null;
 
         try {
+            RequestUri uri = parsedUri.parse(httpRequest.getUri());
+            String path = requestUri = uri.path();
+
+            if (log.isInfoEnabled()) {
+                String clientIP = httpRequest.headers().get("X-Forwarded-For");
+                if (clientIP == null) {
+                    InetSocketAddress insocket = (InetSocketAddress) ctx.channel().remoteAddress();
+                    clientIP = insocket.getAddress().getHostAddress();
+                }
+                String reqStr = "clientIP:"
+                                + clientIP
+                                + "\t request uri=="
+                                + requestUri
+                                + "\t"
+                                + "Requser Method:"
+                                + httpRequest.getMethod()
+                                + "\t Access time:"
+                                + DateUtil.now();
+                log.info(reqStr);
+            }
+
+            Router.Match route = UrlMap.match(ctx.channel(), httpRequest);
+            Class<? extends RequestHandler> cls = route != null ? route.getHandler()
+                                                                : RequestHandler.class;
 
             if (this.server.getConfig().useReqObjectPool) {
                 // reqHandler =
@@ -77,27 +241,38 @@ public class FullHttpServerHandler extends SimpleChannelInboundHandler<FullHttpR
                     log.debug("obtainObject ed:" + reqHandler);
                 }
             } else {
-                reqHandler = (RequestHandler) cls.newInstance();
+                reqHandler = route != null ? route.getRoute().newHandler() : new RequestHandler();
                 if (log.isDebugEnabled()) {
                     log.debug("newInstance ed:" + reqHandler);
                 }
             }
-        
 
             reqHandler.setServer(this.server);
             reqHandler.setRequest(httpRequest);
             reqHandler.setCtx(ctx);
+            reqHandler.setKeepAlive(keepAlive);
+            reqHandler.setRoute(route);
+            reqHandler.setRequestUri(uri);
 
             reqHandler.setRequestPrefix(ServerContext.getLocalRequestPrefix());
 
-            // Url Request 计数
-            ServerContext.addUrlRequest(path);
+            // Url Request 计数, 匹配到路由时按路由计数, 路径参数不会产生新的key
+            if (route != null) {
+                route.getRoute().hit();
+                ServerContext.addUrlRequest(route.getRoute().getPattern());
+            } else {
+                ServerContext.addUrlRequest(path);
+            }
+
+            if (reqHandler instanceof AsyncRequestHandler) {
+                return startAsync(ctx, httpRequest, (AsyncRequestHandler) reqHandler);
+            }
 
             // Get请求
             if (httpRequest.getMethod().equals(HttpMethod.GET)) {
                 try {
                     if (log.isDebugEnabled()) {
-                        log.debug("Get Req:" + uri.getPath());
+                        log.debug("Get Req:" + path);
                     }
                     long time1 = System.currentTimeMillis();
                     reqHandler.doGet();
@@ -110,8 +285,6 @@ public class FullHttpServerHandler extends SimpleChannelInboundHandler<FullHttpR
                 catch (Exception e1) {
                     log.error("Request Handler get error:", e1);
                 }
-                reset();
-                return;
             } else if (httpRequest.getMethod().equals(HttpMethod.POST)) { // Post请求
                 try {
                     long time1 = System.currentTimeMillis();
@@ -125,12 +298,10 @@ public class FullHttpServerHandler extends SimpleChannelInboundHandler<FullHttpR
                 catch (Exception e1) {
                     log.error("Request Handler post error:", e1);
                 }
-                reset();
-                return;
             } else {
                 try {
                     if (log.isDebugEnabled()) {
-                        log.debug("Get Req:" + uri.getPath());
+                        log.debug("Get Req:" + path);
                     }
                     long time1 = System.currentTimeMillis();
                     reqHandler.doGet();
@@ -146,30 +317,141 @@ public class FullHttpServerHandler extends SimpleChannelInboundHandler<FullHttpR
                 catch (Exception e1) {
                     log.error("Request Handler get error:", e1);
                 }
-                reset();
-                return;
             }
+            ensureResponded(ctx, reqHandler);
+            reset(reqHandler);
         }
         catch (Exception e1) {
             log.error("Request Handler error:", e1);
-            reset();
+            reset(reqHandler);
             ctx.channel().close();
+        }
+        return false;
+    }
+
+    /**
+     * 调用AsyncRequestHandler, 返回的CompletionStage已经完成时与同步的handler一样结束请求并返回false;
+     * 否则由AsyncRequest在完成, 超时或连接关闭时结束请求
+     */
+    private boolean startAsync(ChannelHandlerContext ctx, FullHttpRequest httpRequest,
+                               AsyncRequestHandler reqHandler) {
+        long start = System.currentTimeMillis();
+        CompletableFuture<?> future = null;
+        try {
+            CompletionStage<?> stage = httpRequest.getMethod().equals(HttpMethod.POST)
+                                       ? reqHandler.postAsync()
+                                       : reqHandler.getAsync();
+            future = stage != null ? stage.toCompletableFuture() : null;
+        }
+        catch (Exception e) {
+            log.error("Request Handler async error:", e);
+        }
+
+        if (future == null || future.isDone()) {
+            if (future != null && future.isCompletedExceptionally()) {
+                logAsyncError(future);
+            }
+            ensureResponded(ctx, reqHandler);
+            reset(reqHandler);
+            return false;
+        }
+
+        long timeout = reqHandler.getDeadline() > 0 ? reqHandler.getDeadline()
+                                                    : this.server.getConfig().asyncTimeout;
+        new AsyncRequest(ctx, httpRequest, reqHandler, future, start).start(timeout);
+        return true;
+    }
+
+    private void logAsyncError(CompletableFuture<?> future) {
+        try {
+            future.join();
+        }
+        catch (CancellationException e) {
+            // 取消不是错误
+        }
+        catch (CompletionException e) {
+            log.error("Request Handler async error:", e.getCause());
+        }
+    }
+
+    /**
+     * 判断本次请求的响应后是否保持连接: 需开启长连接模式, 客户端协商了keep-alive, 且未达到连接的请求数上限.
+     * 请求在连接上按顺序处理, 响应也就按请求的顺序写出, 流水线(pipelining)的请求因此可以按序应答.
+     */
+    boolean isKeepAlive(ChannelHandlerContext ctx, HttpRequest req) {
+        // HTTP/2的每个请求是一个stream子channel, 连接的生命周期由HTTP/2连接自身管理
+        if (ctx.channel() instanceof Http2StreamChannel) {
+            return true;
+        }
+
+        NettyConfig config = this.server.getConfig();
+
+        int maxRequests = config.keepAliveMaxRequests;
+        ++requestCount;
+
+        return config.httpKeepAlive
+               && HttpUtil.isKeepAlive(req)
+               && (maxRequests <= 0 || requestCount < maxRequests);
+    }
+
+    /**
+     * 业务处理没有写出响应时(例如抛出异常), 返回500并关闭连接, 避免长连接上后续的请求错位
+     */
+    private void ensureResponded(ChannelHandlerContext ctx, RequestHandler reqHandler) {
+        if (reqHandler == null || reqHandler.isResponded()) {
             return;
         }
+        sendStatus(ctx, HttpResponseStatus.INTERNAL_SERVER_ERROR);
+    }
 
+    static void sendStatus(ChannelHandlerContext ctx, HttpResponseStatus status) {
+        FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1,
+                                                                status,
+                                                                Unpooled.EMPTY_BUFFER);
+        response.headers().set(CachedHeaders.CONTENT_LENGTH, 0);
+        response.headers().set(CachedHeaders.CONNECTION, HttpHeaderValues.CLOSE);
+        ctx.writeAndFlush(response).addListener(ChannelFutureListener.CLOSE);
+    }
+
+    @Override
+    public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+        if (evt instanceof IdleStateEvent) {
+            // 长连接空闲超时, 正在处理请求时不关闭
+            if (processing || ((IdleStateEvent) evt).state() != IdleState.ALL_IDLE) {
+                return;
+            }
+            if (log.isDebugEnabled()) {
+                log.debug("close idle connection:" + ctx.channel());
+            }
+            this.server.getTimeoutStats().idle();
+            ctx.close();
+            return;
+        }
+        super.userEventTriggered(ctx, evt);
     }
 
     @Override
     public void channelReadComplete(ChannelHandlerContext ctx) throws Exception {
-        // ctx.flush();
+        // 本次读取中写出的响应在此一起flush
+        ctx.flush();
         super.channelReadComplete(ctx);
     }
 
-    private void reset() {
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        releasePending();
+        idleTasks.clear();
+        super.channelInactive(ctx);
+    }
 
-        httpRequest = null;
+    private void releasePending() {
+        PendingRequest req;
+        while ((req = pending.poll()) != null) {
+            req.request.release();
+        }
+    }
 
-        requestUri = null;
+    private void reset(RequestHandler reqHandler) {
 
         if (reqHandler != null) {
             if (this.server.getConfig().useReqObjectPool) {
@@ -183,7 +465,6 @@ public class FullHttpServerHandler extends SimpleChannelInboundHandler<FullHttpR
                     log.error("freeObject error", e);
                 }
             }
-            reqHandler = null;
         }
     }
 
@@ -195,4 +476,121 @@ public class FullHttpServerHandler extends SimpleChannelInboundHandler<FullHttpR
         ctx.channel().close();
     }
 
-}
\ No newline at end of file
+    private static final class PendingRequest {
+        final FullHttpRequest request;
+        final boolean keepAlive;
+
+        PendingRequest(FullHttpRequest request, boolean keepAlive) {
+            this.request = request;
+            this.keepAlive = keepAlive;
+        }
+    }
+
+    /**
+     * 一个未完成的AsyncRequestHandler请求, 完成, 超时, 连接关闭三者中先发生的一个结束请求
+     */
+    private final class AsyncRequest implements Runnable, ChannelFutureListener,
+            BiConsumer<Object, Throwable> {
+        private final ChannelHandlerContext ctx;
+        private final FullHttpRequest request;
+        private final AsyncRequestHandler reqHandler;
+        private final CompletableFuture<?> future;
+        private final long start;
+        private final AtomicBoolean done = new AtomicBoolean();
+        private ScheduledFuture<?> timer;
+
+        AsyncRequest(ChannelHandlerContext ctx, FullHttpRequest request,
+                     AsyncRequestHandler reqHandler, CompletableFuture<?> future, long start) {
+            this.ctx = ctx;
+            this.request = request;
+            this.reqHandler = reqHandler;
+            this.future = future;
+            this.start = start;
+        }
+
+        void start(long timeout) {
+            if (timeout > 0) {
+                timer = ctx.executor().schedule(this, timeout, TimeUnit.MILLISECONDS);
+            }
+            ctx.channel().closeFuture().addListener(this);
+            future.whenComplete(this);
+        }
+
+        /**
+         * CompletionStage完成; 已经超时或连接已关闭时请求已释放, 不再处理
+         */
+        @Override
+        public void accept(Object result, Throwable cause) {
+            if (!done.compareAndSet(false, true)) {
+                return;
+            }
+            cancelTimer();
+            ctx.channel().closeFuture().removeListener(this);
+
+            if (cause != null) {
+                logAsyncError(future);
+            }
+            if (log.isInfoEnabled()) {
+                log.info(request.getUri()
+                         + " Async Time consuming "
+                         + (System.currentTimeMillis() - start)
+                         + "ms");
+            }
+            ensureResponded(ctx, reqHandler);
+            reset(reqHandler);
+            request.release();
+            complete(ctx);
+        }
+
+        /**
+         * 超过期限, 在I/O线程上执行
+         */
+        @Override
+        public void run() {
+            if (!done.compareAndSet(false, true)) {
+                return;
+            }
+            ctx.channel().closeFuture().removeListener(this);
+            boolean unanswered = reqHandler.expire();
+            server.getTimeoutStats().async();
+            if (log.isWarnEnabled()) {
+                log.warn("async request timeout:" + request.getUri());
+            }
+            abandon();
+
+            if (unanswered) {
+                sendStatus(ctx, HttpResponseStatus.GATEWAY_TIMEOUT);
+            } else {
+                // handler已开始写出响应, 可能还在写出分块, 不能接着处理下一个请求, 关闭连接
+                ctx.close();
+            }
+        }
+
+        /**
+         * 连接关闭
+         */
+        @Override
+        public void operationComplete(ChannelFuture closeFuture) {
+            if (!done.compareAndSet(false, true)) {
+                return;
+            }
+            cancelTimer();
+            reqHandler.expire();
+            abandon();
+        }
+
+        /**
+         * 超时或连接关闭: 取消CompletionStage并释放请求, 不等待handler完成
+         */
+        private void abandon() {
+            future.cancel(false);
+            request.release();
+        }
+
+        private void cancelTimer() {
+            if (timer != null) {
+                timer.cancel(false);
+            }
+        }
+    }
+}
@@ -0,0 +1,283 @@
+package com.fqserver.server;
+
+import io.netty.util.concurrent.DefaultEventExecutorGroup;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.RejectedExecutionHandlers;
+import io.netty.util.concurrent.SingleThreadEventExecutor;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 业务处理(RequestHandler.doGet/doPost)的执行阶段, 使阻塞的业务调用不占用I/O线程.
+ *
+ * <ul>
+ * <li>inline: 直接在I/O线程执行, 即原来的方式</li>
+ * <li>group: 有界的DefaultEventExecutorGroup, 每个连接固定在一个线程上</li>
+ * <li>pool: 有界队列的ThreadPoolExecutor</li>
+ * <li>virtual: JDK 21+的虚拟线程, 低版本JDK退化为pool</li>
+ * </ul>
+ *
+ * 所有方式都统计排队中的任务数和任务的排队等待时间.
+ */
+public abstract class HandlerExecutor {
+
+    public static final String INLINE = "inline";
+    public static final String GROUP = "group";
+    public static final String POOL = "pool";
+    public static final String VIRTUAL = "virtual";
+
+    private static Logger log = LoggerFactory.getLogger(HandlerExecutor.class);
+
+    private final String mode;
+
+    private final AtomicInteger queued = new AtomicInteger();
+    private final LongAdder executed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    protected HandlerExecutor(String mode) {
+        this.mode = mode;
+    }
+
+    /**
+     * 根据NettyConfig.executorMode创建执行阶段
+     */
+    public static HandlerExecutor create(NettyConfig config) {
+        String mode = config.executorMode == null ? INLINE : config.executorMode.trim();
+
+        if (GROUP.equalsIgnoreCase(mode)) {
+            return new GroupExecutor(config.executorThreads, config.executorQueueSize);
+        } else if (POOL.equalsIgnoreCase(mode)) {
+            return new PoolExecutor(POOL,
+                                    newThreadPool(config.executorThreads,
+                                                  config.executorQueueSize));
+        } else if (VIRTUAL.equalsIgnoreCase(mode)) {
+            ExecutorService virtual = newVirtualThreadExecutor();
+            if (virtual != null) {
+                return new PoolExecutor(VIRTUAL, virtual);
+            }
+            log.warn("virtual threads need JDK 21+, fall back to " + POOL);
+            return new PoolExecutor(POOL, newThreadPool(config.executorThreads,
+                                                        config.executorQueueSize));
+        } else if (!INLINE.equalsIgnoreCase(mode)) {
+            log.warn("unknown executor mode " + mode + ", use " + INLINE);
+        }
+        return new InlineExecutor();
+    }
+
+    private static ThreadPoolExecutor newThreadPool(int threads, int queueSize) {
+        return new ThreadPoolExecutor(threads,
+                                      threads,
+                                      60,
+                                      TimeUnit.SECONDS,
+                                      new ArrayBlockingQueue<Runnable>(Math.max(1, queueSize)),
+                                      new DefaultThreadFactory("handler-pool"),
+                                      new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor")
+                                                    .invoke(null);
+        }
+        catch (Exception e) {
+            return null;
+        }
+    }
+
+    public String getMode() {
+        return mode;
+    }
+
+    /**
+     * 是否直接在I/O线程执行
+     */
+    public boolean isInline() {
+        return false;
+    }
+
+    /**
+     * 为新连接选择执行器, 同一连接上的任务由调用方保证顺序提交
+     */
+    public Executor next() {
+        return new Executor() {
+            @Override
+            public void execute(Runnable task) {
+                submit(task);
+            }
+        };
+    }
+
+    /**
+     * 提交业务任务, 队列已满时抛出RejectedExecutionException
+     */
+    public void execute(Executor executor, final Runnable task) {
+        final long submitTime = System.nanoTime();
+        queued.incrementAndGet();
+
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    queued.decrementAndGet();
+                    recordWait(System.nanoTime() - submitTime);
+                    task.run();
+                }
+            });
+        }
+        catch (RejectedExecutionException e) {
+            queued.decrementAndGet();
+            rejected.increment();
+            throw e;
+        }
+    }
+
+    private void recordWait(long nanos) {
+        executed.increment();
+        waitNanos.add(nanos);
+
+        long max = maxWaitNanos.get();
+        while (nanos > max && !maxWaitNanos.compareAndSet(max, nanos)) {
+            max = maxWaitNanos.get();
+        }
+    }
+
+    protected abstract void submit(Runnable task);
+
+    public abstract void shutdown();
+
+    /**
+     * 排队中(已提交未开始执行)的任务数
+     */
+    public int getQueueDepth() {
+        return queued.get();
+    }
+
+    public Map<String, Object> stats() {
+        long count = executed.sum();
+
+        Map<String, Object> stats = new LinkedHashMap<String, Object>();
+        stats.put("mode", mode);
+        stats.put("queueDepth", queued.get());
+        stats.put("executed", count);
+        stats.put("rejected", rejected.sum());
+        stats.put("avgWaitMicros", count == 0 ? 0 : waitNanos.sum() / count / 1000);
+        stats.put("maxWaitMicros", maxWaitNanos.get() / 1000);
+        return stats;
+    }
+
+    static final class InlineExecutor extends HandlerExecutor {
+
+        InlineExecutor() {
+            super(INLINE);
+        }
+
+        @Override
+        public boolean isInline() {
+            return true;
+        }
+
+        @Override
+        protected void submit(Runnable task) {
+            task.run();
+        }
+
+        @Override
+        public void shutdown() {}
+    }
+
+    static final class GroupExecutor extends HandlerExecutor {
+        private final DefaultEventExecutorGroup group;
+
+        GroupExecutor(int threads, int queueSize) {
+            super(GROUP);
+            this.group = new DefaultEventExecutorGroup(threads,
+                                                       new DefaultThreadFactory("handler-group"),
+                                                       Math.max(16, queueSize),
+                                                       RejectedExecutionHandlers.reject());
+        }
+
+        @Override
+        public Executor next() {
+            // 每个连接固定使用组内的一个线程
+            return group.next();
+        }
+
+        @Override
+        protected void submit(Runnable task) {
+            group.next().execute(task);
+        }
+
+        @Override
+        public void shutdown() {
+            group.shutdownGracefully();
+        }
+
+        @Override
+        public Map<String, Object> stats() {
+            int pending = 0;
+            for (EventExecutor executor : group) {
+                if (executor instanceof SingleThreadEventExecutor) {
+                    pending += ((SingleThreadEventExecutor) executor).pendingTasks();
+                }
+            }
+
+            Map<String, Object> stats = super.stats();
+            stats.put("threads", group.executorCount());
+            stats.put("pendingTasks", pending);
+            return stats;
+        }
+    }
+
+    static final class PoolExecutor extends HandlerExecutor {
+        private final ExecutorService executor;
+
+        PoolExecutor(String mode, ExecutorService executor) {
+            super(mode);
+            this.executor = executor;
+        }
+
+        @Override
+        public Executor next() {
+            return executor;
+        }
+
+        @Override
+        protected void submit(Runnable task) {
+            executor.execute(task);
+        }
+
+        @Override
+        public void shutdown() {
+            executor.shutdown();
+        }
+
+        @Override
+        public Map<String, Object> stats() {
+            Map<String, Object> stats = super.stats();
+            if (executor instanceof ThreadPoolExecutor) {
+                ThreadPoolExecutor pool = (ThreadPoolExecutor) executor;
+                stats.put("threads", pool.getPoolSize());
+                stats.put("activeThreads", pool.getActiveCount());
+                stats.put("queueRemaining", pool.getQueue().remainingCapacity());
+            }
+            return stats;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.fqserver.server;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.configuration.Configuration;
+import org.apache.commons.configuration.ConfigurationException;
+import org.apache.commons.configuration.PropertiesConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fqserver.core.utils.Pool;
+import com.fqserver.core.utils.Pools;
+
+/**
+ * 开启useObjectPool时, 按request.pool.properties为每个路由的handler类建立对象池并在启动时预先创建对象.
+ *
+ * <ul>
+ * <li>maxTotalPerKey: maxIdlePerKey及routes的上限; 只限制空闲对象, 不限制同时使用中的对象数</li>
+ * <li>maxIdlePerKey: 每个类在共享队列中保留的空闲对象数, 不超过maxTotalPerKey</li>
+ * <li>maxIdlePerThread: 每个I/O线程和业务线程本地保留的空闲对象数</li>
+ * <li>prewarmPerKey: 启动时每个类预先创建的对象数</li>
+ * <li>routes: 单独指定maxIdlePerKey的路由, 格式与admissionRouteLimits相同, 例如"/upload=16"</li>
+ * </ul>
+ *
+ * 对象池不会阻塞: handler在处理请求的线程上获取(executorMode为inline及流式接收时为I/O线程, 否则为业务线程),
+ * 池中没有空闲对象时总是新建, blockWhenExhausted和maxWaitMillis不起作用.
+ */
+public class HandlerPools {
+
+    private static Logger log = LoggerFactory.getLogger(HandlerPools.class);
+
+    public static final String FILE = "request.pool.properties";
+
+    // maxIdlePerKey及routes的上限
+    private final int idleLimit;
+    private final int maxIdlePerKey;
+    private final int maxIdlePerThread;
+    private final int prewarmPerKey;
+
+    // 单独指定了maxIdlePerKey的路由
+    private final Map<String, Integer> routeMaxIdle;
+
+    /**
+     * 没有开启对象池时返回null
+     */
+    public static HandlerPools create(NettyConfig config) {
+        if (!config.useReqObjectPool) {
+            return null;
+        }
+
+        // routes中的","不作为列表分隔符
+        PropertiesConfiguration pc = new PropertiesConfiguration();
+        pc.setDelimiterParsingDisabled(true);
+        try {
+            pc.load(FILE);
+        }
+        catch (ConfigurationException e) {
+            log.warn(FILE + " load failed, use default pool config.", e);
+        }
+        return new HandlerPools(pc);
+    }
+
+    HandlerPools(Configuration pc) {
+        this.idleLimit = Math.max(1, pc.getInt("request.pool.maxTotalPerKey", 1024));
+        this.maxIdlePerKey = Math.min(idleLimit, pc.getInt("request.pool.maxIdlePerKey", 200));
+        this.maxIdlePerThread = pc.getInt("request.pool.maxIdlePerThread",
+                                          Pool.DEFAULT_MAX_PER_THREAD);
+        this.prewarmPerKey = pc.getInt("request.pool.prewarmPerKey", 8);
+        this.routeMaxIdle = UrlMap.parseRouteValues(pc.getString("request.pool.routes", ""));
+
+        if (pc.getBoolean("request.pool.blockWhenExhausted", false)) {
+            log.warn("request.pool.blockWhenExhausted is not supported, handlers are created when the pool is empty.");
+        }
+    }
+
+    /**
+     * 为router中每个handler类(及未匹配时使用的RequestHandler)建立对象池并预先创建对象, 在启动时调用一次
+     */
+    public void install(Router router) {
+        Set<Class<?>> installed = new HashSet<Class<?>>();
+        for (Router.Route route : router.routes()) {
+            if (installed.add(route.getHandler())) {
+                install(route.getHandler(), route);
+            }
+        }
+        if (installed.add(RequestHandler.class)) {
+            install(RequestHandler.class, null);
+        }
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private void install(Class<? extends RequestHandler> cls, final Router.Route route) {
+        Integer routeMax = UrlMap.routeValue(routeMaxIdle, cls);
+        int max = routeMax != null ? Math.min(idleLimit, routeMax) : maxIdlePerKey;
+
+        Pool<RequestHandler> pool = new Pool<RequestHandler>(max, maxIdlePerThread) {
+            @Override
+            protected RequestHandler newObject() {
+                return route != null ? route.newHandler() : new RequestHandler();
+            }
+        };
+        Pools.set((Class) cls, pool);
+
+        int warmed = 0;
+        try {
+            warmed = pool.fill(Math.min(prewarmPerKey, max));
+        }
+        catch (RuntimeException e) {
+            log.warn("prewarm handler pool failed: " + cls.getName(), e);
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("handler pool " + cls.getName() + " max:" + max + " prewarmed:" + warmed);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.fqserver.server;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.handler.ssl.SslHandshakeCompletionEvent;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.net.ssl.SSLSession;
+
+/**
+ * TLS握手统计: 完整握手与会话复用(session cache或session ticket)的握手次数, 及最近一秒的速率.
+ *
+ * 握手得到的session创建时间早于连接建立时间, 即为复用了之前的会话. OpenSSL引擎的session时间只精确到秒,
+ * 此时按秒比较, 同一秒内创建又复用的会话计为完整握手; OpenSSL引擎另有SslContexts.sessionStats的精确计数.
+ */
+public class HandshakeStats {
+
+    private final LongAdder full = new LongAdder();
+    private final LongAdder resumed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    private long lastFull;
+    private long lastResumed;
+    private volatile long fullPerSecond;
+    private volatile long resumedPerSecond;
+
+    /**
+     * 每个SSL连接一个, 握手完成后从pipeline中移除
+     */
+    public ChannelInboundHandlerAdapter newHandler() {
+        return new ChannelInboundHandlerAdapter() {
+            private final long connectTime = System.currentTimeMillis();
+
+            @Override
+            public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+                if (evt instanceof SslHandshakeCompletionEvent) {
+                    if (((SslHandshakeCompletionEvent) evt).isSuccess()) {
+                        SslHandler ssl = ctx.pipeline().get(SslHandler.class);
+                        SSLSession session = ssl == null ? null : ssl.engine().getSession();
+                        if (session != null && isResumed(session.getCreationTime(), connectTime)) {
+                            resumed.increment();
+                        } else {
+                            full.increment();
+                        }
+                    } else {
+                        failed.increment();
+                    }
+                    ctx.pipeline().remove(this);
+                }
+                super.userEventTriggered(ctx, evt);
+            }
+        };
+    }
+
+    static boolean isResumed(long creationTime, long connectTime) {
+        if (creationTime % 1000 == 0) {
+            return creationTime / 1000 < connectTime / 1000;
+        }
+        return creationTime < connectTime;
+    }
+
+    /**
+     * 每秒调用一次, 计算最近一秒的握手速率
+     */
+    public synchronized void tick() {
+        long f = full.sum();
+        long r = resumed.sum();
+        fullPerSecond = f - lastFull;
+        resumedPerSecond = r - lastResumed;
+        lastFull = f;
+        lastResumed = r;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<String, Object>();
+        stats.put("full", full.sum());
+        stats.put("resumed", resumed.sum());
+        stats.put("failed", failed.sum());
+        stats.put("fullPerSecond", fullPerSecond);
+        stats.put("resumedPerSecond", resumedPerSecond);
+        return stats;
+    }
+}
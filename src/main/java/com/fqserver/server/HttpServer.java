@@ -4,10 +4,9 @@ package com.fqserver.server;
 
 
 
+import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.fqserver.utils.time.DateUtil;
-
 import ch.qos.logback.classic.LoggerContext;
 import ch.qos.logback.classic.joran.JoranConfigurator;
 import io.netty.bootstrap.ServerBootstrap;
@@ -17,27 +16,59 @@ import io.netty.channel.Channel;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
 import io.netty.channel.ServerChannel;
+import io.netty.channel.WriteBufferWaterMark;
 import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
 import io.netty.channel.epoll.EpollEventLoopGroup;
 import io.netty.channel.epoll.EpollServerSocketChannel;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.nio.NioServerSocketChannel;
 import io.netty.handler.ssl.SslContext;
-import io.netty.handler.ssl.SslContextBuilder;
-import io.netty.handler.ssl.util.SelfSignedCertificate;
+import io.netty.util.AsciiString;
 import io.netty.util.Version;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
 /**
  * A HTTP server showing how to use the HTTP multipart package for file uploads.
  */
 public class HttpServer {
 
-	public volatile CharSequence curDateTime = DateUtil.nowGMT();
-	public final CharSequence SERVER_NAME = String.format("Netty/%s (%s)",
-			Version.identify().get("netty-common").artifactVersion(), System.getProperties().getProperty("os.name"));
+	private static Logger log = LoggerFactory.getLogger(HttpServer.class);
+
+	// Date与Server响应头, 预先编码为AsciiString; curDateTime由boss线程每秒更新
+	public volatile CharSequence curDateTime = CachedHeaders.date(System.currentTimeMillis());
+	public final CharSequence SERVER_NAME = AsciiString.cached(String.format("Netty/%s (%s)",
+			Version.identify().get("netty-common").artifactVersion(), System.getProperties().getProperty("os.name")));
 
 	private final NettyConfig config;
 
+	private HandlerExecutor handlerExecutor;
+
+	private PooledByteBufAllocator allocator;
+
+	private StaticFileCache fileCache;
+
+	private final TimeoutStats timeoutStats = new TimeoutStats();
+
+	private AdmissionController admission;
+	private SessionStore sessions;
+
+	private RateLimiter rateLimiter;
+
+	private BodyLimits bodyLimits;
+
+	private Compression compression;
+
+	private SslContext sslCtx;
+
+	private HandshakeStats handshakeStats;
+
+	private volatile List<AcceptCounter> acceptors = Collections.emptyList();
+
 	static {
 		try {
 			initLogbackConf();
@@ -85,19 +116,30 @@ public class HttpServer {
 	private void initNettyServer() throws Exception {
 
 		// Configure SSL.
-		final SslContext sslCtx;
 		if (this.getConfig().isSSL) {
-			SelfSignedCertificate ssc = new SelfSignedCertificate();
-			sslCtx = SslContextBuilder.forServer(ssc.certificate(), ssc.privateKey()).build();
+			sslCtx = SslContexts.create(this.getConfig());
+			handshakeStats = new HandshakeStats();
 		} else {
 			sslCtx = null;
 		}
 
+		// SO_REUSEPORT只在epoll下可用, 此时每个acceptor一个监听channel, 分别注册在不同的boss线程上
+		final boolean reusePort = Epoll.isAvailable() && this.getConfig().reusePort;
+		final int acceptorNum = reusePort ? Math.max(1, this.getConfig().acceptorNum) : 1;
+		if (this.getConfig().acceptorNum > 1 && acceptorNum == 1) {
+			if (!this.getConfig().reusePort) {
+				log.warn("netty.SO_REUSEPORT is disabled, use a single acceptor instead of " + this.getConfig().acceptorNum);
+			} else {
+				log.warn("SO_REUSEPORT needs epoll, use a single acceptor instead of " + this.getConfig().acceptorNum
+						+ ", epoll unavailable: " + Epoll.unavailabilityCause());
+			}
+		}
+
 		final EventLoopGroup bossGroup;
 		final EventLoopGroup workerGroup;
 		Class<? extends ServerChannel> serverChannelClass = null;
 		if (Epoll.isAvailable()) {
-			bossGroup = new EpollEventLoopGroup(this.getConfig().ioBossNum);
+			bossGroup = new EpollEventLoopGroup(Math.max(this.getConfig().ioBossNum, acceptorNum));
 			workerGroup = new EpollEventLoopGroup(this.getConfig().ioWorkerNum);
 			serverChannelClass = EpollServerSocketChannel.class;
 		} else {
@@ -105,6 +147,22 @@ public class HttpServer {
 			workerGroup = new NioEventLoopGroup(this.getConfig().ioWorkerNum);
 			serverChannelClass = NioServerSocketChannel.class;
 		}
+		handlerExecutor = HandlerExecutor.create(this.getConfig());
+
+		// 监听channel与子连接共用一个allocator
+		allocator = BufferAllocators.create(this.getConfig());
+
+		fileCache = new StaticFileCache(this.getConfig().staticFileCacheSize);
+
+		admission = AdmissionController.create(this.getConfig());
+		rateLimiter = RateLimiter.create(this.getConfig());
+		bodyLimits = new BodyLimits(this.getConfig());
+		compression = Compression.create(this.getConfig());
+		sessions = SessionStore.create(this.getConfig());
+
+		// 注册的路由编译成Router, InitServer.init中已经编译(并建立了对象池)时不再编译
+		UrlMap.router();
+
 		boolean isException = false;
 		try {
 			Runtime runTime = Runtime.getRuntime();
@@ -114,6 +172,10 @@ public class HttpServer {
 					System.out.println("ShutdownHook begin...");
 					workerGroup.shutdownGracefully();
 					bossGroup.shutdownGracefully();
+					handlerExecutor.shutdown();
+					if (compression != null) {
+						compression.shutdown();
+					}
 					System.out.println("ShutdownHook end...");
 				}
 			}));
@@ -126,46 +188,95 @@ public class HttpServer {
 					.option(ChannelOption.SO_KEEPALIVE, this.getConfig().keepAlive)
 					.option(ChannelOption.SO_REUSEADDR, this.getConfig().reuseAddr)
 					.option(ChannelOption.TCP_NODELAY, this.getConfig().tcpNoDelay)
-					// .option(EpollChannelOption.SO_REUSEPORT,
-					// this.reuse_port)
 					.option(ChannelOption.MAX_MESSAGES_PER_READ, Integer.MAX_VALUE)
-					.option(ChannelOption.ALLOCATOR, new PooledByteBufAllocator(true))
+					.option(ChannelOption.ALLOCATOR, allocator)
 					.option(ChannelOption.RCVBUF_ALLOCATOR, AdaptiveRecvByteBufAllocator.DEFAULT)
 
-					.childOption(ChannelOption.ALLOCATOR, new PooledByteBufAllocator(true))
+					.childOption(ChannelOption.ALLOCATOR, allocator)
 					.childOption(ChannelOption.RCVBUF_ALLOCATOR, AdaptiveRecvByteBufAllocator.DEFAULT)
 					.childOption(ChannelOption.SO_KEEPALIVE, this.getConfig().keepAlive)
 					.childOption(ChannelOption.SO_REUSEADDR, this.getConfig().reuseAddr)
 					.childOption(ChannelOption.TCP_NODELAY, this.getConfig().tcpNoDelay)
 					.childOption(ChannelOption.MAX_MESSAGES_PER_READ, Integer.MAX_VALUE)
+					// 写缓冲超过高水位时channel不可写, 分块响应暂停生成直到回落到低水位
+					.childOption(ChannelOption.WRITE_BUFFER_WATER_MARK,
+							new WriteBufferWaterMark(this.getConfig().writeBufferLowWaterMark,
+									this.getConfig().writeBufferHighWaterMark))
 					// .childOption(ChannelOption.CONNECT_TIMEOUT_MILLIS,
 					// this.connect_timeout)
 					// .childOption(ChannelOption.SO_TIMEOUT, this.so_timeout)
 					.childHandler(new HttpServerInitializer(sslCtx, this));
 
-			// bossGroup.next().scheduleWithFixedDelay(new Runnable() {
-			// @Override
-			// public void run() {
-			// try {
-			// curDateTime = DateUtil.nowGMT();
-			// } catch (Exception e) {
-			// System.out.println("bossGroup.next().scheduleWithFixedDelay error:"
-			// + e);
-			// }
-			// }
-			// }, 1000, 1000, TimeUnit.MILLISECONDS);
+			// 每秒更新一次Date响应头, 响应不再各自格式化时间
+			bossGroup.next().scheduleAtFixedRate(new Runnable() {
+				@Override
+				public void run() {
+					curDateTime = CachedHeaders.date(System.currentTimeMillis());
+				}
+			}, 1000 - System.currentTimeMillis() % 1000, 1000, TimeUnit.MILLISECONDS);
+
+			if (handshakeStats != null) {
+				// 每秒统计一次TLS握手速率
+				bossGroup.next().scheduleAtFixedRate(new Runnable() {
+					@Override
+					public void run() {
+						handshakeStats.tick();
+					}
+				}, 1000, 1000, TimeUnit.MILLISECONDS);
+			}
+
+			if (admission != null) {
+				// 每秒汇总一次响应延迟, 并调整准入上限
+				bossGroup.next().scheduleAtFixedRate(new Runnable() {
+					@Override
+					public void run() {
+						admission.tick();
+					}
+				}, 1000, 1000, TimeUnit.MILLISECONDS);
+			}
+
+			if (sessions != null) {
+				// 定时清除过期的session
+				bossGroup.next().scheduleAtFixedRate(new Runnable() {
+					@Override
+					public void run() {
+						sessions.sweep();
+					}
+				}, sessions.sweepInterval(), sessions.sweepInterval(), TimeUnit.MILLISECONDS);
+			}
+
+			if (reusePort) {
+				b.option(EpollChannelOption.SO_REUSEPORT, true);
+			}
+
+			List<AcceptCounter> counters = new ArrayList<AcceptCounter>(acceptorNum);
+			List<Channel> channels = new ArrayList<Channel>(acceptorNum);
+			for (int i = 0; i < acceptorNum; i++) {
+				AcceptCounter counter = new AcceptCounter(i);
+				Channel ch = b.clone().handler(counter).bind(this.getConfig().port).sync().channel();
 
-			Channel ch = b.bind(this.getConfig().port).sync().channel();
+				counters.add(counter);
+				channels.add(ch);
+			}
+			acceptors = Collections.unmodifiableList(counters);
 
-			System.out.println(HttpServer.class.getSimpleName() + " started and listen on : " + ch.localAddress());
+			System.out.println(HttpServer.class.getSimpleName() + " started and listen on : "
+					+ channels.get(0).localAddress() + ", acceptors: " + acceptorNum);
 
-			ch.closeFuture().sync();
+			for (Channel ch : channels) {
+				ch.closeFuture().sync();
+			}
 		} catch (Exception e) {
 			isException = true;
 			System.out.println("started exception : " + e);
 		} finally {
 			bossGroup.shutdownGracefully();
 			workerGroup.shutdownGracefully();
+			handlerExecutor.shutdown();
+			if (compression != null) {
+				compression.shutdown();
+			}
+			fileCache.clear();
 			if (isException) {
 				System.exit(1);
 			}
@@ -178,4 +289,73 @@ public class HttpServer {
 	public NettyConfig getConfig() {
 		return config;
 	}
+
+	public HandlerExecutor getHandlerExecutor() {
+		return handlerExecutor;
+	}
+
+	public PooledByteBufAllocator getAllocator() {
+		return allocator;
+	}
+
+	public SslContext getSslContext() {
+		return sslCtx;
+	}
+
+	/**
+	 * TLS握手统计, 未开启SSL时为null
+	 */
+	public HandshakeStats getHandshakeStats() {
+		return handshakeStats;
+	}
+
+	/**
+	 * 因超时关闭的连接数
+	 */
+	public TimeoutStats getTimeoutStats() {
+		return timeoutStats;
+	}
+
+	/**
+	 * 过载保护的准入控制, 没有配置上限时为null
+	 */
+	public AdmissionController getAdmission() {
+		return admission;
+	}
+
+	/**
+	 * 按客户端IP和路由的限流, 没有配置速率时为null
+	 */
+	public RateLimiter getRateLimiter() {
+		return rateLimiter;
+	}
+
+	public BodyLimits getBodyLimits() {
+		return bodyLimits;
+	}
+
+	public Compression getCompression() {
+		return compression;
+	}
+
+	/**
+	 * 内存中的session, sessionMaxSize为0时为null
+	 */
+	public SessionStore getSessions() {
+		return sessions;
+	}
+
+	/**
+	 * 静态文件的已打开文件缓存
+	 */
+	public StaticFileCache getFileCache() {
+		return fileCache;
+	}
+
+	/**
+	 * 每个监听channel的accept计数
+	 */
+	public List<AcceptCounter> getAcceptors() {
+		return acceptors;
+	}
 }
\ No newline at end of file
@@ -1,16 +1,44 @@
 package com.fqserver.server;
 
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelHandlerAdapter;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelPipeline;
+import io.netty.channel.SimpleChannelInboundHandler;
 import io.netty.channel.socket.SocketChannel;
+import io.netty.handler.codec.http.HttpMessage;
 import io.netty.handler.codec.http.HttpObjectAggregator;
 import io.netty.handler.codec.http.HttpRequestDecoder;
 import io.netty.handler.codec.http.HttpResponseEncoder;
+import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.codec.http.HttpServerUpgradeHandler;
+import io.netty.handler.codec.http.HttpServerUpgradeHandler.UpgradeCodec;
+import io.netty.handler.codec.http.HttpServerUpgradeHandler.UpgradeCodecFactory;
+import io.netty.handler.codec.http2.CleartextHttp2ServerUpgradeHandler;
+import io.netty.handler.codec.http2.Http2CodecUtil;
+import io.netty.handler.codec.http2.Http2FrameCodec;
+import io.netty.handler.codec.http2.Http2FrameCodecBuilder;
+import io.netty.handler.codec.http2.Http2MultiplexHandler;
+import io.netty.handler.codec.http2.Http2ServerUpgradeCodec;
+import io.netty.handler.codec.http2.Http2StreamFrameToHttpObjectCodec;
+import io.netty.handler.ssl.ApplicationProtocolNames;
+import io.netty.handler.ssl.ApplicationProtocolNegotiationHandler;
 import io.netty.handler.ssl.SslContext;
+import io.netty.handler.stream.ChunkedWriteHandler;
+import io.netty.handler.timeout.IdleState;
+import io.netty.handler.timeout.IdleStateEvent;
+import io.netty.handler.timeout.IdleStateHandler;
+import io.netty.util.AsciiString;
+import io.netty.util.ReferenceCountUtil;
+
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author Faye Li
- * 
+ *
  */
 public class HttpServerInitializer extends ChannelInitializer<SocketChannel> {
     private final HttpServer server;
@@ -20,15 +48,18 @@ public class HttpServerInitializer extends ChannelInitializer<SocketChannel> {
 	 */
     private final SslContext sslCtx;
 
+    private final IdleCloseHandler idleCloseHandler;
+
     /**
      * HttpServer初始化函数
-     * 
+     *
      * @param sslCtx
      *            传入的SslContext对象
      */
     public HttpServerInitializer(SslContext sslCtx, HttpServer svr) {
         this.sslCtx = sslCtx;
         this.server = svr;
+        this.idleCloseHandler = new IdleCloseHandler(svr.getTimeoutStats());
     }
 
     @Override
@@ -36,40 +67,278 @@ public class HttpServerInitializer extends ChannelInitializer<SocketChannel> {
         // Create a default pipeline implementation.
         ChannelPipeline pipeline = ch.pipeline();
 
+        NettyConfig config = this.server.getConfig();
+
+        // 读取过程中的flush推迟到channelReadComplete, 同一次读取中(例如pipelining)的多个响应合并为一次write系统调用;
+        // 不在读取过程中的flush(例如业务线程写出的响应)推迟到I/O线程的下一个任务, 同时到达的多个响应一起写出
+        if (config.flushConsolidation > 0) {
+            pipeline.addLast("flush", new ConsolidateFlushHandler(config.flushConsolidation));
+        }
+
         if (sslCtx != null) {
             pipeline.addLast(sslCtx.newHandler(ch.alloc()));
+            if (this.server.getHandshakeStats() != null) {
+                pipeline.addLast(this.server.getHandshakeStats().newHandler());
+            }
         }
 
-        // pipeline.addLast(new HttpServerCodec());
+        // 空闲超时(ALL_IDLE)由FullHttpServerHandler关闭连接; 写超时(WRITER_IDLE)以observeOutput检测写出是否有进展,
+        // 由RequestTimeoutHandler在有待写出数据时关闭连接
+        if (config.keepAliveIdleTimeout > 0 || config.soTimeout > 0) {
+            pipeline.addLast("idle", new IdleStateHandler(true,
+                                                          0,
+                                                          Math.max(0, config.soTimeout),
+                                                          Math.max(0, config.keepAliveIdleTimeout),
+                                                          TimeUnit.MILLISECONDS));
+        }
+
+        if (!config.http2) {
+            configureHttp1(pipeline);
+        } else if (sslCtx != null) {
+            // 通过ALPN协商h2或http/1.1
+            pipeline.addLast("alpn", new Http2OrHttpHandler());
+        } else {
+            configureCleartextHttp2(pipeline);
+        }
+    }
+
+    /**
+     * HTTP/1.1的处理阶段
+     */
+    private void configureHttp1(ChannelPipeline pipeline) {
+        NettyConfig config = this.server.getConfig();
+
+        if (config.httpServerCodec) {
+            // 请求解码与响应编码合在一个handler中, 少一次pipeline传递
+            pipeline.addLast("codec", newHttpServerCodec());
+        } else {
+            /**
+             * http-request解码器 http服务器端对request解码
+             */
+            pipeline.addLast("decoder", new HttpRequestDecoder(config.httpMaxInitialLineLength,
+                                                               config.httpMaxHeaderSize,
+                                                               config.httpMaxChunkSize,
+                                                               config.httpValidateHeaders,
+                                                               config.httpInitialBufferSize));
+
+            /**
+             * http-response解码器 http服务器端对response编码
+             */
+            pipeline.addLast("encoder", new HttpResponseEncoder());
+        }
+
+        configureRequestStages(pipeline);
+    }
+
+    private HttpServerCodec newHttpServerCodec() {
+        NettyConfig config = this.server.getConfig();
+        return new HttpServerCodec(config.httpMaxInitialLineLength,
+                                   config.httpMaxHeaderSize,
+                                   config.httpMaxChunkSize,
+                                   config.httpValidateHeaders,
+                                   config.httpInitialBufferSize);
+    }
+
+    /**
+     * 请求头/请求body读超时, HTTP/1.x连接上为连接的每个请求, HTTP/2上为每个stream
+     */
+    private void addRequestTimeout(ChannelPipeline pipeline) {
+        NettyConfig config = this.server.getConfig();
+        pipeline.addLast("timeout", new RequestTimeoutHandler(config.connTimeout,
+                                                              config.soTimeout,
+                                                              this.server.getTimeoutStats()));
+    }
+
+    /**
+     * h2c: 同时支持prior-knowledge方式和HTTP/1.1 Upgrade方式, 没有升级的连接按HTTP/1.1处理
+     */
+    private void configureCleartextHttp2(ChannelPipeline pipeline) {
+        final HttpServerCodec sourceCodec = newHttpServerCodec();
+
+        UpgradeCodecFactory upgradeCodecFactory = new UpgradeCodecFactory() {
+            @Override
+            public UpgradeCodec newUpgradeCodec(CharSequence protocol) {
+                if (AsciiString.contentEquals(Http2CodecUtil.HTTP_UPGRADE_PROTOCOL_NAME, protocol)) {
+                    return new Http2ServerUpgradeCodec(newHttp2FrameCodec(), newHttp2MultiplexHandler());
+                }
+                return null;
+            }
+        };
+
+        HttpServerUpgradeHandler upgradeHandler = new HttpServerUpgradeHandler(sourceCodec,
+                                                                               upgradeCodecFactory,
+                                                                               this.server.getBodyLimits()
+                                                                                          .aggregatorMaxContentLength());
+
+        pipeline.addLast("h2c", new CleartextHttp2ServerUpgradeHandler(sourceCodec,
+                                                                      upgradeHandler,
+                                                                      new Http2Handlers()));
+        pipeline.addLast("http1", new Http1FallbackHandler());
+        pipeline.addLast("idleClose", idleCloseHandler);
+    }
+
+    /**
+     * HTTP/2连接的帧编解码
+     */
+    private Http2FrameCodec newHttp2FrameCodec() {
+        return Http2FrameCodecBuilder.forServer().build();
+    }
+
+    /**
+     * 每个stream为一个子channel, 经Http2StreamFrameToHttpObjectCodec转换后,
+     * 与HTTP/1.1共用同样的FullHttpServerHandler处理
+     */
+    private Http2MultiplexHandler newHttp2MultiplexHandler() {
+        return new Http2MultiplexHandler(new ChannelInitializer<Channel>() {
+            @Override
+            protected void initChannel(Channel ch) throws Exception {
+                ChannelPipeline pipeline = ch.pipeline();
+                pipeline.addLast("codec", new Http2StreamFrameToHttpObjectCodec(true));
+
+                configureRequestStages(pipeline);
+            }
+        });
+    }
+
+    /**
+     * 编解码之后的处理阶段, HTTP/1.1连接与HTTP/2的stream共用
+     */
+    private void configureRequestStages(ChannelPipeline pipeline) {
+
+        // HTTP/2的stream子channel也各有读超时: 只发出HEADERS而迟迟不发送(或不发完)DATA的stream返回408并关闭,
+        // 不会因为连接上还有活动的stream而一直占用
+        addRequestTimeout(pipeline);
+
+        // body长度检查, 限流与过载保护, 在读取和聚合body之前拒绝请求; 被拒绝的请求不占用令牌和准入许可
+        BodyLimits bodyLimits = this.server.getBodyLimits();
+        pipeline.addLast("bodylimit", new BodyLimitHandler(bodyLimits));
+        RateLimiter rateLimiter = this.server.getRateLimiter();
+        if (rateLimiter != null) {
+            pipeline.addLast("ratelimit", new RateLimitHandler(rateLimiter));
+        }
+        AdmissionController admission = this.server.getAdmission();
+        if (admission != null) {
+            pipeline.addLast("admission", new AdmissionHandler(admission));
+        }
 
-        // 定义缓冲数据量
-        // pipeline.addLast("aggegator", new HttpObjectAggregator(10));
+        // 按Accept-Encoding压缩响应, 位于streaming之前, 流式接收的请求也记录Accept-Encoding
+        Compression compression = this.server.getCompression();
+        if (compression != null) {
+            pipeline.addLast("compressor", new CompressionHandler(compression));
+        }
 
-        /**
-         * http-request解码器 http服务器端对request解码
-         */
-        pipeline.addLast("decoder", new HttpRequestDecoder(4096, 8192, 8192, false));
+        // 注册为StreamingRequestHandler的路由不经过聚合, 按分块接收body
+        pipeline.addLast("streaming", new StreamingRequestDispatcher(this.server));
 
         // 定义缓冲数据量 使用FullHttpServerHandler之前, 必须添加此HttpObjectAggregator
-        pipeline.addLast("aggregator", new HttpObjectAggregator(1048576));
-
-        /**
-         * http-response解码器 http服务器端对response编码
-         */
-        pipeline.addLast("encoder", new HttpResponseEncoder());
-
-        // Remove the following line if you don't want automatic content
-        // decompression.
-        // pipeline.addLast("inflater", new HttpContentDecompressor());
-        /**
-         * 压缩 Compresses an HttpMessage and an HttpContent in gzip or deflate
-         * encoding while respecting the "Accept-Encoding" header. If there is
-         * no matching encoding, no compression is done.
-         */
-        // pipeline.addLast("deflater", new HttpContentCompressor(1));
-        // pipeline.addLast("chunkedWriter", new ChunkedWriteHandler());
-
-        pipeline.addLast("handler", new FullHttpServerHandler(this.server));
+        pipeline.addLast("aggregator", new HttpObjectAggregator(bodyLimits.aggregatorMaxContentLength()));
 
+        // 分块响应(RequestHandler.writeChunked), 只在channel可写时读取下一块
+        pipeline.addLast("chunkedWriter", new ChunkedWriteHandler());
+
+        // 业务处理阶段, 按NettyConfig.executorMode在I/O线程或业务线程执行
+        pipeline.addLast("handler",
+                         new FullHttpServerHandler(this.server, this.server.getHandlerExecutor()));
+    }
+
+    /**
+     * 根据ALPN协商的结果配置h2或HTTP/1.1
+     */
+    private class Http2OrHttpHandler extends ApplicationProtocolNegotiationHandler {
+
+        Http2OrHttpHandler() {
+            super(ApplicationProtocolNames.HTTP_1_1);
+        }
+
+        @Override
+        protected void configurePipeline(ChannelHandlerContext ctx, String protocol)
+                throws Exception {
+            if (ApplicationProtocolNames.HTTP_2.equals(protocol)) {
+                ctx.pipeline().addLast(new Http2Handlers());
+                ctx.pipeline().addLast("idleClose", idleCloseHandler);
+                return;
+            }
+
+            if (ApplicationProtocolNames.HTTP_1_1.equals(protocol)) {
+                configureHttp1(ctx.pipeline());
+                return;
+            }
+
+            throw new IllegalStateException("unknown protocol: " + protocol);
+        }
+    }
+
+    /**
+     * 加入pipeline时在原位置换成Http2FrameCodec和Http2MultiplexHandler;
+     * h2c prior-knowledge方式由CleartextHttp2ServerUpgradeHandler加入, 只能接受一个handler
+     */
+    private class Http2Handlers extends ChannelHandlerAdapter {
+
+        @Override
+        public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
+            ChannelPipeline pipeline = ctx.pipeline();
+            pipeline.addAfter(ctx.name(), "h2", newHttp2FrameCodec());
+            pipeline.addAfter("h2", "h2mux", newHttp2MultiplexHandler());
+            pipeline.remove(this);
+        }
+    }
+
+    /**
+     * h2c连接上收到HTTP/1.1请求, 说明客户端没有升级, 此时再加上HTTP/1.1的处理阶段;
+     * 空闲超时改由FullHttpServerHandler处理, 正在处理请求时不关闭
+     */
+    private class Http1FallbackHandler extends SimpleChannelInboundHandler<HttpMessage> {
+
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, HttpMessage msg) throws Exception {
+            ChannelPipeline pipeline = ctx.pipeline();
+            if (pipeline.context(idleCloseHandler) != null) {
+                pipeline.remove(idleCloseHandler);
+            }
+
+            String name = ctx.name();
+            configureRequestStages(pipeline);
+            pipeline.remove(name);
+
+            pipeline.fireChannelRead(ReferenceCountUtil.retain(msg));
+        }
+    }
+
+    /**
+     * HTTP/2连接空闲超时, 或有待写出数据却长时间没有写出时关闭连接(关闭时会发送GOAWAY);
+     * 还有活动的stream(例如处理较慢的请求或未完成的AsyncRequestHandler)时不因空闲关闭
+     */
+    @Sharable
+    static final class IdleCloseHandler extends ChannelInboundHandlerAdapter {
+        private final TimeoutStats stats;
+
+        IdleCloseHandler(TimeoutStats stats) {
+            this.stats = stats;
+        }
+
+        @Override
+        public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+            if (evt instanceof IdleStateEvent) {
+                IdleState state = ((IdleStateEvent) evt).state();
+                if (state == IdleState.ALL_IDLE) {
+                    if (hasActiveStreams(ctx)) {
+                        return;
+                    }
+                    stats.idle();
+                    ctx.close();
+                } else if (state == IdleState.WRITER_IDLE
+                           && TimeoutStats.hasPendingWrites(ctx.channel())) {
+                    stats.write();
+                    ctx.close();
+                }
+                return;
+            }
+            super.userEventTriggered(ctx, evt);
+        }
+
+        private static boolean hasActiveStreams(ChannelHandlerContext ctx) {
+            Http2FrameCodec codec = ctx.pipeline().get(Http2FrameCodec.class);
+            return codec != null && codec.connection().numActiveStreams() > 0;
+        }
     }
-}
\ No newline at end of file
+}
@@ -12,6 +12,21 @@ public class NettyConfig {
 
     public boolean isSSL = System.getProperty("ssl") != null;
 
+    // SSL证书及私钥的PEM文件, 未配置时使用自签名证书(仅用于测试)
+    public String sslCertFile = "";
+    public String sslKeyFile = "";
+    public String sslKeyPassword = "";
+
+    // SSL引擎: auto(有netty-tcnative时用OpenSSL), openssl, jdk
+    public String sslProvider = SslContexts.AUTO;
+
+    // SSL session cache的大小及超时(秒), 0为引擎默认值
+    public int sslSessionCacheSize = 20480;
+    public int sslSessionTimeout = 3600;
+
+    // 是否开启SSL session ticket
+    public boolean sslSessionTickets = true;
+
     public String host = "127.0.0.1";
     public int port = isSSL ? 8443 : 8080;
 
@@ -30,8 +45,156 @@ public class NettyConfig {
     public boolean reuseAddr = true;
     public boolean reusePort = true;
 
+    // 连接写缓冲的低/高水位(字节), 超过高水位时分块响应暂停写出, 回落到低水位后继续
+    public int writeBufferLowWaterMark = 32768;
+    public int writeBufferHighWaterMark = 65536;
+
+    // 分块响应(RequestHandler.writeStream)每块的大小
+    public int responseChunkSize = 8192;
+
+    // 合并flush: 读取过程中产生的flush推迟到本次读取结束时一起写出, 连续这么多次flush后强制写出一次, 0为关闭
+    public int flushConsolidation = 256;
+
+    // acceptor(监听channel)数, 大于1时在epoll下以SO_REUSEPORT绑定多个监听channel到同一端口, 由内核分摊accept
+    public int acceptorNum = 1;
+
     public boolean useReqObjectPool = false;
 
+    // 服务器共用的PooledByteBufAllocator配置, 小于0时使用netty默认值
+    public boolean allocPreferDirect = true;
+    public int allocHeapArenas = -1;
+    public int allocDirectArenas = -1;
+    public int allocPageSize = -1;
+    public int allocMaxOrder = -1;
+    public int allocTinyCacheSize = -1;
+    public int allocSmallCacheSize = -1;
+    public int allocNormalCacheSize = -1;
+    // 非I/O线程(如业务线程)是否也使用线程本地缓存
+    public boolean allocUseCacheForAllThreads = true;
+
+    // HTTP/1.1 长连接模式, 客户端协商keep-alive时不关闭连接, false则每个响应后关闭连接
+    public boolean httpKeepAlive = true;
+
+    // 每个长连接最多处理的请求数, 达到后响应Connection: close, 0为不限制
+    public int keepAliveMaxRequests = 10000;
+
+    // 长连接空闲超时时间(毫秒), 0为不限制
+    public int keepAliveIdleTimeout = 60000;
+
+    // AsyncRequestHandler的默认期限(毫秒), 超过时返回504, 0为不限制
+    public int asyncTimeout = 30000;
+
+    // 内存中session的上限个数, 0为不使用session
+    public int sessionMaxSize = 100000;
+
+    // session的空闲超时时间(秒), 超过后失效
+    public int sessionTimeout = 1800;
+
+    // 保存session id的cookie名
+    public String sessionCookieName = "SESSIONID";
+
+    // 是否支持HTTP/2: SSL时通过ALPN协商h2, 非SSL时支持h2c(prior-knowledge及Upgrade)
+    public boolean http2 = false;
+
+    // HTTP/1.x解码的上限(字节): 请求行, 请求头, 每块body
+    public int httpMaxInitialLineLength = 4096;
+    public int httpMaxHeaderSize = 8192;
+    public int httpMaxChunkSize = 8192;
+
+    // 是否校验请求头名/值中的非法字符
+    public boolean httpValidateHeaders = false;
+
+    // 解码请求行/请求头的初始缓冲大小
+    public int httpInitialBufferSize = 128;
+
+    // 请求body的最大长度, 超过时返回413
+    public int httpMaxContentLength = 1048576;
+
+    // 单独指定的路由body上限, 格式: /path=bytes,/prefix/*=bytes
+    public String httpRouteMaxContentLength = "";
+
+    // 以一个HttpServerCodec代替分开的HttpRequestDecoder和HttpResponseEncoder
+    public boolean httpServerCodec = false;
+
+    // 是否按Accept-Encoding压缩响应body
+    public boolean compression = false;
+
+    // 支持的编码, 按优先顺序: gzip, deflate, snappy, lz4
+    public String compressionEncodings = "gzip,deflate";
+
+    // 小于此长度(字节)的响应不压缩
+    public int compressionMinSize = 1024;
+
+    // 压缩的Content-Type前缀
+    public String compressionTypes = "text/,application/json,application/javascript,application/xml,application/cbor,image/svg+xml";
+
+    // 压缩线程数, 大于0时不小于compressionOffloadSize的响应在压缩线程上压缩, 0为在I/O线程上压缩
+    public int compressionThreads = 0;
+    public int compressionOffloadSize = 65536;
+    // 压缩线程的队列长度, 已满时在I/O线程上压缩
+    public int compressionQueueSize = 1024;
+
+    // 业务处理的执行方式: inline(I/O线程), group(DefaultEventExecutorGroup), pool(有界队列线程池), virtual(JDK21+虚拟线程)
+    // 默认inline; handler中有阻塞调用(数据库, 远程服务)时再改为pool等方式
+    public String executorMode = HandlerExecutor.INLINE;
+
+    // 业务线程数, group/pool方式有效
+    public int executorThreads = 64;
+
+    // 业务任务队列长度, 队列满时返回503
+    public int executorQueueSize = 10000;
+
+    // 服务器统计信息的访问路径, 为空则不开放
+    public String statsPath = "";
+
+    // 静态文件的url前缀, 为空则不开放
+    public String staticPath = "";
+
+    // 静态文件的根目录
+    public String staticRoot = "static";
+
+    // 缓存的已打开文件数
+    public int staticFileCacheSize = 256;
+
+    // 静态文件响应的Cache-Control max-age(秒)
+    public int staticMaxAge = 3600;
+
+    // 每个客户端IP对每个路由每秒的请求数, 超过时返回429, 0为不限制
+    public int rateLimitRate = 0;
+
+    // 允许的突发请求数
+    public int rateLimitBurst = 20;
+
+    // 单独指定的路由速率, 格式: /path=rate,/prefix/*=rate, rate为0则该路由不限流
+    public String rateLimitRoutes = "";
+
+    // 令牌桶总数的上限
+    public int rateLimitMaxClients = 100000;
+
+    // 可信的反向代理IP, 逗号分隔; 只有来自这些地址的连接才按X-Forwarded-For区分客户端
+    public String rateLimitTrustedProxies = "";
+
+    // 同时处理中的请求数上限, 超过时返回503, 0为不限制
+    public int admissionMaxInFlight = 0;
+
+    // 每个路由同时处理中的请求数上限, 0为不限制
+    public int admissionRouteMaxInFlight = 0;
+
+    // 单独指定的路由上限, 格式: /path=limit,/prefix/*=limit
+    public String admissionRouteLimits = "";
+
+    // I/O线程待执行任务数的上限, 超过时返回503, 0为不限制
+    public int admissionMaxPendingTasks = 0;
+
+    // 是否按响应延迟自动调整admissionMaxInFlight以内的上限
+    public boolean admissionAdaptive = false;
+
+    // 自动调整时上限的最小值
+    public int admissionMinInFlight = 16;
+
+    // 自动调整的目标响应延迟(毫秒)
+    public int admissionLatencyTarget = 200;
+
     // 是否推送buffer数据到aws firehose, 默认为false
     public boolean isSendToFirehose = false;
 
@@ -131,6 +294,13 @@ public class NettyConfig {
 
         this.port = this.isSSL ? pc.getInt("netty.ssl", this.port) : pc.getInt("netty.port",
                                                                                this.port);
+        this.sslCertFile = pc.getString("netty.sslCertFile", this.sslCertFile);
+        this.sslKeyFile = pc.getString("netty.sslKeyFile", this.sslKeyFile);
+        this.sslKeyPassword = pc.getString("netty.sslKeyPassword", this.sslKeyPassword);
+        this.sslProvider = pc.getString("netty.sslProvider", this.sslProvider);
+        this.sslSessionCacheSize = pc.getInt("netty.sslSessionCacheSize", this.sslSessionCacheSize);
+        this.sslSessionTimeout = pc.getInt("netty.sslSessionTimeout", this.sslSessionTimeout);
+        this.sslSessionTickets = pc.getBoolean("netty.sslSessionTickets", this.sslSessionTickets);
 
         this.ioBossNum = pc.getInt("netty.ioBossNum", this.ioBossNum);
         this.ioWorkerNum = pc.getInt("netty.ioWorkerNum", this.ioWorkerNum);
@@ -143,8 +313,95 @@ public class NettyConfig {
         this.keepAlive = pc.getBoolean("netty.SO_KEEPALIVE", this.keepAlive);
         this.tcpNoDelay = pc.getBoolean("netty.TCP_NODELAY", this.tcpNoDelay);
         this.reuseAddr = pc.getBoolean("netty.SO_REUSEADDR", this.reuseAddr);
+        this.reusePort = pc.getBoolean("netty.SO_REUSEPORT", this.reusePort);
+        this.acceptorNum = pc.getInt("netty.acceptorNum", this.acceptorNum);
+        this.writeBufferLowWaterMark = pc.getInt("netty.writeBufferLowWaterMark",
+                                                 this.writeBufferLowWaterMark);
+        this.writeBufferHighWaterMark = pc.getInt("netty.writeBufferHighWaterMark",
+                                                  this.writeBufferHighWaterMark);
+        this.responseChunkSize = pc.getInt("netty.responseChunkSize", this.responseChunkSize);
+        this.flushConsolidation = pc.getInt("netty.flushConsolidation", this.flushConsolidation);
 
         this.useReqObjectPool = pc.getBoolean("netty.useObjectPool", this.useReqObjectPool);
+
+        this.allocPreferDirect = pc.getBoolean("netty.allocPreferDirect", this.allocPreferDirect);
+        this.allocHeapArenas = pc.getInt("netty.allocHeapArenas", this.allocHeapArenas);
+        this.allocDirectArenas = pc.getInt("netty.allocDirectArenas", this.allocDirectArenas);
+        this.allocPageSize = pc.getInt("netty.allocPageSize", this.allocPageSize);
+        this.allocMaxOrder = pc.getInt("netty.allocMaxOrder", this.allocMaxOrder);
+        this.allocTinyCacheSize = pc.getInt("netty.allocTinyCacheSize", this.allocTinyCacheSize);
+        this.allocSmallCacheSize = pc.getInt("netty.allocSmallCacheSize", this.allocSmallCacheSize);
+        this.allocNormalCacheSize = pc.getInt("netty.allocNormalCacheSize",
+                                              this.allocNormalCacheSize);
+        this.allocUseCacheForAllThreads = pc.getBoolean("netty.allocUseCacheForAllThreads",
+                                                        this.allocUseCacheForAllThreads);
+
+        this.httpKeepAlive = pc.getBoolean("netty.httpKeepAlive", this.httpKeepAlive);
+        this.keepAliveMaxRequests = pc.getInt("netty.keepAliveMaxRequests",
+                                              this.keepAliveMaxRequests);
+        this.keepAliveIdleTimeout = pc.getInt("netty.keepAliveIdleTimeout",
+                                              this.keepAliveIdleTimeout);
+        this.asyncTimeout = pc.getInt("netty.asyncTimeout", this.asyncTimeout);
+        this.sessionMaxSize = pc.getInt("netty.sessionMaxSize", this.sessionMaxSize);
+        this.sessionTimeout = pc.getInt("netty.sessionTimeout", this.sessionTimeout);
+        this.sessionCookieName = pc.getString("netty.sessionCookieName", this.sessionCookieName);
+        this.http2 = pc.getBoolean("netty.http2", this.http2);
+        this.httpMaxInitialLineLength = pc.getInt("netty.httpMaxInitialLineLength",
+                                                  this.httpMaxInitialLineLength);
+        this.httpMaxHeaderSize = pc.getInt("netty.httpMaxHeaderSize", this.httpMaxHeaderSize);
+        this.httpMaxChunkSize = pc.getInt("netty.httpMaxChunkSize", this.httpMaxChunkSize);
+        this.httpValidateHeaders = pc.getBoolean("netty.httpValidateHeaders",
+                                                 this.httpValidateHeaders);
+        this.httpInitialBufferSize = pc.getInt("netty.httpInitialBufferSize",
+                                               this.httpInitialBufferSize);
+        this.httpMaxContentLength = pc.getInt("netty.httpMaxContentLength",
+                                              this.httpMaxContentLength);
+        this.httpRouteMaxContentLength = pc.getString("netty.httpRouteMaxContentLength",
+                                                      this.httpRouteMaxContentLength);
+        this.httpServerCodec = pc.getBoolean("netty.httpServerCodec", this.httpServerCodec);
+
+        this.compression = pc.getBoolean("netty.compression", this.compression);
+        this.compressionEncodings = pc.getString("netty.compressionEncodings",
+                                                 this.compressionEncodings);
+        this.compressionMinSize = pc.getInt("netty.compressionMinSize", this.compressionMinSize);
+        this.compressionTypes = pc.getString("netty.compressionTypes", this.compressionTypes);
+        this.compressionThreads = pc.getInt("netty.compressionThreads", this.compressionThreads);
+        this.compressionOffloadSize = pc.getInt("netty.compressionOffloadSize",
+                                                this.compressionOffloadSize);
+        this.compressionQueueSize = pc.getInt("netty.compressionQueueSize",
+                                              this.compressionQueueSize);
+
+        this.executorMode = pc.getString("netty.executorMode", this.executorMode);
+        this.executorThreads = pc.getInt("netty.executorThreads", this.executorThreads);
+        this.executorQueueSize = pc.getInt("netty.executorQueueSize", this.executorQueueSize);
+
+        this.statsPath = pc.getString("netty.statsPath", this.statsPath);
+
+        this.staticPath = pc.getString("netty.staticPath", this.staticPath);
+        this.staticRoot = pc.getString("netty.staticRoot", this.staticRoot);
+        this.staticFileCacheSize = pc.getInt("netty.staticFileCacheSize", this.staticFileCacheSize);
+        this.staticMaxAge = pc.getInt("netty.staticMaxAge", this.staticMaxAge);
+
+        this.rateLimitRate = pc.getInt("netty.rateLimitRate", this.rateLimitRate);
+        this.rateLimitBurst = pc.getInt("netty.rateLimitBurst", this.rateLimitBurst);
+        this.rateLimitRoutes = pc.getString("netty.rateLimitRoutes", this.rateLimitRoutes);
+        this.rateLimitMaxClients = pc.getInt("netty.rateLimitMaxClients", this.rateLimitMaxClients);
+        this.rateLimitTrustedProxies = pc.getString("netty.rateLimitTrustedProxies",
+                                                    this.rateLimitTrustedProxies);
+
+        this.admissionMaxInFlight = pc.getInt("netty.admissionMaxInFlight",
+                                              this.admissionMaxInFlight);
+        this.admissionRouteMaxInFlight = pc.getInt("netty.admissionRouteMaxInFlight",
+                                                   this.admissionRouteMaxInFlight);
+        this.admissionRouteLimits = pc.getString("netty.admissionRouteLimits",
+                                                 this.admissionRouteLimits);
+        this.admissionMaxPendingTasks = pc.getInt("netty.admissionMaxPendingTasks",
+                                                  this.admissionMaxPendingTasks);
+        this.admissionAdaptive = pc.getBoolean("netty.admissionAdaptive", this.admissionAdaptive);
+        this.admissionMinInFlight = pc.getInt("netty.admissionMinInFlight",
+                                              this.admissionMinInFlight);
+        this.admissionLatencyTarget = pc.getInt("netty.admissionLatencyTarget",
+                                                this.admissionLatencyTarget);
         this.initCacheSpanTime = pc.getInt("netty.initCacheSpanTime", this.initCacheSpanTime);
 
         this.defaultWelcomeInfo = pc.getString("netty.welcome", this.defaultWelcomeInfo);
@@ -0,0 +1,38 @@
+package com.fqserver.server;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponseStatus;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 限流阶段: 请求头到达时按客户端IP和路由取令牌, 超过速率时返回预先生成的429,
+ * 不再读取body, 也就不会进入RequestHandlerV2.doPost的解密和解压.
+ */
+public class RateLimitHandler extends RequestGate {
+
+    private static Logger log = LoggerFactory.getLogger(RateLimitHandler.class);
+
+    private static final Rejection TOO_MANY_REQUESTS = new Rejection(HttpResponseStatus.TOO_MANY_REQUESTS,
+                                                                     1);
+
+    private final RateLimiter limiter;
+
+    public RateLimitHandler(RateLimiter limiter) {
+        super(TOO_MANY_REQUESTS);
+        this.limiter = limiter;
+    }
+
+    @Override
+    protected boolean accept(ChannelHandlerContext ctx, HttpRequest req) {
+        if (limiter.tryAcquire(ctx.channel(), req)) {
+            return true;
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("rate limited, reject request:" + req.uri() + " " + ctx.channel());
+        }
+        return false;
+    }
+}
@@ -0,0 +1,268 @@
+package com.fqserver.server;
+
+import io.netty.channel.Channel;
+import io.netty.handler.codec.http.HttpRequest;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 按客户端IP和路由限流, 每个(路由, IP)一个令牌桶. 路由为匹配到的注册路径, 同一个handler类的多个路径各自限流,
+ * 没有匹配的路径共用一个路由.
+ *
+ * 令牌桶以GCRA方式实现: 桶的状态只是一个"理论到达时间"(tat), 每个请求把tat推后一个间隔,
+ * tat超前当前时间超过(burst - 1)个间隔时拒绝; 以一次CAS更新, 不需要加锁.
+ *
+ * 客户端以连接的远端地址区分; 远端是rateLimitTrustedProxies中的代理时, 取X-Forwarded-For中从右往左第一个不是可信代理的地址,
+ * 客户端自己加上的X-Forwarded-For因此不能绕过限流或占用其他IP的令牌.
+ *
+ * 令牌桶分散在多个ConcurrentHashMap分段中, 总数不超过rateLimitMaxClients. 分段满时先淘汰已经攒满令牌的桶
+ * (淘汰后重建的桶状态相同), 仍然不够时再任意淘汰一部分.
+ */
+public class RateLimiter {
+
+    private static final int STRIPES = 16;
+
+    private final long defaultInterval;
+    private final int burst;
+    private final String statsPath;
+    private final Set<String> trustedProxies;
+
+    // 单独指定了速率的路由
+    private final Map<String, Integer> routeRates;
+    private final ConcurrentHashMap<Router.Route, Limit> limits = new ConcurrentHashMap<Router.Route, Limit>();
+    private final AtomicInteger limitIds = new AtomicInteger();
+    // 没有匹配的路由的请求共用
+    private final Limit unmatched;
+
+    private final ConcurrentHashMap<String, AtomicLong>[] stripes;
+    private final int stripeCapacity;
+
+    private final LongAdder allowed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * 没有配置速率时返回null, 此时不在pipeline中加入限流
+     */
+    public static RateLimiter create(NettyConfig config) {
+        if (config.rateLimitRate <= 0 && config.rateLimitRoutes.trim().length() == 0) {
+            return null;
+        }
+        return new RateLimiter(config);
+    }
+
+    @SuppressWarnings("unchecked")
+    RateLimiter(NettyConfig config) {
+        this.burst = Math.max(1, config.rateLimitBurst);
+        this.defaultInterval = interval(config.rateLimitRate);
+        this.statsPath = config.statsPath;
+        this.routeRates = UrlMap.parseRouteValues(config.rateLimitRoutes);
+        this.trustedProxies = parseProxies(config.rateLimitTrustedProxies);
+
+        this.stripes = new ConcurrentHashMap[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            this.stripes[i] = new ConcurrentHashMap<String, AtomicLong>();
+        }
+        this.stripeCapacity = Math.max(16, config.rateLimitMaxClients / STRIPES);
+        this.unmatched = newLimit("unmatched", defaultInterval);
+    }
+
+    private static long interval(int rate) {
+        return rate > 0 ? TimeUnit.SECONDS.toNanos(1) / rate : 0;
+    }
+
+    /**
+     * 在I/O线程上收到请求头时调用, 返回false表示超过速率
+     */
+    boolean tryAcquire(Channel channel, HttpRequest req) {
+        if (isStatsPath(req.uri())) {
+            return true;
+        }
+
+        Limit limit = limit(UrlMap.match(channel, req));
+        if (limit.interval == 0) {
+            return true;
+        }
+
+        String key = limit.id + "|" + clientIp(channel, req);
+        long now = System.nanoTime();
+        AtomicLong bucket = bucket(key, now);
+
+        for (;;) {
+            long tat = bucket.get();
+            long start = Math.max(tat, now);
+            if (start - now > limit.tolerance) {
+                limit.rejected.increment();
+                rejected.increment();
+                return false;
+            }
+            if (bucket.compareAndSet(tat, start + limit.interval)) {
+                allowed.increment();
+                return true;
+            }
+        }
+    }
+
+    private boolean isStatsPath(String uri) {
+        if (statsPath.length() == 0 || !uri.startsWith(statsPath)) {
+            return false;
+        }
+        return uri.length() == statsPath.length() || uri.charAt(statsPath.length()) == '?';
+    }
+
+    /**
+     * 限流使用的客户端IP: 连接的远端地址, 远端为可信代理时取X-Forwarded-For中最右边的非可信代理地址
+     */
+    String clientIp(Channel channel, HttpRequest req) {
+        String remote = ((InetSocketAddress) channel.remoteAddress()).getAddress().getHostAddress();
+        if (trustedProxies.isEmpty() || !trustedProxies.contains(remote)) {
+            return remote;
+        }
+
+        String forwarded = req.headers().get(CachedHeaders.X_FORWARDED_FOR);
+        if (forwarded == null) {
+            return remote;
+        }
+        String client = remote;
+        int end = forwarded.length();
+        while (end > 0) {
+            int comma = forwarded.lastIndexOf(',', end - 1);
+            String ip = forwarded.substring(comma + 1, end).trim();
+            end = comma < 0 ? 0 : comma;
+            if (ip.length() == 0) {
+                continue;
+            }
+            client = ip;
+            if (!trustedProxies.contains(ip)) {
+                break;
+            }
+        }
+        return client;
+    }
+
+    static Set<String> parseProxies(String proxies) {
+        Set<String> set = new HashSet<String>();
+        for (String ip : proxies.split(",")) {
+            ip = ip.trim();
+            if (ip.length() > 0) {
+                set.add(ip);
+            }
+        }
+        return set;
+    }
+
+    private AtomicLong bucket(String key, long now) {
+        int h = key.hashCode();
+        ConcurrentHashMap<String, AtomicLong> stripe = stripes[(h ^ (h >>> 16)) & (STRIPES - 1)];
+
+        AtomicLong bucket = stripe.get(key);
+        if (bucket != null) {
+            return bucket;
+        }
+
+        if (stripe.size() >= stripeCapacity) {
+            evict(stripe, now);
+        }
+        // tat为当前时间, 即令牌已满的桶
+        AtomicLong created = new AtomicLong(now);
+        bucket = stripe.putIfAbsent(key, created);
+        return bucket != null ? bucket : created;
+    }
+
+    private void evict(ConcurrentHashMap<String, AtomicLong> stripe, long now) {
+        int removed = 0;
+        Iterator<AtomicLong> it = stripe.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().get() <= now) {
+                it.remove();
+                removed++;
+            }
+        }
+
+        // 攒满令牌的桶不够时再任意淘汰, 留出四分之一的空间
+        int target = stripeCapacity * 3 / 4;
+        it = stripe.values().iterator();
+        while (stripe.size() > target && it.hasNext()) {
+            it.next();
+            it.remove();
+            removed++;
+        }
+        evictions.add(removed);
+    }
+
+    private Limit limit(Router.Match match) {
+        if (match == null) {
+            return unmatched;
+        }
+        Router.Route route = match.getRoute();
+        Limit limit = limits.get(route);
+        if (limit == null) {
+            Integer rate = UrlMap.routeValue(routeRates, route);
+            Limit created = newLimit(route.toString(), rate != null ? interval(rate) : defaultInterval);
+            limit = limits.putIfAbsent(route, created);
+            if (limit == null) {
+                limit = created;
+            }
+        }
+        return limit;
+    }
+
+    private Limit newLimit(String name, long interval) {
+        return new Limit(limitIds.incrementAndGet(), name, interval, (burst - 1) * interval);
+    }
+
+    public Map<String, Object> stats() {
+        int buckets = 0;
+        for (ConcurrentHashMap<String, AtomicLong> stripe : stripes) {
+            buckets += stripe.size();
+        }
+
+        Map<String, Object> stats = new LinkedHashMap<String, Object>();
+        stats.put("allowed", allowed.sum());
+        stats.put("rejected", rejected.sum());
+        stats.put("buckets", buckets);
+        stats.put("evictions", evictions.sum());
+
+        Map<String, Object> routeStats = new LinkedHashMap<String, Object>();
+        List<Limit> all = new ArrayList<Limit>(limits.values());
+        all.add(unmatched);
+        for (Limit limit : all) {
+            if (limit.interval > 0) {
+                routeStats.put(limit.name, limit.rejected.sum());
+            }
+        }
+        if (!routeStats.isEmpty()) {
+            stats.put("rejectedRoutes", routeStats);
+        }
+        return stats;
+    }
+
+    private static final class Limit {
+        final int id;
+        final String name;
+        // 两个请求之间的间隔, 0为不限流
+        final long interval;
+        // tat可以超前当前时间的量, 即允许的突发
+        final long tolerance;
+        final LongAdder rejected = new LongAdder();
+
+        Limit(int id, String name, long interval, long tolerance) {
+            this.id = id;
+            this.name = name;
+            this.interval = interval;
+            this.tolerance = tolerance;
+        }
+    }
+}
@@ -31,10 +31,10 @@ public class RedirectRequestHandler extends RequestHandler {
     protected String cContentCharset = HttpUtil.UTF_8;
     protected String localtion;
 
-    private static final CharSequence TYPE_PLAIN = HttpHeaders.newEntity(HttpUtil.TYPE_PLAIN);
-    private static final CharSequence TYPE_BINARY = HttpHeaders.newEntity(HttpUtil.TYPE_BINARY);
-    private static final CharSequence TYPE_JSON = HttpHeaders.newEntity(HttpUtil.TYPE_JSON);
-    private static final CharSequence TYPE_CBOR = HttpHeaders.newEntity(HttpUtil.TYPE_CBOR);
+    private static final CharSequence TYPE_PLAIN = CachedHeaders.TYPE_PLAIN;
+    private static final CharSequence TYPE_BINARY = CachedHeaders.TYPE_BINARY;
+    private static final CharSequence TYPE_JSON = CachedHeaders.TYPE_JSON;
+    private static final CharSequence TYPE_CBOR = CachedHeaders.TYPE_CBOR;
 
     /**
      * 服务器默认的Get强制加密的类型, 默认get不加密
@@ -0,0 +1,200 @@
+package com.fqserver.server;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseEncoder;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.codec.http.HttpStatusClass;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.util.CharsetUtil;
+import io.netty.util.ReferenceCountUtil;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 位于请求聚合之前的拦截阶段: 请求头到达时决定是否接受, 拒绝时不再读取body, 写出预先生成的响应后关闭连接.
+ *
+ * 同一连接上的响应按请求的顺序写出, 拒绝时若前面还有未应答的请求, 等它们应答完(写出LastHttpContent)再写出拒绝响应.
+ * accept()抛出IllegalArgumentException(例如路径中有不能解码的%转义)时以400拒绝.
+ */
+public abstract class RequestGate extends ChannelDuplexHandler {
+
+    private static Logger log = LoggerFactory.getLogger(RequestGate.class);
+
+    private static final Rejection BAD_REQUEST = new Rejection(HttpResponseStatus.BAD_REQUEST, 0);
+
+    private final Rejection rejection;
+
+    // 已接受还没有应答的请求数
+    private int outstanding;
+
+    // 当前写出的是1xx响应(例如100 Continue), 不是请求的最终响应
+    private boolean informational;
+
+    // 已拒绝请求时为要写出的拒绝响应, 丢弃之后读到的数据, 写出拒绝响应后关闭连接
+    private Rejection rejecting;
+
+    private ChannelHandlerContext encoderCtx;
+
+    protected RequestGate(Rejection rejection) {
+        this.rejection = rejection;
+    }
+
+    /**
+     * 在I/O线程上收到请求头时调用, 返回false则拒绝该请求
+     */
+    protected abstract boolean accept(ChannelHandlerContext ctx, HttpRequest req);
+
+    /**
+     * 已接受的请求body接收完成
+     */
+    protected void requestRead(ChannelHandlerContext ctx) {}
+
+    /**
+     * 已接受的请求写出了最终响应, 按请求的顺序调用
+     */
+    protected void requestCompleted(ChannelHandlerContext ctx) {}
+
+    /**
+     * 连接关闭, 还有outstanding()个已接受的请求没有应答
+     */
+    protected void connectionClosed() {}
+
+    protected int outstanding() {
+        return outstanding;
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
+        encoderCtx = ctx.pipeline().context(HttpResponseEncoder.class);
+        if (encoderCtx == null) {
+            encoderCtx = ctx.pipeline().context(HttpServerCodec.class);
+        }
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (rejecting != null) {
+            ReferenceCountUtil.release(msg);
+            return;
+        }
+
+        if (msg instanceof HttpRequest) {
+            Rejection rejected = null;
+            try {
+                if (!accept(ctx, (HttpRequest) msg)) {
+                    rejected = rejection;
+                }
+            }
+            catch (IllegalArgumentException e) {
+                if (log.isDebugEnabled()) {
+                    log.debug("bad request:" + ((HttpRequest) msg).uri(), e);
+                }
+                rejected = BAD_REQUEST;
+            }
+            if (rejected != null) {
+                ReferenceCountUtil.release(msg);
+                rejecting = rejected;
+                if (outstanding == 0) {
+                    reject(ctx);
+                }
+                return;
+            }
+            outstanding++;
+        }
+
+        if (msg instanceof LastHttpContent) {
+            requestRead(ctx);
+        }
+
+        ctx.fireChannelRead(msg);
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise)
+            throws Exception {
+        if (msg instanceof HttpResponse) {
+            informational = ((HttpResponse) msg).status().codeClass() == HttpStatusClass.INFORMATIONAL;
+        }
+
+        if (!(msg instanceof LastHttpContent) || informational || outstanding == 0) {
+            ctx.write(msg, promise);
+            return;
+        }
+
+        outstanding--;
+        requestCompleted(ctx);
+        ctx.write(msg, promise);
+
+        if (rejecting != null && outstanding == 0) {
+            reject(ctx);
+        }
+    }
+
+    private void reject(ChannelHandlerContext ctx) {
+        if (encoderCtx != null) {
+            // HTTP/1.x连接直接写出编码好的字节, 不经过HttpResponseEncoder
+            encoderCtx.writeAndFlush(rejecting.bytes.duplicate())
+                      .addListener(ChannelFutureListener.CLOSE);
+        } else {
+            // HTTP/2的stream子channel由Http2StreamFrameToHttpObjectCodec转换
+            ctx.writeAndFlush(rejecting.response.retainedDuplicate())
+               .addListener(ChannelFutureListener.CLOSE);
+        }
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        close();
+        super.channelInactive(ctx);
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+        close();
+    }
+
+    private void close() {
+        if (outstanding > 0) {
+            connectionClosed();
+            outstanding = 0;
+        }
+    }
+
+    /**
+     * 预先生成的拒绝响应, retryAfterSeconds大于0时带Retry-After
+     */
+    public static final class Rejection {
+        final ByteBuf bytes;
+        final FullHttpResponse response;
+
+        public Rejection(HttpResponseStatus status, int retryAfterSeconds) {
+            String retryAfter = retryAfterSeconds > 0 ? "Retry-After: " + retryAfterSeconds + "\r\n" : "";
+            this.bytes = Unpooled.unreleasableBuffer(Unpooled.copiedBuffer("HTTP/1.1 " + status + "\r\n"
+                                                                           + "Content-Length: 0\r\n"
+                                                                           + retryAfter
+                                                                           + "Connection: close\r\n\r\n",
+                                                                           CharsetUtil.US_ASCII));
+
+            this.response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1,
+                                                        status,
+                                                        Unpooled.EMPTY_BUFFER);
+            this.response.headers().set(CachedHeaders.CONTENT_LENGTH, 0);
+            if (retryAfterSeconds > 0) {
+                this.response.headers().set(HttpHeaderNames.RETRY_AFTER, retryAfterSeconds);
+            }
+        }
+    }
+}
@@ -3,32 +3,45 @@ package com.fqserver.server;
 import static io.netty.handler.codec.http.HttpHeaders.Names.COOKIE;
 import static io.netty.handler.codec.http.HttpHeaders.Names.SET_COOKIE;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufOutputStream;
 import io.netty.buffer.Unpooled;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
-import io.netty.handler.codec.http.Cookie;
-import io.netty.handler.codec.http.CookieDecoder;
 import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.DefaultHttpResponse;
 import io.netty.handler.codec.http.FullHttpRequest;
 import io.netty.handler.codec.http.FullHttpResponse;
 import io.netty.handler.codec.http.HttpContent;
-import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpHeaderValues;
 import io.netty.handler.codec.http.HttpHeaders.Names;
 import io.netty.handler.codec.http.HttpHeaders.Values;
+import io.netty.handler.codec.http.HttpChunkedInput;
 import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponse;
 import io.netty.handler.codec.http.HttpResponseStatus;
 import io.netty.handler.codec.http.HttpVersion;
-import io.netty.handler.codec.http.QueryStringDecoder;
-import io.netty.handler.codec.http.ServerCookieEncoder;
-
+import io.netty.handler.codec.http.cookie.Cookie;
+import io.netty.handler.codec.http.cookie.DefaultCookie;
+import io.netty.handler.codec.http.cookie.ServerCookieDecoder;
+import io.netty.handler.codec.http.cookie.ServerCookieEncoder;
+import io.netty.handler.stream.ChunkedInput;
+import io.netty.handler.stream.ChunkedStream;
+import io.netty.util.ReferenceCountUtil;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -36,6 +49,7 @@ import org.slf4j.LoggerFactory;
 import com.fqserver.core.compress.GZipUtils;
 import com.fqserver.core.http.HttpUtil;
 import com.fqserver.core.http.HttpUtil.HttpContentBean;
+import com.fqserver.core.json.ICodec;
 import com.fqserver.core.json.JsonUtil;
 import com.fqserver.core.utils.Pool.Poolable;
 import com.fqserver.lang.util.Strings;
@@ -45,6 +59,9 @@ public class RequestHandler implements Poolable {
 
     protected static final String UTF_8 = "utf-8";
 
+    // handler类 -> 是否覆盖了byte[]的响应方法, 见usesByteHooks
+    private static final ConcurrentHashMap<Class<?>, Boolean> BYTE_HOOKS = new ConcurrentHashMap<Class<?>, Boolean>();
+
     protected Logger log = LoggerFactory.getLogger(this.getClass());
 
     private HttpServer server;
@@ -52,15 +69,30 @@ public class RequestHandler implements Poolable {
     protected ChannelHandlerContext ctx;
 
     private final StringBuilder sbResponseContent = new StringBuilder();
-    private Map<String, List<String>> uriAttributes = null;
-    private Map<String, String> uriAttributesMap = null;
+    // 当前请求的uri, requestUri由FullHttpServerHandler传入, 否则在ownUri上解析
+    private RequestUri requestUri = null;
+    private RequestUri ownUri = null;
 
     protected Map<String, Object> postAttributes = null;
     protected byte[] httpContent = null;
+    private ByteArrayOutputStream contentStream = null;
     protected Map<String, Object> sendMap = new HashMap<String, Object>();
 
     private String reqPrefix = null;
 
+    // 请求的cookie, 第一次读取时才解码
+    private Set<Cookie> cookies = null;
+    // 由addCookie加入的Set-Cookie, 没有时不分配
+    private List<Cookie> responseCookies = null;
+    private Session session = null;
+
+    // 匹配到的路由, 默认页(没有匹配的路由)时为null
+    private Router.Match route = null;
+
+    private boolean keepAlive = false;
+    // 异步handler在其他线程上写出响应, 由I/O线程检查
+    private volatile boolean responded = false;
+
     public String getRequestPrefix() {
         return reqPrefix;
     }
@@ -73,13 +105,9 @@ public class RequestHandler implements Poolable {
     public void reset() {
         sbResponseContent.setLength(0);
 
-        if (uriAttributes != null) {
-            uriAttributes.clear();
-            uriAttributes = null;
-        }
-        if (uriAttributesMap != null) {
-            uriAttributesMap.clear();
-            uriAttributesMap = null;
+        requestUri = null;
+        if (ownUri != null) {
+            ownUri.reset();
         }
         if (postAttributes != null) {
             postAttributes.clear();
@@ -87,12 +115,38 @@ public class RequestHandler implements Poolable {
         }
         sendMap.clear();
         httpContent = null;
+        contentStream = null;
 
         request = null;
         ctx = null;
         server = null;
 
         reqPrefix = null;
+        route = null;
+
+        cookies = null;
+        if (responseCookies != null) {
+            responseCookies.clear();
+        }
+        session = null;
+
+        keepAlive = false;
+        responded = false;
+    }
+
+    public Router.Match getRoute() {
+        return route;
+    }
+
+    public void setRoute(Router.Match route) {
+        this.route = route;
+    }
+
+    /**
+     * 路由中路径参数的值, 例如路由/user/{id}中的id
+     */
+    public String getPathParam(String name) {
+        return route != null ? route.getParam(name) : null;
     }
 
     public HttpRequest getRequest() {
@@ -103,6 +157,24 @@ public class RequestHandler implements Poolable {
         this.request = request;
     }
 
+    /**
+     * 当前请求的响应是否保持连接, 由FullHttpServerHandler根据客户端协商及连接的请求数上限决定
+     */
+    public boolean isKeepAlive() {
+        return keepAlive;
+    }
+
+    public void setKeepAlive(boolean keepAlive) {
+        this.keepAlive = keepAlive;
+    }
+
+    /**
+     * 是否已经写出响应
+     */
+    public boolean isResponded() {
+        return responded;
+    }
+
     public ChannelHandlerContext getCtx() {
         return ctx;
     }
@@ -111,6 +183,98 @@ public class RequestHandler implements Poolable {
         this.ctx = ctx;
     }
 
+    /**
+     * 当前请求解析后的uri, query参数在第一次读取时才解析
+     */
+    public RequestUri getRequestUri() {
+        if (requestUri == null) {
+            if (ownUri == null) {
+                ownUri = new RequestUri();
+            }
+            requestUri = ownUri.parse(this.getRequest().getUri());
+        }
+        return requestUri;
+    }
+
+    public void setRequestUri(RequestUri requestUri) {
+        this.requestUri = requestUri;
+    }
+
+    /**
+     * 请求的所有cookie, 第一次调用时以ServerCookieDecoder.STRICT解码Cookie头, 没有时返回空集合
+     */
+    public Set<Cookie> getCookies() {
+        if (cookies == null) {
+            String header = request.headers().get(COOKIE);
+            cookies = header == null ? Collections.<Cookie> emptySet()
+                                     : ServerCookieDecoder.STRICT.decode(header);
+        }
+        return cookies;
+    }
+
+    /**
+     * 名为name的cookie, 没有时返回null
+     */
+    public Cookie getCookie(String name) {
+        for (Cookie cookie : getCookies()) {
+            if (cookie.name().equals(name)) {
+                return cookie;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 在响应中加入Set-Cookie, 请求的cookie不会自动写回
+     */
+    public void addCookie(Cookie cookie) {
+        if (responseCookies == null) {
+            responseCookies = new ArrayList<Cookie>(2);
+        }
+        responseCookies.add(cookie);
+    }
+
+    /**
+     * 当前请求的session, 没有时新建; 未开启session(sessionMaxSize为0)时返回null
+     */
+    public Session getSession() {
+        return getSession(true);
+    }
+
+    /**
+     * 当前请求的session, 没有时create为true则新建并在响应中写入session id的cookie, 否则返回null
+     */
+    public Session getSession(boolean create) {
+        if (session != null && session.isValid()) {
+            return session;
+        }
+        SessionStore store = server != null ? server.getSessions() : null;
+        if (store == null) {
+            return null;
+        }
+
+        Cookie cookie = getCookie(store.getCookieName());
+        session = cookie != null ? store.get(cookie.value()) : null;
+        if (session == null && create) {
+            session = store.create();
+
+            Cookie id = new DefaultCookie(store.getCookieName(), session.getId());
+            id.setPath("/");
+            id.setHttpOnly(true);
+            id.setSecure(server.getConfig().isSSL);
+            addCookie(id);
+        }
+        return session;
+    }
+
+    private void addCookieHeaders(final HttpResponse response) {
+        if (responseCookies != null) {
+            for (Cookie cookie : responseCookies) {
+                response.headers().add(SET_COOKIE, ServerCookieEncoder.STRICT.encode(cookie));
+            }
+        }
+    }
+
     /**
      * 获取get请求参数
      * 
@@ -129,10 +293,8 @@ public class RequestHandler implements Poolable {
 
     public String getParameter(String name, String defaultValue, boolean strip) {
 
-        Map<String, List<String>> uriAttrs = getQueryAttrs();
-        if (uriAttrs.containsKey(name) && uriAttrs.get(name).size() > 0) {
-            String val = uriAttrs.get(name).get(0);
-
+        String val = getRequestUri().getParameter(name);
+        if (val != null) {
             if (strip) {
                 return val.trim();
             } else {
@@ -147,62 +309,32 @@ public class RequestHandler implements Poolable {
      * List<String>表示当参数相同时，把相同的参数的值放在list中
      */
     public Map<String, List<String>> getQueryAttrs() {
-        if (uriAttributes == null) {
-            uriAttributes = getQueryAttrs(this.getRequest().getUri());
-        }
-        return uriAttributes;
+        return getRequestUri().parameters();
     }
 
     /**
      * 当参数相同时，只取最前面的参数值
      */
     public Map<String, String> getFirstQueryAttrs() {
-        if (uriAttributes == null) {
-            uriAttributes = getQueryAttrs(this.getRequest().getUri());
-        }
-        if (uriAttributesMap == null && uriAttributes != null) {
-            uriAttributesMap = new HashMap<>();
-            Set<String> keys = uriAttributes.keySet();
-            for (String key : keys) {
-                uriAttributesMap.put(key, uriAttributes.get(key).get(0));
-            }
-        }
-        return uriAttributesMap;
+        return getRequestUri().firstParameters();
     }
 
     /**
      * List<String>表示当参数相同时，把相同的参数的值放在list中
      */
     public static Map<String, List<String>> getQueryAttrs(String params) {
-        if (params.indexOf("?") < 0) {
-            params = "?" + params;
-        }
-        QueryStringDecoder decoderQuery = new QueryStringDecoder(params);
-        return decoderQuery.parameters();
+        return new RequestUri().parseQuery(params).parameters();
     }
 
     /**
      * Map<String>表示当参数相同时，取第一个参数值
      */
     public static Map<String, String> getFirstQueryAttrs(String params) {
-        if (params.indexOf("?") < 0) {
-            params = "?" + params;
-        }
-        QueryStringDecoder decoderQuery = new QueryStringDecoder(params);
-        Map<String, List<String>> attrs = decoderQuery.parameters();
-
-        Map<String, String> map = new HashMap<>();
-        if (attrs != null && attrs.size() > 0) {
-            Set<String> keys = attrs.keySet();
-            for (String key : keys) {
-                map.put(key, attrs.get(key).get(0));
-            }
-        }
-        return map;
+        return new RequestUri().parseQuery(params).firstParameters();
     }
 
     public byte[] getPostData(HttpContent chunk) {
-        byte[] tmp = new byte[chunk.content().capacity()];
+        byte[] tmp = new byte[chunk.content().readableBytes()];
         chunk.content().readBytes(tmp);
         return tmp;
     }
@@ -276,6 +408,9 @@ public class RequestHandler implements Poolable {
     }
 
     public byte[] getHttpContent() {
+        if (this.httpContent == null && this.contentStream != null) {
+            this.httpContent = this.contentStream.toByteArray();
+        }
         if (this.httpContent == null) {
             if (request.content().hasArray()) {
                 return request.content().array();
@@ -304,7 +439,11 @@ public class RequestHandler implements Poolable {
     public void write(Map<String, Object> sendMap) {
 
         try {
-            writeResponse(JsonUtil.objectToJsonByte(sendMap));
+            if (usesByteHooks()) {
+                writeResponse(JsonUtil.objectToJsonByte(sendMap));
+            } else {
+                writeEncoded(HttpResponseStatus.OK, JsonUtil.INSTANCE, sendMap);
+            }
         }
         catch (Exception e) {
             log.error("post response Encode error", e);
@@ -312,6 +451,69 @@ public class RequestHandler implements Poolable {
         }
     }
 
+    /**
+     * 以codec把value直接编码到ctx.alloc()分配的direct ByteBuf中写出, 不经过byte[]及Unpooled.wrappedBuffer.
+     * 编码失败时释放ByteBuf并抛出异常, 没有写出响应. 子类覆盖了byte[]的writeResponse或beforeBuildResponse时
+     * 改为编码为byte[], 经过这些方法写出
+     *
+     * @param status
+     * @param codec
+     *            例如JsonUtil.INSTANCE, CborUtil.INSTANCE
+     * @param value
+     */
+    protected void writeEncoded(final HttpResponseStatus status, final ICodec codec, final Object value)
+            throws IOException {
+        if (usesByteHooks()) {
+            writeResponse(status, codec.encodeByte(value));
+            return;
+        }
+
+        ByteBuf content = ctx.alloc().directBuffer();
+        boolean encoded = false;
+        try {
+            codec.encode(value, new ByteBufOutputStream(content));
+            encoded = true;
+        }
+        finally {
+            if (!encoded) {
+                content.release();
+            }
+        }
+        writeResponse(status, content);
+    }
+
+    /**
+     * 子类覆盖了writeResponse(byte[]), writeResponse(HttpResponseStatus, byte[]), 或者覆盖了
+     * beforeBuildResponse(byte[])却没有在同一个类中覆盖beforeBuildResponse(ByteBuf)时返回true;
+     * 这时响应内容要经过byte[]的方法, 不能直接编码到ByteBuf中写出
+     */
+    protected final boolean usesByteHooks() {
+        Class<?> type = getClass();
+        Boolean uses = BYTE_HOOKS.get(type);
+        if (uses == null) {
+            uses = declaringClass(type, "writeResponse", byte[].class) != RequestHandler.class
+                   || declaringClass(type, "writeResponse", HttpResponseStatus.class, byte[].class) != RequestHandler.class
+                   || declaringClass(type, "beforeBuildResponse", byte[].class) != declaringClass(type,
+                                                                                                  "beforeBuildResponse",
+                                                                                                  ByteBuf.class);
+            BYTE_HOOKS.put(type, uses);
+        }
+        return uses;
+    }
+
+    private static Class<?> declaringClass(Class<?> type, String name, Class<?>... parameterTypes) {
+        for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+            try {
+                c.getDeclaredMethod(name, parameterTypes);
+                return c;
+            }
+            catch (NoSuchMethodException e) {
+                // 在父类中查找
+            }
+        }
+        return null;
+    }
+
     /**
      * 返回响应数据
      * 
@@ -394,13 +596,114 @@ public class RequestHandler implements Poolable {
 
         FullHttpResponse response = buildResponse(status, data);
 
+        writeFullResponse(response);
+    }
+
+    /**
+     * 写出ByteBuf中的响应内容, 写出后由netty释放content
+     */
+    protected void writeResponse(final HttpResponseStatus status, final ByteBuf content) {
+        FullHttpResponse response = buildResponse(status, content);
+
+        writeFullResponse(response);
+    }
+
+    private void writeFullResponse(final FullHttpResponse response) {
+        if (!startResponse()) {
+            log.debug("response of expired request dropped");
+            ReferenceCountUtil.release(response);
+            return;
+        }
+        responded = true;
+
         Channel channel = ctx.channel();
         // Write the response.
         ChannelFuture future = channel.writeAndFlush(response);
 
         // Close the connection after the write operation is done if necessary.
-        future.addListener(ChannelFutureListener.CLOSE);
+        if (!keepAlive) {
+            future.addListener(ChannelFutureListener.CLOSE);
+        }
+
+    }
+
+    /**
+     * 每次写出响应前调用, 返回false时不写出并释放响应; AsyncRequestHandler超时后返回false
+     */
+    boolean startResponse() {
+        return true;
+    }
+
+    /**
+     * 分块写出响应, 不需要先把整个响应放在内存中. 由ChunkedWriteHandler在channel可写时才读取input的下一块,
+     * 客户端读得慢时写缓冲不会超过NettyConfig.writeBufferHighWaterMark太多. input在写完或连接关闭后被关闭.
+     * HTTP/1.1使用Transfer-Encoding: chunked, HTTP/1.0以关闭连接表示结束. 分块响应不经过
+     * beforeBuildResponse/afterBuildResponse, 即不做RequestHandlerV2的加密和压缩.
+     *
+     * @param status
+     * @param contentType
+     * @param input
+     *            例如ChunkedStream, ChunkedNioFile, 或自定义逐块生成数据的ChunkedInput
+     */
+    public ChannelFuture writeChunked(final HttpResponseStatus status, final String contentType,
+                                      final ChunkedInput<ByteBuf> input) {
+        HttpResponse response = new DefaultHttpResponse(HttpVersion.HTTP_1_1, status);
+        response.headers().set(CachedHeaders.CONTENT_TYPE, CachedHeaders.contentType(contentType));
+
+        if (request.getProtocolVersion().equals(HttpVersion.HTTP_1_0)) {
+            keepAlive = false;
+        } else {
+            response.headers().set(CachedHeaders.TRANSFER_ENCODING, HttpHeaderValues.CHUNKED);
+        }
+        response.headers().set(CachedHeaders.CONNECTION,
+                               keepAlive ? HttpHeaderValues.KEEP_ALIVE : HttpHeaderValues.CLOSE);
+
+        return writeResponse(response, new HttpChunkedInput(input));
+    }
 
+    /**
+     * 以NettyConfig.responseChunkSize为块大小, 分块写出InputStream, 写完后关闭in
+     */
+    public ChannelFuture writeStream(final HttpResponseStatus status, final String contentType,
+                                     final InputStream in) {
+        return writeChunked(status,
+                            contentType,
+                            new ChunkedStream(in, this.getServer().getConfig().responseChunkSize));
+    }
+
+    /**
+     * 依次写出响应头和body的各部分(HttpContent, FileRegion, HttpChunkedInput等)并flush,
+     * 不保持连接时在写完后关闭连接
+     */
+    protected ChannelFuture writeResponse(final HttpResponse response, final Object... body) {
+        if (!startResponse()) {
+            log.debug("response of expired request dropped");
+            ReferenceCountUtil.release(response);
+            for (Object item : body) {
+                ReferenceCountUtil.release(item);
+            }
+            return ctx.channel().newFailedFuture(new IllegalStateException("request expired"));
+        }
+        responded = true;
+        addServerHeader(response);
+        addCookieHeaders(response);
+
+        Channel channel = ctx.channel();
+        ChannelFuture future;
+        if (body.length == 0) {
+            future = channel.writeAndFlush(response);
+        } else {
+            channel.write(response);
+            for (int i = 0; i < body.length - 1; i++) {
+                channel.write(body[i]);
+            }
+            future = channel.writeAndFlush(body[body.length - 1]);
+        }
+
+        if (!keepAlive) {
+            future.addListener(ChannelFutureListener.CLOSE);
+        }
+        return future;
     }
 
     protected FullHttpResponse buildResponse(final HttpResponseStatus status, final byte[] data) {
@@ -422,84 +725,110 @@ public class RequestHandler implements Poolable {
         return response;
     }
 
+    /**
+     * 以ByteBuf中的内容建立响应, beforeBuildResponse返回新的内容时释放content
+     */
+    protected FullHttpResponse buildResponse(final HttpResponseStatus status, final ByteBuf content) {
+
+        final HttpContentBean bean;
+        try {
+            bean = beforeBuildResponse(content);
+        }
+        catch (RuntimeException e) {
+            content.release();
+            throw e;
+        }
+
+        final ByteBuf buf;
+        if (bean != null) {
+            content.release();
+            buf = Unpooled.wrappedBuffer(bean.content, 0, bean.content.length);
+        } else {
+            buf = content;
+        }
+
+        FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, status, buf);
+
+        afterBuildResponse(status, response, bean);
+
+        return response;
+    }
+
     protected HttpContentBean beforeBuildResponse(final byte[] data) {
         return null;
     }
 
+    /**
+     * 需要改变响应内容(例如压缩和加密)时返回新的内容, 不改变时返回null, 不释放content
+     */
+    protected HttpContentBean beforeBuildResponse(final ByteBuf content) {
+        return null;
+    }
+
     protected void afterBuildResponse(final HttpResponseStatus status,
                                       final FullHttpResponse response,
                                       final HttpContentBean bean) {
 
-        // Decide whether to close the connection or not.
-        boolean keepAlive = this.getServer().getConfig().keepAlive
-                            && HttpHeaders.isKeepAlive(request);
+        response.headers().set(CachedHeaders.CONTENT_TYPE, CachedHeaders.TYPE_PLAIN);
 
-        boolean close = request.headers()
-                               .contains(Names.CONNECTION, HttpHeaders.Values.CLOSE, true)
-                        || request.getProtocolVersion().equals(HttpVersion.HTTP_1_0)
-                        && !keepAlive;
-
-        response.headers().set(Names.CONTENT_TYPE, HttpUtil.TYPE_PLAIN);
-
-        if (!close && keepAlive) {
-            response.headers().set(Names.CONNECTION, Values.KEEP_ALIVE);
+        // 是否保持连接在分发请求时已确定, 见FullHttpServerHandler.isKeepAlive
+        if (keepAlive) {
+            response.headers().set(CachedHeaders.CONNECTION, HttpHeaderValues.KEEP_ALIVE);
         } else {
-            response.headers().set(Names.CONNECTION, Values.CLOSE);
+            response.headers().set(CachedHeaders.CONNECTION, HttpHeaderValues.CLOSE);
         }
 
-        if (!close) {
-            // There's no need to add 'Content-Length' header
-            // if this is the last response.
-            response.headers().set(Names.CONTENT_LENGTH, response.content().readableBytes());
-        }
+        // 长连接上以Content-Length确定响应的结束位置
+        response.headers().setInt(CachedHeaders.CONTENT_LENGTH, response.content().readableBytes());
 
-        // Encode the cookie.
-        String cookieString = request.headers().get(COOKIE);
-        if (cookieString != null) {
-            Set<Cookie> cookies = CookieDecoder.decode(cookieString);
-            if (!cookies.isEmpty()) {
-                // Reset the cookies if necessary.
-                for (Cookie cookie : cookies) {
-                    response.headers().add(SET_COOKIE, ServerCookieEncoder.encode(cookie));
-                }
-            }
-        }
+        // 只返回handler通过addCookie加入的cookie
+        addCookieHeaders(response);
 
         addServerHeader(response);
     }
 
-    protected void addServerHeader(final FullHttpResponse response) {}
+    /**
+     * Server与Date响应头, 取HttpServer中预先编码的值
+     */
+    protected void addServerHeader(final HttpResponse response) {
+        response.headers().set(CachedHeaders.SERVER, server.SERVER_NAME);
+        response.headers().set(CachedHeaders.DATE, server.curDateTime);
+    }
 
     public void addHttpContent(HttpContent chunk) {
         addHttpContent(getPostData(chunk));
     }
 
+    /**
+     * 追加请求body的分块, 按倍数扩容, 由getHttpContent取得合并后的内容
+     */
     public void addHttpContent(byte[] data) {
-        if (httpContent == null) {
-            httpContent = data;
-            return;
+        if (contentStream == null) {
+            contentStream = new ByteArrayOutputStream(Math.max(256, data.length));
+            if (httpContent != null) {
+                contentStream.write(httpContent, 0, httpContent.length);
+            }
         }
-        byte[] newTmp = new byte[data.length + httpContent.length];
-        System.arraycopy(httpContent, 0, newTmp, 0, httpContent.length);
-        System.arraycopy(data, 0, newTmp, httpContent.length, data.length);
-        httpContent = newTmp;
+        contentStream.write(data, 0, data.length);
+        httpContent = null;
     }
 
     public String getClientIp() {
-        String clientIP = request.headers().get("X-Forwarded-For");
-        if (clientIP == null) {
-            InetSocketAddress insocket = (InetSocketAddress) ctx.channel().remoteAddress();
-            clientIP = insocket.getAddress().getHostAddress();
-        }
+        return getClientIp(ctx.channel(), request);
+    }
 
+    /**
+     * 客户端IP: X-Forwarded-For的第一个地址, 没有时为连接的远端地址
+     */
+    public static String getClientIp(Channel channel, HttpRequest request) {
+        String clientIP = request.headers().get("X-Forwarded-For");
         if (clientIP != null) {
-            String[] strs = clientIP.split(",");
-            if (strs.length > 0) {
-                return strs[0].trim();
-            }
+            int comma = clientIP.indexOf(',');
+            return (comma < 0 ? clientIP : clientIP.substring(0, comma)).trim();
         }
 
-        return clientIP;
+        InetSocketAddress insocket = (InetSocketAddress) channel.remoteAddress();
+        return insocket.getAddress().getHostAddress();
     }
 
     public String getClientUA() {
@@ -1,5 +1,7 @@
 package com.fqserver.server;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
 import io.netty.handler.codec.http.FullHttpResponse;
 import io.netty.handler.codec.http.HttpHeaders;
 import io.netty.handler.codec.http.HttpHeaders.Names;
@@ -19,6 +21,7 @@ import com.fqserver.core.http.HttpUtil.HeaderNames;
 import com.fqserver.core.http.HttpUtil.HttpContentBean;
 import com.fqserver.core.http.HttpUtil.ZipTypes;
 import com.fqserver.core.json.CborUtil;
+import com.fqserver.core.json.ICodec;
 import com.fqserver.core.json.JsonUtil;
 import com.fqserver.lang.encrypt.Rsa;
 
@@ -30,10 +33,10 @@ public class RequestHandlerV2 extends RequestHandler {
     protected int cContentType = 0;
     protected String cContentCharset = HttpUtil.UTF_8;
 
-    private static final CharSequence TYPE_PLAIN = HttpHeaders.newEntity(HttpUtil.TYPE_PLAIN);
-    private static final CharSequence TYPE_BINARY = HttpHeaders.newEntity(HttpUtil.TYPE_BINARY);
-    private static final CharSequence TYPE_JSON = HttpHeaders.newEntity(HttpUtil.TYPE_JSON);
-    private static final CharSequence TYPE_CBOR = HttpHeaders.newEntity(HttpUtil.TYPE_CBOR);
+    private static final CharSequence TYPE_PLAIN = CachedHeaders.TYPE_PLAIN;
+    private static final CharSequence TYPE_BINARY = CachedHeaders.TYPE_BINARY;
+    private static final CharSequence TYPE_JSON = CachedHeaders.TYPE_JSON;
+    private static final CharSequence TYPE_CBOR = CachedHeaders.TYPE_CBOR;
 
     /**
      * 服务器默认的Get强制加密的类型, 默认get不加密
@@ -269,14 +272,15 @@ public class RequestHandlerV2 extends RequestHandler {
     public void write(Map<String, Object> respMap) {
 
         try {
-            if (cContentType == ContentTypes.CBOR) {
-                writeResponse(CborUtil.objectToJsonByte(respMap));
-            } else if (cContentType == ContentTypes.JSON) {
-                writeResponse(JsonUtil.objectToJsonByte(respMap));
-            } else if (cContentType == ContentTypes.BINARY) {
-                writeResponse(JsonUtil.objectToJson(respMap).getBytes(cContentCharset));
-            } else if (cContentType == ContentTypes.PLAIN) {
+            ICodec codec = cContentType == ContentTypes.CBOR ? CborUtil.INSTANCE : JsonUtil.INSTANCE;
+            if (cContentType != ContentTypes.CBOR && cContentType != ContentTypes.JSON
+                && !HttpUtil.UTF_8.equalsIgnoreCase(cContentCharset)) {
                 writeResponse(JsonUtil.objectToJson(respMap).getBytes(cContentCharset));
+            } else if (prepareContent() || usesByteHooks()) {
+                // 压缩和加密在byte[]上进行, 直接编码为byte[]
+                writeResponse(codec.encodeByte(respMap));
+            } else {
+                writeEncoded(HttpResponseStatus.OK, codec, respMap);
             }
         }
         catch (Exception e) {
@@ -288,6 +292,38 @@ public class RequestHandlerV2 extends RequestHandler {
     @Override
     protected HttpContentBean beforeBuildResponse(final byte[] data) {
 
+        // 处理返回数据的加密和压缩
+        if (prepareContent()) {
+            return HttpUtil.encryptContent(data,
+                                           encryptType,
+                                           Rsa.DefPriKey512,
+                                           cCompressType,
+                                           getMinZipSize());
+        }
+
+        return null;
+    }
+
+    @Override
+    protected HttpContentBean beforeBuildResponse(final ByteBuf content) {
+
+        // 不压缩也不加密时直接写出content
+        if (prepareContent()) {
+            return HttpUtil.encryptContent(ByteBufUtil.getBytes(content),
+                                           encryptType,
+                                           Rsa.DefPriKey512,
+                                           cCompressType,
+                                           getMinZipSize());
+        }
+
+        return null;
+    }
+
+    /**
+     * 按服务端和客户端的设置确定返回数据的压缩和加密方式, 需要压缩或加密时返回true; 多次调用的结果相同
+     */
+    private boolean prepareContent() {
+
         // 压缩
         if (isServerForceZip()) {// 服务器前置压缩
             boolean isZip = true;
@@ -326,16 +362,7 @@ public class RequestHandlerV2 extends RequestHandler {
             }
         }
 
-        // 处理返回数据的加密和压缩
-        if (cCompressType > 0 || (encryptType != null && encryptType.length() > 0)) {
-            return HttpUtil.encryptContent(data,
-                                           encryptType,
-                                           Rsa.DefPriKey512,
-                                           cCompressType,
-                                           getMinZipSize());
-        }
-
-        return null;
+        return cCompressType > 0 || (encryptType != null && encryptType.length() > 0);
     }
 
     // @Override
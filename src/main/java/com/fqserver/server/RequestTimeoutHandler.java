@@ -0,0 +1,222 @@
+package com.fqserver.server;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.handler.timeout.IdleState;
+import io.netty.handler.timeout.IdleStateEvent;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * HTTP/1.x连接的读写超时, 位于HttpRequestDecoder之后; HTTP/2的每个stream子channel上也有一个,
+ * 位于Http2StreamFrameToHttpObjectCodec之后, 只做请求头和请求body的读超时.
+ *
+ * <ul>
+ * <li>请求头: 连接建立后, 或收到后续请求的首批字节后, 需在headerTimeout(NettyConfig.connTimeout)内读完请求头</li>
+ * <li>请求body: 两次读取之间不能超过bodyTimeout(NettyConfig.soTimeout)</li>
+ * <li>写出: "idle" IdleStateHandler以observeOutput方式检测, 有待写出数据却超过soTimeout没有进展时关闭</li>
+ * </ul>
+ *
+ * 读超时时若连接上没有正在处理的请求则返回408, 然后关闭连接, 以应对slowloris一类的慢速连接.
+ */
+public class RequestTimeoutHandler extends ChannelInboundHandlerAdapter {
+
+    private static Logger log = LoggerFactory.getLogger(RequestTimeoutHandler.class);
+
+    private static final int IDLE = 0;
+    private static final int HEADER = 1;
+    private static final int BODY = 2;
+
+    private final long headerTimeoutNanos;
+    private final long bodyTimeoutNanos;
+    private final TimeoutStats stats;
+
+    private int state = IDLE;
+
+    // 本次读取是否解码出了消息
+    private boolean decoded;
+
+    private long deadline;
+    private long lastReadTime;
+
+    private ScheduledFuture<?> timeout;
+
+    public RequestTimeoutHandler(long headerTimeoutMillis, long bodyTimeoutMillis,
+                                 TimeoutStats stats) {
+        this.headerTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, headerTimeoutMillis));
+        this.bodyTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, bodyTimeoutMillis));
+        this.stats = stats;
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
+        if (ctx.channel().isActive()) {
+            awaitHeader(ctx);
+        }
+    }
+
+    @Override
+    public void channelActive(ChannelHandlerContext ctx) throws Exception {
+        awaitHeader(ctx);
+        super.channelActive(ctx);
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        decoded = true;
+
+        if (msg instanceof HttpRequest) {
+            if (msg instanceof LastHttpContent) {
+                enter(ctx, IDLE);
+            } else {
+                lastReadTime = System.nanoTime();
+                enter(ctx, BODY);
+            }
+        } else if (msg instanceof LastHttpContent) {
+            enter(ctx, IDLE);
+        } else if (msg instanceof HttpContent) {
+            lastReadTime = System.nanoTime();
+        }
+
+        ctx.fireChannelRead(msg);
+    }
+
+    @Override
+    public void channelReadComplete(ChannelHandlerContext ctx) throws Exception {
+        // 读到了字节但还没有解码出请求, 说明新请求的请求头正在到达
+        if (state == IDLE && !decoded) {
+            awaitHeader(ctx);
+        } else if (state == BODY) {
+            lastReadTime = System.nanoTime();
+        }
+        decoded = false;
+
+        ctx.fireChannelReadComplete();
+    }
+
+    private void awaitHeader(ChannelHandlerContext ctx) {
+        if (state == IDLE) {
+            deadline = System.nanoTime() + headerTimeoutNanos;
+            enter(ctx, HEADER);
+        }
+    }
+
+    private void enter(ChannelHandlerContext ctx, int newState) {
+        if (state == newState) {
+            return;
+        }
+        state = newState;
+        cancel();
+
+        if (newState == HEADER && headerTimeoutNanos > 0) {
+            schedule(ctx, headerTimeoutNanos);
+        } else if (newState == BODY && bodyTimeoutNanos > 0) {
+            schedule(ctx, bodyTimeoutNanos);
+        }
+    }
+
+    private void schedule(final ChannelHandlerContext ctx, long delayNanos) {
+        timeout = ctx.executor().schedule(new Runnable() {
+            @Override
+            public void run() {
+                timeout = null;
+                check(ctx);
+            }
+        }, delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private void check(ChannelHandlerContext ctx) {
+        if (!ctx.channel().isOpen()) {
+            return;
+        }
+
+        long now = System.nanoTime();
+        long remaining;
+        if (state == HEADER) {
+            remaining = deadline - now;
+        } else if (state == BODY) {
+            remaining = lastReadTime + bodyTimeoutNanos - now;
+        } else {
+            return;
+        }
+
+        // 暂停读取(autoRead为false)是服务器在做流控, 不算客户端超时
+        if (remaining > 0 || !ctx.channel().config().isAutoRead()) {
+            schedule(ctx, remaining > 0 ? remaining : (state == HEADER ? headerTimeoutNanos
+                                                                        : bodyTimeoutNanos));
+            return;
+        }
+
+        if (state == HEADER) {
+            stats.header();
+        } else {
+            stats.body();
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("request " + (state == HEADER ? "header" : "body") + " read timeout:"
+                      + ctx.channel());
+        }
+
+        FullHttpServerHandler handler = ctx.pipeline().get(FullHttpServerHandler.class);
+        if (handler != null && !handler.isIdle()) {
+            // 之前的请求还没有应答, 不能再插入408
+            ctx.close();
+            return;
+        }
+
+        FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1,
+                                                                HttpResponseStatus.REQUEST_TIMEOUT,
+                                                                Unpooled.EMPTY_BUFFER);
+        response.headers().set(CachedHeaders.CONTENT_LENGTH, 0);
+        response.headers().set(CachedHeaders.CONNECTION, HttpHeaderValues.CLOSE);
+        ctx.writeAndFlush(response).addListener(ChannelFutureListener.CLOSE);
+    }
+
+    @Override
+    public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+        if (evt instanceof IdleStateEvent
+            && ((IdleStateEvent) evt).state() == IdleState.WRITER_IDLE) {
+            if (TimeoutStats.hasPendingWrites(ctx.channel())) {
+                stats.write();
+                if (log.isDebugEnabled()) {
+                    log.debug("response write timeout:" + ctx.channel());
+                }
+                ctx.close();
+            }
+            return;
+        }
+        super.userEventTriggered(ctx, evt);
+    }
+
+    private void cancel() {
+        if (timeout != null) {
+            timeout.cancel(false);
+            timeout = null;
+        }
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        cancel();
+        super.channelInactive(ctx);
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+        cancel();
+    }
+}
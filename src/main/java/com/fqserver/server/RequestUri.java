@@ -0,0 +1,334 @@
+package com.fqserver.server;
+
+import io.netty.handler.codec.http.QueryStringDecoder;
+import io.netty.util.CharsetUtil;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 请求行中的request-target解析, 一次扫描得到path和query的位置, 代替new URI()及QueryStringDecoder.
+ *
+ * <ul>
+ * <li>path: 不含query和fragment, 没有%编码时直接截取, 不另外解码</li>
+ * <li>query参数: 第一次读取时才建立参数名的索引, 参数值在读取时才解码</li>
+ * </ul>
+ *
+ * 对象可以重用: FullHttpServerHandler每个连接一个, 连接上的请求按顺序处理, 每个请求parse一次.
+ * 不是线程安全的.
+ */
+public final class RequestUri {
+
+    // 与QueryStringDecoder相同的参数个数上限
+    private static final int MAX_PARAMS = 1024;
+
+    private String uri;
+    private int pathStart;
+    private int pathEnd;
+    private int queryStart;
+    private int queryEnd;
+    private String path;
+
+    // 参数索引, count为-1时还没有建立
+    private int count = -1;
+    // 有参数时才分配, 之后重用. 参数名没有编码时不生成字符串, 直接与uri比较
+    private String[] names;
+    // 第i个参数名和值在uri中的位置为[bounds[4i], bounds[4i+1]), [bounds[4i+2], bounds[4i+3])
+    private int[] bounds;
+    private String[] values;
+
+    private Map<String, List<String>> parameters;
+    private Map<String, String> firstParameters;
+
+    /**
+     * 解析请求行中的uri, 支持origin-form(/path?query)和absolute-form(http://host/path?query)
+     */
+    public RequestUri parse(String uri) {
+        reset();
+        this.uri = uri;
+
+        int length = uri.length();
+        int start = pathStart(uri);
+        int end = firstOf(uri, start, length, '?', '#');
+        pathStart = start;
+        pathEnd = end;
+
+        if (end < length && uri.charAt(end) == '?') {
+            queryStart = end + 1;
+            int hash = uri.indexOf('#', queryStart);
+            queryEnd = hash >= 0 ? hash : length;
+        } else {
+            queryStart = queryEnd = length;
+        }
+        return this;
+    }
+
+    /**
+     * 把整个字符串作为query解析, 已经带'?'时取'?'之后的部分
+     */
+    public RequestUri parseQuery(String query) {
+        reset();
+        this.uri = query;
+
+        int mark = query.indexOf('?');
+        pathStart = pathEnd = 0;
+        queryStart = mark >= 0 ? mark + 1 : 0;
+        int hash = query.indexOf('#', queryStart);
+        queryEnd = hash >= 0 ? hash : query.length();
+        return this;
+    }
+
+    /**
+     * absolute-form时跳过scheme和authority
+     */
+    private static int pathStart(String uri) {
+        int length = uri.length();
+        if (length == 0 || uri.charAt(0) == '/') {
+            return 0;
+        }
+        int scheme = uri.indexOf("://");
+        if (scheme <= 0) {
+            return 0;
+        }
+        int slash = uri.indexOf('/', scheme + 3);
+        int mark = firstOf(uri, scheme + 3, length, '?', '#');
+        return slash >= 0 && slash < mark ? slash : mark;
+    }
+
+    private static int firstOf(String s, int from, int to, char a, char b) {
+        for (int i = from; i < to; i++) {
+            char c = s.charAt(i);
+            if (c == a || c == b) {
+                return i;
+            }
+        }
+        return to;
+    }
+
+    public String uri() {
+        return uri;
+    }
+
+    /**
+     * 解码后的path, absolute-form没有path时为"/"
+     */
+    public String path() {
+        if (path == null) {
+            path = path(uri, pathStart, pathEnd);
+        }
+        return path;
+    }
+
+    /**
+     * 未解码的query, 没有时为""
+     */
+    public String rawQuery() {
+        return uri.substring(queryStart, queryEnd);
+    }
+
+    /**
+     * 第一个名为name的参数值, 没有时返回null
+     */
+    public String getParameter(String name) {
+        index();
+        for (int i = 0; i < count; i++) {
+            if (nameEquals(i, name)) {
+                return value(i);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 名为name的所有参数值, 没有时返回空列表
+     */
+    public List<String> getParameters(String name) {
+        index();
+        List<String> list = null;
+        for (int i = 0; i < count; i++) {
+            if (nameEquals(i, name)) {
+                if (list == null) {
+                    list = new ArrayList<String>(1);
+                }
+                list.add(value(i));
+            }
+        }
+        return list != null ? list : Collections.<String> emptyList();
+    }
+
+    /**
+     * 与QueryStringDecoder.parameters()相同的结构, 相同名字的参数值按顺序放在一个list中
+     */
+    public Map<String, List<String>> parameters() {
+        if (parameters == null) {
+            index();
+            Map<String, List<String>> map = new LinkedHashMap<String, List<String>>();
+            for (int i = 0; i < count; i++) {
+                List<String> list = map.get(name(i));
+                if (list == null) {
+                    list = new ArrayList<String>(1);
+                    map.put(name(i), list);
+                }
+                list.add(value(i));
+            }
+            parameters = map;
+        }
+        return parameters;
+    }
+
+    /**
+     * 相同名字的参数只取第一个值
+     */
+    public Map<String, String> firstParameters() {
+        if (firstParameters == null) {
+            index();
+            Map<String, String> map = new HashMap<String, String>();
+            for (int i = count - 1; i >= 0; i--) {
+                map.put(name(i), value(i));
+            }
+            firstParameters = map;
+        }
+        return firstParameters;
+    }
+
+    private boolean nameEquals(int i, String name) {
+        String decoded = names[i];
+        if (decoded != null) {
+            return decoded.equals(name);
+        }
+        int start = bounds[i << 2];
+        int length = bounds[(i << 2) + 1] - start;
+        return length == name.length() && uri.regionMatches(start, name, 0, length);
+    }
+
+    private String name(int i) {
+        String name = names[i];
+        if (name == null) {
+            name = uri.substring(bounds[i << 2], bounds[(i << 2) + 1]);
+            names[i] = name;
+        }
+        return name;
+    }
+
+    private String value(int i) {
+        String value = values[i];
+        if (value == null) {
+            value = decodeQuery(uri, bounds[(i << 2) + 2], bounds[(i << 2) + 3]);
+            values[i] = value;
+        }
+        return value;
+    }
+
+    /**
+     * 扫描query建立参数名的索引, 参数之间以'&'或';'分隔
+     */
+    private void index() {
+        if (count >= 0) {
+            return;
+        }
+        count = 0;
+
+        int nameStart = queryStart;
+        int eq = -1;
+        for (int i = queryStart; i <= queryEnd && count < MAX_PARAMS; i++) {
+            char c = i < queryEnd ? uri.charAt(i) : '&';
+            if (c == '=' && eq < 0) {
+                eq = i;
+            } else if (c == '&' || c == ';') {
+                int nameEnd = eq >= 0 ? eq : i;
+                if (nameEnd > nameStart) {
+                    add(nameStart, nameEnd, eq >= 0 ? eq + 1 : i, i);
+                }
+                nameStart = i + 1;
+                eq = -1;
+            }
+        }
+    }
+
+    private void add(int nameStart, int nameEnd, int valueStart, int valueEnd) {
+        if (names == null || count == names.length) {
+            int size = names == null ? 8 : count << 1;
+            String[] n = new String[size];
+            String[] v = new String[size];
+            int[] b = new int[size << 2];
+            if (names != null) {
+                System.arraycopy(names, 0, n, 0, count);
+                System.arraycopy(values, 0, v, 0, count);
+                System.arraycopy(bounds, 0, b, 0, count << 2);
+            }
+            names = n;
+            values = v;
+            bounds = b;
+        }
+        // 编码过的参数名先解码, 查找时与解码后的名字比较
+        names[count] = escaped(uri, nameStart, nameEnd) ? decodeQuery(uri, nameStart, nameEnd)
+                                                        : null;
+        int b = count << 2;
+        bounds[b] = nameStart;
+        bounds[b + 1] = nameEnd;
+        bounds[b + 2] = valueStart;
+        bounds[b + 3] = valueEnd;
+        count++;
+    }
+
+    /**
+     * 清除上一次解析的结果, 保留索引数组
+     */
+    public void reset() {
+        for (int i = 0; i < count; i++) {
+            names[i] = null;
+            values[i] = null;
+        }
+        count = -1;
+        uri = null;
+        path = null;
+        parameters = null;
+        firstParameters = null;
+        pathStart = pathEnd = queryStart = queryEnd = 0;
+    }
+
+    /**
+     * 只取uri的path, 供路由查找等不需要query的地方使用
+     */
+    public static String path(String uri) {
+        int start = pathStart(uri);
+        return path(uri, start, firstOf(uri, start, uri.length(), '?', '#'));
+    }
+
+    private static String path(String uri, int start, int end) {
+        if (start == end) {
+            return start == 0 ? "" : "/";
+        }
+        return decodePath(uri, start, end);
+    }
+
+    private static boolean escaped(String s, int from, int to) {
+        for (int i = from; i < to; i++) {
+            char c = s.charAt(i);
+            if (c == '%' || c == '+') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String decodeQuery(String s, int from, int to) {
+        if (escaped(s, from, to)) {
+            return QueryStringDecoder.decodeComponent(s.substring(from, to), CharsetUtil.UTF_8);
+        }
+        return s.substring(from, to);
+    }
+
+    private static String decodePath(String s, int from, int to) {
+        if (s.indexOf('%', from) < 0 || s.indexOf('%', from) >= to) {
+            return from == 0 && to == s.length() ? s : s.substring(from, to);
+        }
+        // path中的'+'不是空格
+        return QueryStringDecoder.decodeComponent(s.substring(from, to).replace("+", "%2B"),
+                                                  CharsetUtil.UTF_8);
+    }
+}
@@ -0,0 +1,34 @@
+package com.fqserver.server;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 声明RequestHandler处理的路由, 编译时由RouteProcessor生成路由表(RouteTable)及创建handler的代码,
+ * 启动时UrlMap.load()注册, 不扫描classpath也不经过反射.
+ *
+ * <pre>
+ * &#64;Route(path = "/user/{id}", methods = "GET")
+ * public static class user extends RequestHandler { ... }
+ * </pre>
+ *
+ * handler须为public, 非abstract, 有public的无参构造方法, 内部类须为static.
+ */
+@Documented
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+public @interface Route {
+
+    /**
+     * 路径, 格式与UrlMap相同: 可以有路径参数(/user/{id}), 以"/*"结尾的为前缀路由
+     */
+    String[] path();
+
+    /**
+     * 处理的请求方法(GET, POST等), 为空时不限方法
+     */
+    String[] methods() default {};
+}
@@ -0,0 +1,340 @@
+package com.fqserver.server;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardLocation;
+
+/**
+ * &#64;Route的注解处理器, 编译时生成实现RouteTable的路由表, 并写入META-INF/services/com.fqserver.server.RouteTable.
+ *
+ * 路由表中每个handler类对应一个编号, 由生成的Factory以switch直接new出handler, 启动时不经过反射, 也只加载两个生成的类.
+ * 路由表默认生成在&#64;Route所在的包中(有多个包时取名字最小的), 类名为GeneratedRouteTable, 可以用
+ * -Aroute.table=包名.类名指定, 同一classpath中有多个模块时每个模块的路由表需不同名.
+ */
+public class RouteProcessor extends AbstractProcessor {
+
+    public static final String TABLE_OPTION = "route.table";
+
+    private static final String TABLE_NAME = "GeneratedRouteTable";
+
+    private static final String HANDLER = "com.fqserver.server.RequestHandler";
+
+    private static final Set<String> METHODS = new HashSet<String>(Arrays.asList("GET",
+                                                                                 "POST",
+                                                                                 "PUT",
+                                                                                 "DELETE",
+                                                                                 "PATCH",
+                                                                                 "HEAD",
+                                                                                 "OPTIONS",
+                                                                                 "TRACE",
+                                                                                 "CONNECT"));
+
+    // 每个register/switch方法中的路由或handler数, 避免超过方法的字节码上限
+    private static final int FACTORY_CHUNK = 500;
+
+    private Messager messager;
+    private Filer filer;
+
+    // handler的类名 -> 路由({方法, 路径}), 按类名排序后编号
+    private final Map<String, List<String[]>> routes = new LinkedHashMap<String, List<String[]>>();
+    // 已注册的"方法 路径", 检查重复
+    private final Set<String> keys = new HashSet<String>();
+    private String tablePackage;
+    private boolean generated;
+    // errorRaised()只反映之前的轮次, 本轮的错误自己记录
+    private boolean failed;
+
+    @Override
+    public synchronized void init(ProcessingEnvironment env) {
+        super.init(env);
+        this.messager = env.getMessager();
+        this.filer = env.getFiler();
+    }
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        return Collections.singleton(Route.class.getCanonicalName());
+    }
+
+    @Override
+    public Set<String> getSupportedOptions() {
+        return Collections.singleton(TABLE_OPTION);
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        boolean found = false;
+        for (Element element : roundEnv.getElementsAnnotatedWith(Route.class)) {
+            if (collect(element)) {
+                found = true;
+            }
+        }
+
+        if (found) {
+            if (generated) {
+                messager.printMessage(Diagnostic.Kind.ERROR,
+                                      "@Route on generated sources is not supported, route table already written");
+            } else if (!failed && !roundEnv.errorRaised()) {
+                generate();
+                generated = true;
+            }
+        }
+        return true;
+    }
+
+    private boolean collect(Element element) {
+        if (element.getKind() != ElementKind.CLASS) {
+            error(element, "@Route is only allowed on classes");
+            return false;
+        }
+        TypeElement type = (TypeElement) element;
+        if (!check(type)) {
+            return false;
+        }
+
+        Route route = type.getAnnotation(Route.class);
+        String name = type.getQualifiedName().toString();
+        List<String[]> list = routes.get(name);
+        if (list == null) {
+            list = new ArrayList<String[]>();
+            routes.put(name, list);
+        }
+
+        String[] methods = route.methods().length == 0 ? new String[] { null } : route.methods();
+        for (String path : route.path()) {
+            if (!path.startsWith("/")) {
+                error(type, "route path must start with '/': " + path);
+                continue;
+            }
+            for (String method : methods) {
+                if (method != null) {
+                    method = method.toUpperCase();
+                    if (!METHODS.contains(method)) {
+                        error(type, "unknown route method: " + method);
+                        continue;
+                    }
+                }
+                String key = (method == null ? "*" : method) + " " + path;
+                if (!keys.add(key)) {
+                    error(type, "duplicate route: " + key);
+                    continue;
+                }
+                list.add(new String[] { method, path });
+            }
+        }
+
+        String pkg = packageOf(type).getQualifiedName().toString();
+        if (tablePackage == null || pkg.compareTo(tablePackage) < 0) {
+            tablePackage = pkg;
+        }
+        return true;
+    }
+
+    /**
+     * handler须为RequestHandler的public, 非abstract子类, 有public的无参构造方法, 内部类须为static
+     */
+    private boolean check(TypeElement type) {
+        TypeMirror handler = processingEnv.getElementUtils().getTypeElement(HANDLER).asType();
+        if (!processingEnv.getTypeUtils().isAssignable(type.asType(), handler)) {
+            error(type, "@Route class must extend " + HANDLER);
+            return false;
+        }
+        if (type.getModifiers().contains(Modifier.ABSTRACT)) {
+            error(type, "@Route class must not be abstract");
+            return false;
+        }
+        for (Element e = type; e.getKind().isClass() || e.getKind().isInterface(); e = e.getEnclosingElement()) {
+            TypeElement t = (TypeElement) e;
+            if (!t.getModifiers().contains(Modifier.PUBLIC)) {
+                error(type, "@Route class must be public: " + t.getQualifiedName());
+                return false;
+            }
+            if (t.getNestingKind() == NestingKind.MEMBER && !t.getModifiers().contains(Modifier.STATIC)) {
+                error(type, "@Route nested class must be static: " + t.getQualifiedName());
+                return false;
+            }
+            if (t.getNestingKind() != NestingKind.TOP_LEVEL && t.getNestingKind() != NestingKind.MEMBER) {
+                error(type, "@Route class must be a top level or static nested class");
+                return false;
+            }
+        }
+
+        List<ExecutableElement> constructors = ElementFilter.constructorsIn(type.getEnclosedElements());
+        for (ExecutableElement c : constructors) {
+            if (c.getParameters().isEmpty() && c.getModifiers().contains(Modifier.PUBLIC)) {
+                return true;
+            }
+        }
+        error(type, "@Route class must have a public no-arg constructor");
+        return false;
+    }
+
+    private void generate() {
+        String table = processingEnv.getOptions().get(TABLE_OPTION);
+        if (table == null || table.trim().length() == 0) {
+            table = tablePackage.length() > 0 ? tablePackage + "." + TABLE_NAME : TABLE_NAME;
+        }
+        int dot = table.lastIndexOf('.');
+        String pkg = dot > 0 ? table.substring(0, dot) : "";
+        String simpleName = table.substring(dot + 1);
+
+        List<String> handlers = new ArrayList<String>(routes.keySet());
+        Collections.sort(handlers);
+
+        try {
+            JavaFileObject source = filer.createSourceFile(table);
+            Writer w = source.openWriter();
+            try {
+                writeTable(w, pkg, simpleName, handlers);
+            }
+            finally {
+                w.close();
+            }
+
+            FileObject services = filer.createResource(StandardLocation.CLASS_OUTPUT,
+                                                       "",
+                                                       "META-INF/services/" + RouteTable.class.getName());
+            w = services.openWriter();
+            try {
+                w.write(table);
+                w.write('\n');
+            }
+            finally {
+                w.close();
+            }
+        }
+        catch (IOException e) {
+            messager.printMessage(Diagnostic.Kind.ERROR, "write route table failed: " + e);
+        }
+    }
+
+    private void writeTable(Writer w, String pkg, String simpleName, List<String> handlers)
+            throws IOException {
+        if (pkg.length() > 0) {
+            w.write("package " + pkg + ";\n\n");
+        }
+        w.write("import io.netty.handler.codec.http.HttpMethod;\n\n");
+        w.write("import com.fqserver.server.RequestHandler;\n");
+        w.write("import com.fqserver.server.UrlMap;\n\n");
+        w.write("/**\n * 由RouteProcessor根据@Route生成, 不要修改\n */\n");
+        w.write("public final class " + simpleName + " implements com.fqserver.server.RouteTable {\n\n");
+
+        List<String> puts = new ArrayList<String>();
+        for (int id = 0; id < handlers.size(); id++) {
+            String cls = handlers.get(id);
+            for (String[] route : routes.get(handlers.get(id))) {
+                String factory = "new Factory<" + cls + ">(" + id + ")";
+                if (route[0] == null) {
+                    puts.add("UrlMap.put(" + literal(route[1]) + ", " + cls + ".class, " + factory + ");");
+                } else {
+                    puts.add("UrlMap.put(HttpMethod.valueOf(" + literal(route[0]) + "), " + literal(route[1])
+                             + ", " + cls + ".class, " + factory + ");");
+                }
+            }
+        }
+
+        // 注册也按FACTORY_CHUNK分成多个方法, 同样避免超过字节码上限
+        int registers = (puts.size() + FACTORY_CHUNK - 1) / FACTORY_CHUNK;
+        w.write("    @Override\n");
+        w.write("    public void register() {\n");
+        for (int c = 0; c < registers; c++) {
+            w.write("        register" + c + "();\n");
+        }
+        w.write("    }\n\n");
+        for (int c = 0; c < registers; c++) {
+            w.write("    private static void register" + c + "() {\n");
+            for (String put : puts.subList(c * FACTORY_CHUNK, Math.min(puts.size(), (c + 1) * FACTORY_CHUNK))) {
+                w.write("        " + put + "\n");
+            }
+            w.write("    }\n\n");
+        }
+
+        w.write("    private static final class Factory<T extends RequestHandler> implements java.util.function.Supplier<T> {\n");
+        w.write("        private final int id;\n\n");
+        w.write("        Factory(int id) {\n");
+        w.write("            this.id = id;\n");
+        w.write("        }\n\n");
+        w.write("        @Override\n");
+        w.write("        @SuppressWarnings(\"unchecked\")\n");
+        w.write("        public T get() {\n");
+        int chunks = (handlers.size() + FACTORY_CHUNK - 1) / FACTORY_CHUNK;
+        for (int c = 0; c < chunks; c++) {
+            w.write("            " + (c < chunks - 1 ? "if (id < " + (c + 1) * FACTORY_CHUNK + ") " : "")
+                    + "return (T) create" + c + "(id);\n");
+        }
+        if (chunks == 0) {
+            w.write("            throw new IllegalStateException(\"unknown handler \" + id);\n");
+        }
+        w.write("        }\n");
+        for (int c = 0; c < chunks; c++) {
+            w.write("\n        private static RequestHandler create" + c + "(int id) {\n");
+            w.write("            switch (id) {\n");
+            for (int id = c * FACTORY_CHUNK; id < Math.min(handlers.size(), (c + 1) * FACTORY_CHUNK); id++) {
+                w.write("            case " + id + ":\n");
+                w.write("                return new " + handlers.get(id) + "();\n");
+            }
+            w.write("            default:\n");
+            w.write("                throw new IllegalStateException(\"unknown handler \" + id);\n");
+            w.write("            }\n");
+            w.write("        }\n");
+        }
+        w.write("    }\n");
+        w.write("}\n");
+    }
+
+    private void error(Element element, String message) {
+        failed = true;
+        messager.printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+
+    private static PackageElement packageOf(Element element) {
+        while (element.getKind() != ElementKind.PACKAGE) {
+            element = element.getEnclosingElement();
+        }
+        return (PackageElement) element;
+    }
+
+    private static String literal(String s) {
+        StringBuilder sb = new StringBuilder("\"");
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\');
+            }
+            sb.append(c);
+        }
+        return sb.append('"').toString();
+    }
+}
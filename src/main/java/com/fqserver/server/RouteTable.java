@@ -0,0 +1,12 @@
+package com.fqserver.server;
+
+/**
+ * 由RouteProcessor在编译时生成的路由表, 通过META-INF/services注册, UrlMap.load()时调用register()
+ */
+public interface RouteTable {
+
+    /**
+     * 以UrlMap.put注册路由及对应handler的工厂
+     */
+    void register();
+}
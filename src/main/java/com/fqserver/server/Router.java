@@ -0,0 +1,336 @@
+package com.fqserver.server;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fqserver.core.utils.reflect.ClassReflection;
+import com.fqserver.core.utils.reflect.ReflectionException;
+
+/**
+ * 启动时由UrlMap中注册的路由编译成的按路径段(segment)组织的前缀树, 查找的时间只与路径的段数有关.
+ *
+ * <ul>
+ * <li>静态路径: /user/info</li>
+ * <li>路径参数: /user/{id}/info, 匹配一个非空的段, 由RequestHandler.getPathParam("id")取值</li>
+ * <li>前缀路由: /static/*, 匹配"/static/"下的所有路径</li>
+ * </ul>
+ *
+ * 每个路由有创建handler的工厂: &#64;Route声明的路由使用生成的代码, 其他的在编译时由ClassReflection.newFactory生成,
+ * 每个请求创建handler时不经过反射.
+ *
+ * 同一位置上静态段优先于路径参数, 路径参数优先于前缀路由, 前缀路由中长的优先; 指定了请求方法的路由优先于不限方法的路由.
+ * 编译后不再修改, 可以在多个I/O线程上同时查找.
+ */
+public final class Router {
+
+    private static Logger log = LoggerFactory.getLogger(Router.class);
+
+    private final Node root = new Node();
+    private final List<Route> routes = new ArrayList<Route>();
+    private int maxParams;
+
+    /**
+     * 编译路由, methodRoutes的key为请求方法(大写), 方法为null时不限方法; factories中没有的handler由反射生成工厂
+     */
+    Router(Map<String, Class<? extends RequestHandler>> anyRoutes,
+           Map<String, Map<String, Class<? extends RequestHandler>>> methodRoutes,
+           Map<Class<?>, Supplier<? extends RequestHandler>> factories) {
+        for (Map.Entry<String, Class<? extends RequestHandler>> e : anyRoutes.entrySet()) {
+            add(null, e.getKey(), e.getValue(), factories.get(e.getValue()));
+        }
+        for (Map.Entry<String, Map<String, Class<? extends RequestHandler>>> m : methodRoutes.entrySet()) {
+            for (Map.Entry<String, Class<? extends RequestHandler>> e : m.getValue().entrySet()) {
+                add(m.getKey(), e.getKey(), e.getValue(), factories.get(e.getValue()));
+            }
+        }
+    }
+
+    private void add(String method, String pattern, Class<? extends RequestHandler> handler,
+                     Supplier<? extends RequestHandler> factory) {
+        if (pattern == null || !pattern.startsWith("/") || handler == null) {
+            log.warn("invalid route ignored: " + method + " " + pattern);
+            return;
+        }
+
+        boolean wildcard = pattern.endsWith(UrlMap.WILDCARD);
+        String prefix = wildcard ? pattern.substring(0, pattern.length() - UrlMap.WILDCARD.length())
+                                 : pattern;
+
+        Node node = root;
+        List<String> params = new ArrayList<String>();
+        if (!wildcard || prefix.length() > 0) {
+            for (String segment : prefix.substring(1).split("/", -1)) {
+                if (segment.length() > 2 && segment.startsWith("{") && segment.endsWith("}")) {
+                    params.add(segment.substring(1, segment.length() - 1));
+                    if (node.param == null) {
+                        node.param = new Node();
+                    }
+                    node = node.param;
+                } else {
+                    if (node.statics == null) {
+                        node.statics = new HashMap<String, Node>();
+                    }
+                    Node child = node.statics.get(segment);
+                    if (child == null) {
+                        child = new Node();
+                        node.statics.put(segment, child);
+                    }
+                    node = child;
+                }
+            }
+        }
+
+        if (factory == null) {
+            try {
+                factory = ClassReflection.newFactory(handler);
+            }
+            catch (ReflectionException e) {
+                log.warn("route handler cannot be created: " + pattern + " " + handler.getName(), e);
+            }
+        }
+
+        Route route = new Route(routes.size() + 1,
+                                method,
+                                pattern,
+                                handler,
+                                factory,
+                                params.toArray(new String[params.size()]));
+        if (wildcard) {
+            node.wildcard = RouteSet.add(node.wildcard, route);
+        } else {
+            node.end = RouteSet.add(node.end, route);
+        }
+        routes.add(route);
+        maxParams = Math.max(maxParams, params.size());
+    }
+
+    /**
+     * 查找path对应的路由, method为null时只匹配不限方法的路由, 没有匹配时返回null
+     */
+    public Match find(String method, String path) {
+        if (path == null || !path.startsWith("/")) {
+            return null;
+        }
+
+        String[] values = maxParams > 0 ? new String[maxParams] : null;
+        Route route = match(root, path, 1, method, values, 0);
+        if (route == null) {
+            return null;
+        }
+        if (route.paramNames.length == 0) {
+            return route.match;
+        }
+
+        String[] params = new String[route.paramNames.length];
+        System.arraycopy(values, 0, params, 0, params.length);
+        return new Match(route, params);
+    }
+
+    /**
+     * pos为下一段的起始位置, 超过path的长度时已没有剩下的段; 匹配成功时路径参数按顺序写入values
+     */
+    private static Route match(Node node, String path, int pos, String method, String[] values,
+                               int depth) {
+        int length = path.length();
+        if (pos > length) {
+            return node.end != null ? node.end.get(method) : null;
+        }
+
+        int end = path.indexOf('/', pos);
+        if (end < 0) {
+            end = length;
+        }
+
+        if (node.statics != null) {
+            Node child = node.statics.get(path.substring(pos, end));
+            if (child != null) {
+                Route route = match(child, path, end + 1, method, values, depth);
+                if (route != null) {
+                    return route;
+                }
+            }
+        }
+
+        if (node.param != null && end > pos) {
+            Route route = match(node.param, path, end + 1, method, values, depth + 1);
+            if (route != null) {
+                values[depth] = path.substring(pos, end);
+                return route;
+            }
+        }
+
+        if (node.wildcard != null) {
+            return node.wildcard.get(method);
+        }
+        return null;
+    }
+
+    /**
+     * 按注册顺序的所有路由
+     */
+    public List<Route> routes() {
+        return Collections.unmodifiableList(routes);
+    }
+
+    /**
+     * 每个路由的命中次数, key为"id 方法 路径"
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<String, Object>();
+        for (Route route : routes) {
+            stats.put(route.toString(), route.hits.sum());
+        }
+        return stats;
+    }
+
+    private static final class Node {
+        Map<String, Node> statics;
+        Node param;
+        RouteSet end;
+        RouteSet wildcard;
+    }
+
+    /**
+     * 同一路径上不限方法的路由及按方法指定的路由
+     */
+    private static final class RouteSet {
+        Route any;
+        Map<String, Route> methods;
+
+        static RouteSet add(RouteSet set, Route route) {
+            if (set == null) {
+                set = new RouteSet();
+            }
+            if (route.method == null) {
+                set.any = route;
+            } else {
+                if (set.methods == null) {
+                    set.methods = new HashMap<String, Route>();
+                }
+                set.methods.put(route.method, route);
+            }
+            return set;
+        }
+
+        Route get(String method) {
+            if (method != null && methods != null) {
+                Route route = methods.get(method);
+                if (route != null) {
+                    return route;
+                }
+            }
+            return any;
+        }
+    }
+
+    /**
+     * 一个注册的路由, id按注册顺序从1开始, 用于统计
+     */
+    public static final class Route {
+        private final int id;
+        private final String method;
+        private final String pattern;
+        private final Class<? extends RequestHandler> handler;
+        private final Supplier<? extends RequestHandler> factory;
+        private final String[] paramNames;
+        private final LongAdder hits = new LongAdder();
+
+        // 没有路径参数时共用的匹配结果
+        private final Match match;
+
+        Route(int id, String method, String pattern, Class<? extends RequestHandler> handler,
+              Supplier<? extends RequestHandler> factory, String[] paramNames) {
+            this.id = id;
+            this.method = method;
+            this.pattern = pattern;
+            this.handler = handler;
+            this.factory = factory;
+            this.paramNames = paramNames;
+            this.match = paramNames.length == 0 ? new Match(this, paramNames) : null;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        /**
+         * 请求方法, null为不限方法
+         */
+        public String getMethod() {
+            return method;
+        }
+
+        public String getPattern() {
+            return pattern;
+        }
+
+        public Class<? extends RequestHandler> getHandler() {
+            return handler;
+        }
+
+        /**
+         * 以编译时生成的工厂创建handler, 不经过反射
+         */
+        public RequestHandler newHandler() {
+            if (factory == null) {
+                throw new IllegalStateException("route handler cannot be created: " + handler.getName());
+            }
+            return factory.get();
+        }
+
+        /**
+         * 记录一次命中
+         */
+        public void hit() {
+            hits.increment();
+        }
+
+        @Override
+        public String toString() {
+            return id + " " + (method == null ? "*" : method) + " " + pattern;
+        }
+    }
+
+    /**
+     * 查找的结果: 路由及路径参数的值
+     */
+    public static final class Match {
+        private final Route route;
+        private final String[] params;
+
+        Match(Route route, String[] params) {
+            this.route = route;
+            this.params = params;
+        }
+
+        public Route getRoute() {
+            return route;
+        }
+
+        public Class<? extends RequestHandler> getHandler() {
+            return route.handler;
+        }
+
+        /**
+         * 路径参数的值, 没有这个参数时返回null
+         */
+        public String getParam(String name) {
+            String[] names = route.paramNames;
+            for (int i = 0; i < names.length; i++) {
+                if (names[i].equals(name)) {
+                    return params[i];
+                }
+            }
+            return null;
+        }
+    }
+}
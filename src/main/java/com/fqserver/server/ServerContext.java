@@ -1,7 +1,7 @@
 package com.fqserver.server;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLong;
 
 import com.fqserver.lang.util.concurrent.AtomicLongMap;
@@ -24,7 +24,7 @@ public class ServerContext {
         }
     };
     public static final AtomicLongMap<String> UrlCountMap = AtomicLongMap.create();
-    public static final Map<String, CountStats> UrlCountMap2 = new HashMap<String, CountStats>();
+    public static final Map<String, CountStats> UrlCountMap2 = new ConcurrentHashMap<String, CountStats>();
 
     public static long addUrlRequest2(String url) {
         return UrlCountMap.addAndGet(url, 1);
@@ -37,8 +37,13 @@ public class ServerContext {
     public static void addUrlRequest(String url) {
         CountStats count = UrlCountMap2.get(url);
         if (count == null) {
-            UrlCountMap2.put(url, new CountStats(1));
-        } else {
+            count = new CountStats();
+            CountStats old = UrlCountMap2.putIfAbsent(url, count);
+            if (old != null) {
+                count = old;
+            }
+        }
+        synchronized (count) {
             count.incr();
         }
     }
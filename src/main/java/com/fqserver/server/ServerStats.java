@@ -0,0 +1,80 @@
+package com.fqserver.server;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fqserver.core.utils.Pools;
+
+/**
+ * 服务器运行时统计信息的汇总, 可通过NettyConfig.statsPath以json方式访问
+ */
+public final class ServerStats {
+
+    public static Map<String, Object> snapshot() {
+        Map<String, Object> stats = new LinkedHashMap<String, Object>();
+
+        HttpServer server = ServerContext.httpServer;
+        if (server == null) {
+            return stats;
+        }
+
+        HandlerExecutor executor = server.getHandlerExecutor();
+        if (executor != null) {
+            stats.put("executor", executor.stats());
+        }
+
+        if (server.getAllocator() != null) {
+            stats.put("allocator", BufferAllocators.stats(server.getAllocator()));
+        }
+
+        stats.put("timeouts", server.getTimeoutStats().stats());
+        stats.put("bodyLimit", server.getBodyLimits().stats());
+
+        if (server.getRateLimiter() != null) {
+            stats.put("rateLimit", server.getRateLimiter().stats());
+        }
+
+        if (server.getAdmission() != null) {
+            stats.put("admission", server.getAdmission().stats());
+        }
+
+        if (server.getCompression() != null) {
+            stats.put("compression", server.getCompression().stats());
+        }
+
+        if (server.getSessions() != null) {
+            stats.put("sessions", server.getSessions().stats());
+        }
+
+        stats.put("routes", UrlMap.router().stats());
+
+        if (server.getConfig().useReqObjectPool) {
+            stats.put("pools", Pools.stats());
+        }
+
+        if (server.getHandshakeStats() != null) {
+            Map<String, Object> tls = server.getHandshakeStats().stats();
+            Map<String, Object> sessions = SslContexts.sessionStats(server.getSslContext());
+            if (sessions != null) {
+                tls.put("sessions", sessions);
+            }
+            stats.put("tls", tls);
+        }
+
+        if (server.getFileCache() != null) {
+            stats.put("staticFiles", server.getFileCache().stats());
+        }
+
+        List<Map<String, Object>> acceptors = new ArrayList<Map<String, Object>>();
+        for (AcceptCounter counter : server.getAcceptors()) {
+            acceptors.add(counter.stats());
+        }
+        stats.put("acceptors", acceptors);
+
+        return stats;
+    }
+
+    private ServerStats() {}
+}
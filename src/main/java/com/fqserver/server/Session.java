@@ -0,0 +1,86 @@
+package com.fqserver.server;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * SessionStore中的一个session, 由RequestHandler.getSession()取得.
+ *
+ * 属性保存在ConcurrentHashMap中, 同一session的请求可以同时在多个线程上读写; 属性值不能为null, 设置null即删除.
+ * 空闲超过NettyConfig.sessionTimeout后失效, 也可以由invalidate()立即失效.
+ */
+public final class Session {
+
+    private final String id;
+    private final long creationTime;
+    private final SessionStore store;
+    private final ConcurrentHashMap<String, Object> attributes = new ConcurrentHashMap<String, Object>(4);
+
+    private volatile long lastAccessedTime;
+    private volatile boolean valid = true;
+
+    Session(String id, SessionStore store, long now) {
+        this.id = id;
+        this.store = store;
+        this.creationTime = now;
+        this.lastAccessedTime = now;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public long getCreationTime() {
+        return creationTime;
+    }
+
+    /**
+     * 最近一次请求取得这个session的时间(毫秒)
+     */
+    public long getLastAccessedTime() {
+        return lastAccessedTime;
+    }
+
+    void access(long now) {
+        lastAccessedTime = now;
+    }
+
+    public boolean isValid() {
+        return valid;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T getAttribute(String name) {
+        return (T) attributes.get(name);
+    }
+
+    public void setAttribute(String name, Object value) {
+        if (value == null) {
+            attributes.remove(name);
+        } else {
+            attributes.put(name, value);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T removeAttribute(String name) {
+        return (T) attributes.remove(name);
+    }
+
+    public Set<String> getAttributeNames() {
+        return Collections.unmodifiableSet(attributes.keySet());
+    }
+
+    /**
+     * 立即失效并从SessionStore中删除, 之后同一id的请求取不到这个session
+     */
+    public void invalidate() {
+        store.invalidate(this);
+    }
+
+    void expire() {
+        valid = false;
+        attributes.clear();
+    }
+}
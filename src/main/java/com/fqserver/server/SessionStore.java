@@ -0,0 +1,213 @@
+package com.fqserver.server;
+
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 内存中的session, 以session id为key保存在ConcurrentHashMap中, 个数不超过sessionMaxSize(同时新建时可能短暂超出几个).
+ *
+ * <ul>
+ * <li>过期: 空闲超过sessionTimeout的session在下次取得时失效, 另由HttpServer定时sweep()清除</li>
+ * <li>淘汰: 已满时新建session前从随机位置开始抽样检查一部分session, 删除其中已过期的, 没有过期的则删除最久未访问的一个</li>
+ * <li>session id: SecureRandom生成的128位随机数, 以URL安全的base64编码</li>
+ * </ul>
+ *
+ * 服务重启后session丢失, 多个服务实例之间不共享.
+ */
+public class SessionStore {
+
+    // 淘汰时抽样的session数
+    private static final int EVICT_SAMPLES = 16;
+
+    private static final int ID_BYTES = 16;
+
+    private final ConcurrentHashMap<String, Session> sessions = new ConcurrentHashMap<String, Session>();
+    private final int maxSize;
+    private final long timeoutMillis;
+    private final String cookieName;
+    private final SecureRandom random = new SecureRandom();
+
+    private final LongAdder created = new LongAdder();
+    private final LongAdder expired = new LongAdder();
+    private final LongAdder evicted = new LongAdder();
+    private final LongAdder invalidated = new LongAdder();
+
+    /**
+     * sessionMaxSize为0时返回null, 此时RequestHandler.getSession()返回null
+     */
+    public static SessionStore create(NettyConfig config) {
+        if (config.sessionMaxSize <= 0) {
+            return null;
+        }
+        return new SessionStore(config.sessionMaxSize, config.sessionTimeout, config.sessionCookieName);
+    }
+
+    SessionStore(int maxSize, int timeoutSeconds, String cookieName) {
+        this.maxSize = maxSize;
+        this.timeoutMillis = TimeUnit.SECONDS.toMillis(Math.max(1, timeoutSeconds));
+        this.cookieName = cookieName;
+    }
+
+    /**
+     * 保存session id的cookie名
+     */
+    public String getCookieName() {
+        return cookieName;
+    }
+
+    /**
+     * 定时清除过期session的间隔(毫秒)
+     */
+    public long sweepInterval() {
+        return Math.min(timeoutMillis, TimeUnit.MINUTES.toMillis(1));
+    }
+
+    /**
+     * 取得id对应的session并更新访问时间, 没有或已过期时返回null
+     */
+    public Session get(String id) {
+        if (id == null) {
+            return null;
+        }
+        Session session = sessions.get(id);
+        if (session == null) {
+            return null;
+        }
+
+        long now = System.currentTimeMillis();
+        if (isExpired(session, now)) {
+            if (remove(session)) {
+                expired.increment();
+            }
+            return null;
+        }
+        session.access(now);
+        return session;
+    }
+
+    /**
+     * 新建session, 已满时先淘汰
+     */
+    public Session create() {
+        long now = System.currentTimeMillis();
+        if (sessions.size() >= maxSize) {
+            evict(now);
+        }
+
+        for (;;) {
+            Session session = new Session(newId(), this, now);
+            if (sessions.putIfAbsent(session.getId(), session) == null) {
+                created.increment();
+                return session;
+            }
+        }
+    }
+
+    /**
+     * Session.invalidate()时调用
+     */
+    void invalidate(Session session) {
+        if (remove(session)) {
+            invalidated.increment();
+        }
+    }
+
+    private boolean remove(Session session) {
+        if (sessions.remove(session.getId(), session)) {
+            session.expire();
+            return true;
+        }
+        return false;
+    }
+
+    private boolean isExpired(Session session, long now) {
+        return now - session.getLastAccessedTime() > timeoutMillis;
+    }
+
+    private void evict(long now) {
+        Session oldest = null;
+        boolean removed = false;
+        Iterator<Session> it = Spliterators.iterator(randomSamples());
+        if (!it.hasNext()) {
+            // 随机选中的一段可能全是空桶, 从头取样
+            it = sessions.values().iterator();
+        }
+        for (int i = 0; i < EVICT_SAMPLES && it.hasNext(); i++) {
+            Session session = it.next();
+            if (isExpired(session, now)) {
+                if (remove(session)) {
+                    expired.increment();
+                    removed = true;
+                }
+            } else if (oldest == null || session.getLastAccessedTime() < oldest.getLastAccessedTime()) {
+                oldest = session;
+            }
+        }
+
+        if (!removed && oldest != null && remove(oldest)) {
+            evicted.increment();
+        }
+    }
+
+    /**
+     * 从ConcurrentHashMap的随机位置开始的一段session: 随机选择spliterator对半分割后的一半,
+     * 直到剩下约2 * EVICT_SAMPLES个, 不必从头遍历
+     */
+    private Spliterator<Session> randomSamples() {
+        Spliterator<Session> samples = sessions.values().spliterator();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (samples.estimateSize() > 2 * EVICT_SAMPLES) {
+            Spliterator<Session> upper = samples.trySplit();
+            if (upper == null) {
+                break;
+            }
+            if (random.nextBoolean()) {
+                samples = upper;
+            }
+        }
+        return samples;
+    }
+
+    /**
+     * 清除所有过期的session, 由HttpServer定时调用
+     */
+    public void sweep() {
+        long now = System.currentTimeMillis();
+        for (Session session : sessions.values()) {
+            if (isExpired(session, now) && remove(session)) {
+                expired.increment();
+            }
+        }
+    }
+
+    private String newId() {
+        byte[] bytes = new byte[ID_BYTES];
+        random.nextBytes(bytes);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    public int size() {
+        return sessions.size();
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<String, Object>();
+        stats.put("size", sessions.size());
+        stats.put("maxSize", maxSize);
+        stats.put("timeoutMillis", timeoutMillis);
+        stats.put("created", created.sum());
+        stats.put("expired", expired.sum());
+        stats.put("evicted", evicted.sum());
+        stats.put("invalidated", invalidated.sum());
+        return stats;
+    }
+}
@@ -0,0 +1,146 @@
+package com.fqserver.server;
+
+import io.netty.handler.codec.http2.Http2SecurityUtil;
+import io.netty.handler.ssl.ApplicationProtocolConfig;
+import io.netty.handler.ssl.ApplicationProtocolConfig.Protocol;
+import io.netty.handler.ssl.ApplicationProtocolConfig.SelectedListenerFailureBehavior;
+import io.netty.handler.ssl.ApplicationProtocolConfig.SelectorFailureBehavior;
+import io.netty.handler.ssl.ApplicationProtocolNames;
+import io.netty.handler.ssl.OpenSsl;
+import io.netty.handler.ssl.OpenSslSessionContext;
+import io.netty.handler.ssl.OpenSslSessionStats;
+import io.netty.handler.ssl.OpenSslSessionTicketKey;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.SslProvider;
+import io.netty.handler.ssl.SupportedCipherSuiteFilter;
+import io.netty.handler.ssl.util.SelfSignedCertificate;
+
+import java.io.File;
+import java.security.SecureRandom;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.net.ssl.SSLSessionContext;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 创建SSL监听使用的SslContext.
+ *
+ * <ul>
+ * <li>证书: NettyConfig.sslCertFile/sslKeyFile指定的PEM文件, 未配置时使用自签名证书(仅用于测试)</li>
+ * <li>引擎: sslProvider为auto时, 有netty-tcnative(mvn -Popenssl)则用OpenSSL, 否则用JDK</li>
+ * <li>会话复用: session cache的大小和超时, 以及session ticket</li>
+ * </ul>
+ */
+public final class SslContexts {
+
+    public static final String AUTO = "auto";
+    public static final String OPENSSL = "openssl";
+    public static final String JDK = "jdk";
+
+    private static Logger log = LoggerFactory.getLogger(SslContexts.class);
+
+    public static SslContext create(NettyConfig config) throws Exception {
+        SslProvider provider = provider(config.sslProvider);
+
+        // JDK引擎的服务端session ticket需通过系统属性开启(JDK 13+)
+        if (provider == SslProvider.JDK && config.sslSessionTickets) {
+            System.setProperty("jdk.tls.server.enableSessionTicketExtension", "true");
+        }
+
+        SslContextBuilder builder;
+        if (config.sslCertFile.length() > 0) {
+            String password = config.sslKeyPassword.length() > 0 ? config.sslKeyPassword : null;
+            builder = SslContextBuilder.forServer(new File(config.sslCertFile),
+                                                  new File(config.sslKeyFile),
+                                                  password);
+        } else {
+            log.warn("netty.sslCertFile is not set, use a self-signed certificate");
+            SelfSignedCertificate ssc = new SelfSignedCertificate();
+            builder = SslContextBuilder.forServer(ssc.certificate(), ssc.privateKey());
+        }
+
+        builder.sslProvider(provider);
+        if (config.sslSessionCacheSize > 0) {
+            builder.sessionCacheSize(config.sslSessionCacheSize);
+        }
+        if (config.sslSessionTimeout > 0) {
+            builder.sessionTimeout(config.sslSessionTimeout);
+        }
+
+        if (config.http2) {
+            // 通过ALPN协商h2, 不支持时回退到http/1.1
+            builder.ciphers(Http2SecurityUtil.CIPHERS, SupportedCipherSuiteFilter.INSTANCE)
+                   .applicationProtocolConfig(new ApplicationProtocolConfig(Protocol.ALPN,
+                                                                            SelectorFailureBehavior.NO_ADVERTISE,
+                                                                            SelectedListenerFailureBehavior.ACCEPT,
+                                                                            ApplicationProtocolNames.HTTP_2,
+                                                                            ApplicationProtocolNames.HTTP_1_1));
+        }
+
+        SslContext sslCtx = builder.build();
+
+        // OpenSSL默认关闭了session ticket, 设置ticket key后开启
+        SSLSessionContext sessionContext = sslCtx.sessionContext();
+        if (config.sslSessionTickets && sessionContext instanceof OpenSslSessionContext) {
+            ((OpenSslSessionContext) sessionContext).setTicketKeys(newTicketKey());
+        }
+
+        log.info("ssl provider: " + provider + ", session tickets: " + config.sslSessionTickets);
+        return sslCtx;
+    }
+
+    private static SslProvider provider(String name) {
+        if (JDK.equalsIgnoreCase(name)) {
+            return SslProvider.JDK;
+        }
+        if (OpenSsl.isAvailable()) {
+            return SslProvider.OPENSSL;
+        }
+        if (OPENSSL.equalsIgnoreCase(name)) {
+            log.warn("OpenSSL is not available, fall back to JDK: " + OpenSsl.unavailabilityCause());
+        }
+        return SslProvider.JDK;
+    }
+
+    /**
+     * 随机生成ticket key, 服务重启后之前的ticket失效, 客户端回退到完整握手
+     */
+    private static OpenSslSessionTicketKey newTicketKey() {
+        SecureRandom random = new SecureRandom();
+        byte[] name = new byte[OpenSslSessionTicketKey.NAME_SIZE];
+        byte[] hmacKey = new byte[OpenSslSessionTicketKey.HMAC_KEY_SIZE];
+        byte[] aesKey = new byte[OpenSslSessionTicketKey.AES_KEY_SIZE];
+        random.nextBytes(name);
+        random.nextBytes(hmacKey);
+        random.nextBytes(aesKey);
+        return new OpenSslSessionTicketKey(name, hmacKey, aesKey);
+    }
+
+    /**
+     * OpenSSL引擎的session统计, JDK引擎返回null
+     */
+    public static Map<String, Object> sessionStats(SslContext sslCtx) {
+        if (sslCtx == null || !(sslCtx.sessionContext() instanceof OpenSslSessionContext)) {
+            return null;
+        }
+
+        OpenSslSessionStats s = ((OpenSslSessionContext) sslCtx.sessionContext()).stats();
+        Map<String, Object> stats = new LinkedHashMap<String, Object>();
+        stats.put("cached", s.number());
+        stats.put("accept", s.accept());
+        stats.put("acceptGood", s.acceptGood());
+        stats.put("hits", s.hits());
+        stats.put("misses", s.misses());
+        stats.put("timeouts", s.timeouts());
+        stats.put("cacheFull", s.cacheFull());
+        stats.put("ticketKeyResume", s.ticketKeyResume());
+        stats.put("ticketKeyFail", s.ticketKeyFail());
+        return stats;
+    }
+
+    private SslContexts() {}
+}
@@ -0,0 +1,147 @@
+package com.fqserver.server;
+
+import io.netty.util.AbstractReferenceCounted;
+import io.netty.util.ReferenceCounted;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 静态文件的已打开文件缓存, 按LRU淘汰, 避免每次请求都open/close文件.
+ *
+ * 每个Entry带引用计数: 缓存持有一个引用, 每次acquire再加一个, 正在传输的FileRegion/ChunkedNioFile在写完后释放.
+ * 被淘汰或文件已修改的Entry从缓存移除后, 等所有传输都结束才真正关闭文件.
+ */
+public class StaticFileCache {
+
+    private static Logger log = LoggerFactory.getLogger(StaticFileCache.class);
+
+    private final int maxSize;
+
+    private final LinkedHashMap<String, Entry> entries;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder opened = new LongAdder();
+    private final LongAdder closed = new LongAdder();
+
+    public StaticFileCache(int maxSize) {
+        this.maxSize = Math.max(0, maxSize);
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+    }
+
+    /**
+     * 取得已打开的文件, 调用方用完后必须release. 文件的长度或修改时间变化时重新打开.
+     */
+    public Entry acquire(File file) throws IOException {
+        String key = file.getPath();
+        long length = file.length();
+        long lastModified = file.lastModified();
+
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                if (entry.length == length && entry.lastModified == lastModified) {
+                    hits.increment();
+                    return (Entry) entry.retain();
+                }
+                entries.remove(key);
+                entry.release();
+            }
+        }
+
+        misses.increment();
+        Entry entry = new Entry(file, length, lastModified);
+        if (maxSize == 0) {
+            return entry;
+        }
+
+        synchronized (this) {
+            Entry old = entries.put(key, entry);
+            if (old != null) {
+                old.release();
+            }
+
+            Iterator<Entry> it = entries.values().iterator();
+            while (entries.size() > maxSize && it.hasNext()) {
+                Entry eldest = it.next();
+                it.remove();
+                eldest.release();
+                evictions.increment();
+            }
+        }
+        return (Entry) entry.retain();
+    }
+
+    /**
+     * 关闭缓存中的文件, 正在传输的文件在传输结束后关闭
+     */
+    public synchronized void clear() {
+        for (Entry entry : entries.values()) {
+            entry.release();
+        }
+        entries.clear();
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<String, Object>();
+        synchronized (this) {
+            stats.put("cached", entries.size());
+        }
+        stats.put("maxSize", maxSize);
+        stats.put("hits", hits.sum());
+        stats.put("misses", misses.sum());
+        stats.put("evictions", evictions.sum());
+        stats.put("open", opened.sum() - closed.sum());
+        return stats;
+    }
+
+    /**
+     * 一个打开的文件, 及打开时的长度和修改时间
+     */
+    public final class Entry extends AbstractReferenceCounted {
+        private final RandomAccessFile raf;
+        private final FileChannel channel;
+
+        public final long length;
+        public final long lastModified;
+
+        Entry(File file, long length, long lastModified) throws IOException {
+            this.raf = new RandomAccessFile(file, "r");
+            this.channel = raf.getChannel();
+            this.length = length;
+            this.lastModified = lastModified;
+            opened.increment();
+        }
+
+        public FileChannel channel() {
+            return channel;
+        }
+
+        @Override
+        protected void deallocate() {
+            closed.increment();
+            try {
+                raf.close();
+            }
+            catch (IOException e) {
+                log.warn("close file error", e);
+            }
+        }
+
+        @Override
+        public ReferenceCounted touch(Object hint) {
+            return this;
+        }
+    }
+}
@@ -0,0 +1,463 @@
+package com.fqserver.server;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.DefaultFileRegion;
+import io.netty.handler.codec.DateFormatter;
+import io.netty.handler.codec.http.DefaultHttpResponse;
+import io.netty.handler.codec.http.HttpChunkedInput;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.handler.codec.http2.Http2StreamChannel;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.handler.stream.ChunkedInput;
+import io.netty.util.AsciiString;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URLConnection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 静态文件服务, 在UrlMap中以前缀注册(例如"/static/*"), 路径去掉getUrlPrefix后对应getRootDir下的文件.
+ *
+ * 明文HTTP/1.1连接用FileRegion(sendfile)零拷贝发送, SSL连接和HTTP/2的stream以分块读文件的方式发送.
+ * 支持单个区间的Range请求, 以及ETag/Last-Modified的条件请求. 打开的文件由StaticFileCache缓存.
+ */
+public class StaticFileRequestHandler extends RequestHandler {
+
+    private static final Map<String, CharSequence> CONTENT_TYPES = new HashMap<String, CharSequence>();
+
+    static {
+        CONTENT_TYPES.put("html", AsciiString.cached("text/html; charset=UTF-8"));
+        CONTENT_TYPES.put("htm", AsciiString.cached("text/html; charset=UTF-8"));
+        CONTENT_TYPES.put("css", AsciiString.cached("text/css; charset=UTF-8"));
+        CONTENT_TYPES.put("js", AsciiString.cached("application/javascript; charset=UTF-8"));
+        CONTENT_TYPES.put("json", AsciiString.cached("application/json; charset=UTF-8"));
+        CONTENT_TYPES.put("txt", AsciiString.cached("text/plain; charset=UTF-8"));
+        CONTENT_TYPES.put("xml", AsciiString.cached("application/xml; charset=UTF-8"));
+        CONTENT_TYPES.put("svg", AsciiString.cached("image/svg+xml"));
+        CONTENT_TYPES.put("png", AsciiString.cached("image/png"));
+        CONTENT_TYPES.put("jpg", AsciiString.cached("image/jpeg"));
+        CONTENT_TYPES.put("jpeg", AsciiString.cached("image/jpeg"));
+        CONTENT_TYPES.put("gif", AsciiString.cached("image/gif"));
+        CONTENT_TYPES.put("webp", AsciiString.cached("image/webp"));
+        CONTENT_TYPES.put("ico", AsciiString.cached("image/x-icon"));
+        CONTENT_TYPES.put("woff", AsciiString.cached("font/woff"));
+        CONTENT_TYPES.put("woff2", AsciiString.cached("font/woff2"));
+        CONTENT_TYPES.put("wasm", AsciiString.cached("application/wasm"));
+        CONTENT_TYPES.put("pdf", AsciiString.cached("application/pdf"));
+        CONTENT_TYPES.put("zip", AsciiString.cached("application/zip"));
+        CONTENT_TYPES.put("gz", AsciiString.cached("application/gzip"));
+        CONTENT_TYPES.put("apk", AsciiString.cached("application/vnd.android.package-archive"));
+        CONTENT_TYPES.put("mp4", AsciiString.cached("video/mp4"));
+    }
+
+    private static final String OCTET_STREAM = "application/octet-stream";
+
+    private static final ConcurrentHashMap<String, File> ROOTS = new ConcurrentHashMap<String, File>();
+
+    /**
+     * 注册的url前缀, 默认为NettyConfig.staticPath
+     */
+    protected String getUrlPrefix() {
+        return this.getServer().getConfig().staticPath;
+    }
+
+    /**
+     * 文件根目录, 默认为NettyConfig.staticRoot
+     */
+    protected File getRootDir() throws IOException {
+        String name = this.getServer().getConfig().staticRoot;
+        File root = ROOTS.get(name);
+        if (root == null) {
+            root = new File(name).getCanonicalFile();
+            ROOTS.put(name, root);
+        }
+        return root;
+    }
+
+    @Override
+    public void doGet() {
+        HttpMethod method = request.method();
+        if (!HttpMethod.GET.equals(method) && !HttpMethod.HEAD.equals(method)) {
+            sendStatus(HttpResponseStatus.METHOD_NOT_ALLOWED);
+            return;
+        }
+
+        try {
+            serve(HttpMethod.HEAD.equals(method));
+        }
+        catch (IOException e) {
+            log.error("Static file error:", e);
+            if (!isResponded()) {
+                sendStatus(HttpResponseStatus.INTERNAL_SERVER_ERROR);
+            }
+        }
+    }
+
+    @Override
+    public void doPost() {
+        sendStatus(HttpResponseStatus.METHOD_NOT_ALLOWED);
+    }
+
+    private void serve(boolean head) throws IOException {
+        File file = resolve(getRequestUri().path());
+        if (file == null || !file.isFile()) {
+            sendStatus(HttpResponseStatus.NOT_FOUND);
+            return;
+        }
+
+        StaticFileCache.Entry entry;
+        try {
+            entry = this.getServer().getFileCache().acquire(file);
+        }
+        catch (IOException e) {
+            sendStatus(HttpResponseStatus.NOT_FOUND);
+            return;
+        }
+
+        boolean transferred = false;
+        try {
+            transferred = serve(file, entry, head);
+        }
+        finally {
+            if (!transferred) {
+                entry.release();
+            }
+        }
+    }
+
+    /**
+     * 写出文件内容, 文件交给FileRegion/分块读取后返回true, 由它们在写完后释放entry
+     */
+    private boolean serve(File file, StaticFileCache.Entry entry, boolean head) {
+        long length = entry.length;
+        String etag = "\"" + Long.toHexString(length) + "-" + Long.toHexString(entry.lastModified)
+                      + "\"";
+        String lastModified = DateFormatter.format(new Date(entry.lastModified));
+
+        if (isNotModified(request.headers(), etag, entry.lastModified)) {
+            HttpResponse response = newResponse(HttpResponseStatus.NOT_MODIFIED, etag, lastModified);
+            writeResponse(response, LastHttpContent.EMPTY_LAST_CONTENT);
+            return false;
+        }
+
+        long start = 0;
+        long end = length - 1;
+        HttpResponseStatus status = HttpResponseStatus.OK;
+
+        String range = request.headers().get(HttpHeaderNames.RANGE);
+        if (range != null && isRangeFresh(request.headers(), etag, entry.lastModified)) {
+            long[] r = parseRange(range, length);
+            if (r == null) {
+                HttpResponse response = newResponse(HttpResponseStatus.REQUESTED_RANGE_NOT_SATISFIABLE,
+                                                    etag,
+                                                    lastModified);
+                response.headers().set(HttpHeaderNames.CONTENT_RANGE, "bytes */" + length);
+                writeResponse(response, LastHttpContent.EMPTY_LAST_CONTENT);
+                return false;
+            }
+            if (r.length == 2) {
+                start = r[0];
+                end = r[1];
+                status = HttpResponseStatus.PARTIAL_CONTENT;
+            }
+        }
+
+        long count = end - start + 1;
+
+        HttpResponse response = newResponse(status, etag, lastModified);
+        response.headers().set(HttpHeaderNames.CONTENT_TYPE, contentType(file.getName()));
+        response.headers().set(HttpHeaderNames.CONTENT_LENGTH, count);
+        response.headers().set(HttpHeaderNames.CACHE_CONTROL,
+                               "max-age=" + this.getServer().getConfig().staticMaxAge);
+        if (status == HttpResponseStatus.PARTIAL_CONTENT) {
+            response.headers().set(HttpHeaderNames.CONTENT_RANGE,
+                                   "bytes " + start + "-" + end + "/" + length);
+        }
+
+        if (head || count <= 0) {
+            writeResponse(response, LastHttpContent.EMPTY_LAST_CONTENT);
+            return false;
+        }
+
+        if (isZeroCopy(ctx)) {
+            writeResponse(response,
+                          new CachedFileRegion(entry, start, count),
+                          LastHttpContent.EMPTY_LAST_CONTENT);
+        } else {
+            writeResponse(response,
+                          new HttpChunkedInput(new CachedChunkedFile(entry,
+                                                                     start,
+                                                                     count,
+                                                                     this.getServer()
+                                                                         .getConfig().responseChunkSize)));
+        }
+        return true;
+    }
+
+    /**
+     * sendfile只能用于没有SSL等字节变换的HTTP/1.x连接
+     */
+    private static boolean isZeroCopy(ChannelHandlerContext ctx) {
+        return !(ctx.channel() instanceof Http2StreamChannel)
+               && ctx.pipeline().get(SslHandler.class) == null;
+    }
+
+    private HttpResponse newResponse(HttpResponseStatus status, String etag, String lastModified) {
+        HttpResponse response = new DefaultHttpResponse(HttpVersion.HTTP_1_1, status);
+        response.headers().set(HttpHeaderNames.ACCEPT_RANGES, HttpHeaderValues.BYTES);
+        response.headers().set(HttpHeaderNames.ETAG, etag);
+        response.headers().set(HttpHeaderNames.LAST_MODIFIED, lastModified);
+        response.headers().set(HttpHeaderNames.CONNECTION,
+                               isKeepAlive() ? HttpHeaderValues.KEEP_ALIVE : HttpHeaderValues.CLOSE);
+        if (status == HttpResponseStatus.REQUESTED_RANGE_NOT_SATISFIABLE) {
+            response.headers().set(HttpHeaderNames.CONTENT_LENGTH, 0);
+        }
+        return response;
+    }
+
+    private void sendStatus(HttpResponseStatus status) {
+        HttpResponse response = new DefaultHttpResponse(HttpVersion.HTTP_1_1, status);
+        response.headers().set(HttpHeaderNames.CONTENT_LENGTH, 0);
+        response.headers().set(HttpHeaderNames.CONNECTION,
+                               isKeepAlive() ? HttpHeaderValues.KEEP_ALIVE : HttpHeaderValues.CLOSE);
+        writeResponse(response, LastHttpContent.EMPTY_LAST_CONTENT);
+    }
+
+    /**
+     * url路径对应的文件, 不允许访问根目录之外及隐藏的文件
+     */
+    private File resolve(String path) throws IOException {
+        String prefix = getUrlPrefix();
+        if (prefix != null && path.startsWith(prefix)) {
+            path = path.substring(prefix.length());
+        }
+
+        if (path.indexOf('\0') >= 0 || path.contains("/.") || path.startsWith(".")) {
+            return null;
+        }
+
+        File root = getRootDir();
+        File file = new File(root, path).getCanonicalFile();
+        if (!file.getPath().startsWith(root.getPath() + File.separator)) {
+            return null;
+        }
+        return file;
+    }
+
+    /**
+     * 条件请求与当前文件一致, 返回304. 有If-None-Match时忽略If-Modified-Since
+     */
+    static boolean isNotModified(HttpHeaders headers, String etag, long lastModified) {
+        String ifNoneMatch = headers.get(HttpHeaderNames.IF_NONE_MATCH);
+        if (ifNoneMatch != null) {
+            return "*".equals(ifNoneMatch.trim()) || matchesEtag(ifNoneMatch, etag);
+        }
+
+        Date since = parseDate(headers.get(HttpHeaderNames.IF_MODIFIED_SINCE));
+        return since != null && lastModified / 1000 <= since.getTime() / 1000;
+    }
+
+    /**
+     * If-Range与当前文件不一致时忽略Range, 返回整个文件
+     */
+    static boolean isRangeFresh(HttpHeaders headers, String etag, long lastModified) {
+        String ifRange = headers.get(HttpHeaderNames.IF_RANGE);
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.trim().startsWith("\"") || ifRange.trim().startsWith("W/")) {
+            return etag.equals(ifRange.trim());
+        }
+        Date date = parseDate(ifRange);
+        return date != null && lastModified / 1000 == date.getTime() / 1000;
+    }
+
+    private static boolean matchesEtag(String header, String etag) {
+        for (String tag : header.split(",")) {
+            tag = tag.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Date parseDate(String value) {
+        return value == null ? null : DateFormatter.parseHttpDate(value);
+    }
+
+    /**
+     * 解析"bytes=start-end", "bytes=start-", "bytes=-suffix". 返回{start, end}; 多个区间或格式错误(包括end小于start)时
+     * 返回空数组表示忽略Range; 区间超出文件时返回null
+     */
+    static long[] parseRange(String range, long length) {
+        String value = range.trim();
+        if (!value.startsWith("bytes=") || value.indexOf(',') >= 0) {
+            return new long[0];
+        }
+        value = value.substring(6).trim();
+
+        int dash = value.indexOf('-');
+        if (dash < 0) {
+            return new long[0];
+        }
+
+        long start;
+        long end;
+        try {
+            String first = value.substring(0, dash).trim();
+            String last = value.substring(dash + 1).trim();
+            if (first.isEmpty()) {
+                if (last.isEmpty()) {
+                    return new long[0];
+                }
+                long suffix = Long.parseLong(last);
+                if (suffix <= 0) {
+                    return null;
+                }
+                start = Math.max(0, length - suffix);
+                end = length - 1;
+            } else {
+                start = Long.parseLong(first);
+                end = length - 1;
+                if (!last.isEmpty()) {
+                    long lastPos = Long.parseLong(last);
+                    if (lastPos < start) {
+                        return new long[0];
+                    }
+                    end = Math.min(lastPos, end);
+                }
+            }
+        }
+        catch (NumberFormatException e) {
+            return new long[0];
+        }
+
+        if (start < 0 || start >= length || end < start) {
+            return null;
+        }
+        return new long[] { start, end };
+    }
+
+    static CharSequence contentType(String name) {
+        int dot = name.lastIndexOf('.');
+        if (dot >= 0) {
+            CharSequence type = CONTENT_TYPES.get(name.substring(dot + 1).toLowerCase());
+            if (type != null) {
+                return type;
+            }
+        }
+        String type = URLConnection.guessContentTypeFromName(name);
+        return type != null ? type : OCTET_STREAM;
+    }
+
+    /**
+     * sendfile发送缓存中的文件, 释放时只归还缓存的引用, 不关闭文件
+     */
+    private static final class CachedFileRegion extends DefaultFileRegion {
+        private final StaticFileCache.Entry entry;
+
+        CachedFileRegion(StaticFileCache.Entry entry, long position, long count) {
+            super(entry.channel(), position, count);
+            this.entry = entry;
+        }
+
+        @Override
+        protected void deallocate() {
+            entry.release();
+        }
+    }
+
+    /**
+     * 分块读取缓存中的文件, 按位置读取, 同一文件可以同时被多个连接读取
+     */
+    private static final class CachedChunkedFile implements ChunkedInput<ByteBuf> {
+        private final StaticFileCache.Entry entry;
+        private final long endOffset;
+        private final int chunkSize;
+        private final long startOffset;
+        private long offset;
+        private boolean closed;
+
+        CachedChunkedFile(StaticFileCache.Entry entry, long offset, long count, int chunkSize) {
+            this.entry = entry;
+            this.startOffset = offset;
+            this.offset = offset;
+            this.endOffset = offset + count;
+            this.chunkSize = Math.max(1024, chunkSize);
+        }
+
+        @Override
+        public boolean isEndOfInput() {
+            return offset >= endOffset;
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                entry.release();
+            }
+        }
+
+        @Deprecated
+        @Override
+        public ByteBuf readChunk(ChannelHandlerContext ctx) throws Exception {
+            return readChunk(ctx.alloc());
+        }
+
+        @Override
+        public ByteBuf readChunk(ByteBufAllocator allocator) throws Exception {
+            if (isEndOfInput()) {
+                return null;
+            }
+
+            int size = (int) Math.min(chunkSize, endOffset - offset);
+            ByteBuf buf = allocator.buffer(size);
+            boolean release = true;
+            try {
+                while (buf.writerIndex() < size) {
+                    int read = buf.writeBytes(entry.channel(), offset + buf.writerIndex(),
+                                              size - buf.writerIndex());
+                    if (read < 0) {
+                        throw new IOException("file truncated");
+                    }
+                }
+                offset += size;
+                release = false;
+                return buf;
+            }
+            finally {
+                if (release) {
+                    buf.release();
+                }
+            }
+        }
+
+        @Override
+        public long length() {
+            return endOffset - startOffset;
+        }
+
+        @Override
+        public long progress() {
+            return offset - startOffset;
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.fqserver.server;
+
+/**
+ * 以json方式返回ServerStats统计信息, 注册在NettyConfig.statsPath上
+ */
+public class StatsRequestHandler extends RequestHandler {
+
+    @Override
+    public void get() {
+        write(ServerStats.snapshot());
+    }
+
+    @Override
+    public void post() {
+        write(ServerStats.snapshot());
+    }
+}
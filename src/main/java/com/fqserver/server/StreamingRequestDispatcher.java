@@ -0,0 +1,280 @@
+package com.fqserver.server;
+
+import com.fqserver.core.utils.Pools;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.EmptyHttpHeaders;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.util.ReferenceCountUtil;
+
+import java.util.ArrayDeque;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 位于HttpObjectAggregator之前, 把注册为StreamingRequestHandler的路由的请求截下, 按分块交给handler,
+ * 其它请求原样交给后面的聚合及FullHttpServerHandler.
+ *
+ * 同一连接上的请求按顺序应答: 流式请求要等FullHttpServerHandler处理完之前的请求才开始, 在此期间及流式请求
+ * 接收body期间到达的其它消息暂存在held中并暂停读取, 流式请求结束后再依次处理.
+ */
+public class StreamingRequestDispatcher extends ChannelInboundHandlerAdapter {
+    private final HttpServer server;
+
+    // 当前正在接收body的流式请求
+    private StreamingRequestHandler current;
+
+    // 出错后丢弃当前请求剩余的body
+    private boolean discarding;
+
+    // 在等待之前的请求处理完成的流式请求
+    private HttpRequest waiting;
+
+    private final ArrayDeque<Object> held = new ArrayDeque<Object>();
+
+    private static Logger log = LoggerFactory.getLogger(StreamingRequestDispatcher.class);
+
+    public StreamingRequestDispatcher(HttpServer svr) {
+        this.server = svr;
+    }
+
+    /**
+     * 路由到的RequestHandler是否为流式接收, 未注册的路径返回null
+     */
+    static Router.Match streamingRoute(Channel channel, HttpRequest req) {
+        if (!req.decoderResult().isSuccess()) {
+            return null;
+        }
+
+        Router.Match route = UrlMap.match(channel, req);
+        if (route == null || !StreamingRequestHandler.class.isAssignableFrom(route.getHandler())) {
+            return null;
+        }
+        return route;
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (waiting != null || !held.isEmpty()) {
+            held.add(msg);
+            ctx.channel().config().setAutoRead(false);
+            return;
+        }
+        handle(ctx, msg);
+    }
+
+    private void handle(final ChannelHandlerContext ctx, Object msg) {
+        if (current != null || discarding) {
+            if (msg instanceof HttpContent) {
+                onContent(ctx, (HttpContent) msg);
+                return;
+            }
+            // 上一个请求的body不完整, 连接已经无法继续使用
+            ReferenceCountUtil.release(msg);
+            abort();
+            ctx.close();
+            return;
+        }
+
+        if (msg instanceof HttpRequest) {
+            final HttpRequest req = (HttpRequest) msg;
+            final Router.Match route = streamingRoute(ctx.channel(), req);
+            if (route != null) {
+                final FullHttpServerHandler fullHandler = ctx.pipeline()
+                                                             .get(FullHttpServerHandler.class);
+                if (fullHandler == null || fullHandler.isIdle()) {
+                    start(ctx, req, route, fullHandler);
+                    return;
+                }
+
+                waiting = req;
+                ctx.channel().config().setAutoRead(false);
+                fullHandler.runWhenIdle(new Runnable() {
+                    @Override
+                    public void run() {
+                        waiting = null;
+                        start(ctx, req, route, fullHandler);
+                        drain(ctx);
+                    }
+                });
+                return;
+            }
+        }
+
+        ctx.fireChannelRead(msg);
+    }
+
+    private void drain(ChannelHandlerContext ctx) {
+        Object msg;
+        while (waiting == null && (msg = held.poll()) != null) {
+            handle(ctx, msg);
+        }
+
+        if (waiting == null && held.isEmpty() && ctx.channel().isActive()) {
+            ctx.channel().config().setAutoRead(true);
+        }
+    }
+
+    private void start(ChannelHandlerContext ctx, HttpRequest req, Router.Match route,
+                       FullHttpServerHandler fullHandler) {
+        Class<? extends StreamingRequestHandler> cls = route.getHandler()
+                                                            .asSubclass(StreamingRequestHandler.class);
+        boolean keepAlive = fullHandler != null ? fullHandler.isKeepAlive(ctx, req)
+                                               : HttpUtil.isKeepAlive(req);
+
+        // 请求头以无body的FullHttpRequest交给handler, 使getParameter等方法照常可用
+        FullHttpRequest head = new DefaultFullHttpRequest(req.protocolVersion(),
+                                                          req.method(),
+                                                          req.uri(),
+                                                          Unpooled.EMPTY_BUFFER,
+                                                          req.headers(),
+                                                          EmptyHttpHeaders.INSTANCE);
+
+        StreamingRequestHandler reqHandler = null;
+        try {
+            if (this.server.getConfig().useReqObjectPool) {
+                reqHandler = Pools.obtain(cls);
+            } else {
+                reqHandler = (StreamingRequestHandler) route.getRoute().newHandler();
+            }
+
+            reqHandler.setServer(this.server);
+            reqHandler.setRequest(head);
+            reqHandler.setCtx(ctx);
+            reqHandler.setKeepAlive(keepAlive);
+            reqHandler.setRoute(route);
+            reqHandler.setRequestPrefix(ServerContext.getLocalRequestPrefix());
+
+            route.getRoute().hit();
+            ServerContext.addUrlRequest(route.getRoute().getPattern());
+
+            current = reqHandler;
+
+            if (HttpUtil.is100ContinueExpected(req)) {
+                ctx.writeAndFlush(new DefaultFullHttpResponse(HttpVersion.HTTP_1_1,
+                                                              HttpResponseStatus.CONTINUE,
+                                                              Unpooled.EMPTY_BUFFER));
+            }
+
+            reqHandler.onStart();
+        }
+        catch (Exception e) {
+            log.error("Streaming request start error:", e);
+            fail(ctx);
+        }
+
+        if (req instanceof HttpContent) {
+            handle(ctx, req);
+        }
+    }
+
+    private void onContent(ChannelHandlerContext ctx, HttpContent chunk) {
+        try {
+            if (current != null && chunk.content().isReadable()) {
+                current.onContent(chunk.content());
+            }
+        }
+        catch (Exception e) {
+            log.error("Streaming request content error:", e);
+            fail(ctx);
+        }
+        finally {
+            chunk.release();
+        }
+
+        if (chunk instanceof LastHttpContent) {
+            end(ctx);
+        }
+    }
+
+    private void end(ChannelHandlerContext ctx) {
+        StreamingRequestHandler reqHandler = current;
+        current = null;
+        discarding = false;
+
+        if (reqHandler == null) {
+            return;
+        }
+
+        try {
+            reqHandler.onEnd();
+        }
+        catch (Exception e) {
+            log.error("Streaming request end error:", e);
+            reqHandler.onAbort();
+        }
+
+        if (!reqHandler.isResponded()) {
+            FullHttpServerHandler.sendStatus(ctx, HttpResponseStatus.INTERNAL_SERVER_ERROR);
+        }
+        free(reqHandler);
+    }
+
+    /**
+     * 处理出错时返回500并关闭连接, 丢弃剩余的body
+     */
+    private void fail(ChannelHandlerContext ctx) {
+        StreamingRequestHandler reqHandler = current;
+        boolean responded = reqHandler != null && reqHandler.isResponded();
+
+        abort();
+        discarding = true;
+
+        if (!responded) {
+            FullHttpServerHandler.sendStatus(ctx, HttpResponseStatus.INTERNAL_SERVER_ERROR);
+        } else {
+            ctx.close();
+        }
+    }
+
+    private void abort() {
+        StreamingRequestHandler reqHandler = current;
+        current = null;
+
+        if (reqHandler != null) {
+            try {
+                reqHandler.onAbort();
+            }
+            catch (Exception e) {
+                log.error("Streaming request abort error:", e);
+            }
+            free(reqHandler);
+        }
+    }
+
+    private void free(StreamingRequestHandler reqHandler) {
+        if (this.server.getConfig().useReqObjectPool) {
+            try {
+                Pools.free(reqHandler);
+            }
+            catch (Exception e) {
+                log.error("freeObject error", e);
+            }
+        }
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        abort();
+
+        ReferenceCountUtil.release(waiting);
+        waiting = null;
+
+        Object msg;
+        while ((msg = held.poll()) != null) {
+            ReferenceCountUtil.release(msg);
+        }
+        super.channelInactive(ctx);
+    }
+}
@@ -0,0 +1,52 @@
+package com.fqserver.server;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * 流式接收请求body的RequestHandler, 在UrlMap中注册后该路由的请求不经过HttpObjectAggregator,
+ * 由StreamingRequestDispatcher按到达顺序把body的每个分块交给onContent, 每个请求占用的内存只与分块大小有关.
+ *
+ * <ul>
+ * <li>onStart: 请求头已到达, 此时可以用getParameter/getRequest().headers()</li>
+ * <li>onContent: body的一个分块, 方法返回后分块即被释放, 需要保留的数据应自行拷贝或写出</li>
+ * <li>onEnd: body已全部到达, 在此写出响应</li>
+ * <li>onAbort: 连接在body接收完之前关闭或处理出错, 用于清理已写出的临时数据</li>
+ * </ul>
+ *
+ * 回调在连接的I/O线程上执行, 只适合增量的解析/摘要/写文件等短操作. 若请求仍经过了聚合(例如解码失败的请求),
+ * doGet/doPost会以整个body作为一个分块依次调用这几个回调.
+ */
+public abstract class StreamingRequestHandler extends RequestHandler {
+
+    protected void onStart() throws Exception {}
+
+    protected abstract void onContent(ByteBuf chunk) throws Exception;
+
+    protected abstract void onEnd() throws Exception;
+
+    protected void onAbort() {}
+
+    @Override
+    public void doGet() {
+        doAggregated();
+    }
+
+    @Override
+    public void doPost() {
+        doAggregated();
+    }
+
+    private void doAggregated() {
+        try {
+            onStart();
+            if (request.content().isReadable()) {
+                onContent(request.content());
+            }
+            onEnd();
+        }
+        catch (Exception e) {
+            log.error("Streaming request handler error:", e);
+            onAbort();
+        }
+    }
+}
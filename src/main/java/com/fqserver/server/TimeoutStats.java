@@ -0,0 +1,66 @@
+package com.fqserver.server;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelOutboundBuffer;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 因超时关闭的连接数
+ *
+ * <ul>
+ * <li>idle: 长连接空闲超过keepAliveIdleTimeout</li>
+ * <li>header: 请求头没有在connTimeout内读完</li>
+ * <li>body: 请求body两次读取之间超过soTimeout</li>
+ * <li>write: 有待写出的数据但超过soTimeout没有写出任何字节</li>
+ * <li>async: AsyncRequestHandler超过asyncTimeout或setDeadline的期限没有完成, 返回504</li>
+ * </ul>
+ */
+public class TimeoutStats {
+
+    private final LongAdder idle = new LongAdder();
+    private final LongAdder header = new LongAdder();
+    private final LongAdder body = new LongAdder();
+    private final LongAdder write = new LongAdder();
+    private final LongAdder async = new LongAdder();
+
+    public void idle() {
+        idle.increment();
+    }
+
+    public void header() {
+        header.increment();
+    }
+
+    public void body() {
+        body.increment();
+    }
+
+    public void write() {
+        write.increment();
+    }
+
+    public void async() {
+        async.increment();
+    }
+
+    /**
+     * channel是否有还未写出的数据
+     */
+    static boolean hasPendingWrites(Channel channel) {
+        ChannelOutboundBuffer buf = channel.unsafe().outboundBuffer();
+        return buf != null && buf.totalPendingWriteBytes() > 0;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<String, Object>();
+        stats.put("idle", idle.sum());
+        stats.put("header", header.sum());
+        stats.put("body", body.sum());
+        stats.put("write", write.sum());
+        stats.put("async", async.sum());
+        return stats;
+    }
+}
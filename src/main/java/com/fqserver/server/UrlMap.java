@@ -1,10 +1,206 @@
 package com.fqserver.server;
 
+import io.netty.channel.Channel;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.util.AttributeKey;
+
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+/**
+ * 路由注册表. 启动时编译成Router(InitServer.init中编译并建立对象池, 没有编译过时由HttpServer.start编译),
+ * 之后的查找都在Router上进行; 启动后修改了注册的路由需要再调用compile().
+ *
+ * 路径中可以有路径参数(/user/{id}), 以"/*"结尾的为前缀路由; urlMap中的路由不限请求方法, 用put(method, ...)注册只处理某个方法的路由.
+ * 以&#64;Route声明的路由由load()从编译时生成的RouteTable注册.
+ */
 public final class UrlMap {
 
+    private static Logger log = LoggerFactory.getLogger(UrlMap.class);
+
     public static final Map<String, Class<? extends RequestHandler>> urlMap = new HashMap<String, Class<? extends RequestHandler>>();
 
+    // 按请求方法注册的路由
+    private static final Map<String, Map<String, Class<? extends RequestHandler>>> methodMap = new LinkedHashMap<String, Map<String, Class<? extends RequestHandler>>>();
+
+    // RouteTable注册的handler工厂, 没有时编译Router时由ClassReflection.newFactory生成
+    private static final Map<Class<?>, Supplier<? extends RequestHandler>> factories = new HashMap<Class<?>, Supplier<? extends RequestHandler>>();
+
+    private static volatile Router router;
+
+    // channel上最近一个请求查找到的路由, 请求前面的各个阶段和handler共用
+    private static final AttributeKey<Resolved> RESOLVED = AttributeKey.valueOf(UrlMap.class, "resolved");
+
+    /**
+     * 以此结尾的key为前缀路由, 例如"/static/*"匹配"/static/"下的所有路径
+     */
+    public static final String WILDCARD = "/*";
+
+    /**
+     * 注册只处理method请求的路由
+     */
+    public static synchronized void put(HttpMethod method, String pattern,
+                                        Class<? extends RequestHandler> cls) {
+        Map<String, Class<? extends RequestHandler>> routes = methodMap.get(method.name());
+        if (routes == null) {
+            routes = new LinkedHashMap<String, Class<? extends RequestHandler>>();
+            methodMap.put(method.name(), routes);
+        }
+        routes.put(pattern, cls);
+    }
+
+    /**
+     * 注册不限方法的路由及创建handler的工厂
+     */
+    public static synchronized <T extends RequestHandler> void put(String pattern, Class<T> cls,
+                                                                   Supplier<T> factory) {
+        urlMap.put(pattern, cls);
+        factories.put(cls, factory);
+    }
+
+    /**
+     * 注册只处理method请求的路由及创建handler的工厂
+     */
+    public static synchronized <T extends RequestHandler> void put(HttpMethod method,
+                                                                   String pattern,
+                                                                   Class<T> cls,
+                                                                   Supplier<T> factory) {
+        put(method, pattern, cls);
+        factories.put(cls, factory);
+    }
+
+    /**
+     * 注册classpath中所有编译时生成的RouteTable(&#64;Route声明的路由), 返回RouteTable的个数
+     */
+    public static synchronized int load() {
+        int tables = 0;
+        for (RouteTable table : ServiceLoader.load(RouteTable.class, UrlMap.class.getClassLoader())) {
+            table.register();
+            tables++;
+        }
+        if (log.isInfoEnabled()) {
+            log.info("loaded " + tables + " route tables");
+        }
+        return tables;
+    }
+
+    /**
+     * 把当前注册的路由编译成Router
+     */
+    public static synchronized Router compile() {
+        Router compiled = new Router(urlMap, methodMap, factories);
+        router = compiled;
+        if (log.isInfoEnabled()) {
+            log.info("compiled " + compiled.routes().size() + " routes");
+        }
+        return compiled;
+    }
+
+    /**
+     * 编译好的Router, 还没有编译时先编译
+     */
+    public static Router router() {
+        Router r = router;
+        return r != null ? r : compile();
+    }
+
+    /**
+     * 查找method请求的path对应的路由, 都没有时返回null
+     */
+    public static Router.Match match(HttpMethod method, String path) {
+        return router().find(method != null ? method.name() : null, path);
+    }
+
+    /**
+     * 不限请求方法的路由中path对应的RequestHandler, 都没有时返回null
+     */
+    public static Class<? extends RequestHandler> get(String path) {
+        Router.Match match = router().find(null, path);
+        return match != null ? match.getHandler() : null;
+    }
+
+    /**
+     * channel上收到的请求对应的路由, 都没有时返回null. 路径中有不能解码的%转义时抛出IllegalArgumentException.
+     *
+     * 结果保存在channel上, 请求经过的各个阶段(包括聚合后的FullHttpRequest)只查找一次;
+     * 以uri字符串对象判断是否为同一请求, 同一连接上已经收到了后面的请求时重新查找.
+     */
+    public static Router.Match match(Channel channel, HttpRequest req) {
+        String uri = req.uri();
+        HttpMethod method = req.method();
+        Resolved resolved = channel.attr(RESOLVED).get();
+        if (resolved == null || resolved.uri != uri || !resolved.method.equals(method)) {
+            resolved = new Resolved(uri, method, match(method, RequestUri.path(uri)));
+            channel.attr(RESOLVED).set(resolved);
+        }
+        return resolved.match;
+    }
+
+    private static final class Resolved {
+        final String uri;
+        final HttpMethod method;
+        final Router.Match match;
+
+        Resolved(String uri, HttpMethod method, Router.Match match) {
+            this.uri = uri;
+            this.method = method;
+            this.match = match;
+        }
+    }
+
+    /**
+     * 解析按路由配置的数值, 格式: /path=value,/prefix/*=value
+     */
+    public static Map<String, Integer> parseRouteValues(String spec) {
+        Map<String, Integer> values = new HashMap<String, Integer>();
+        for (String item : spec.split(",")) {
+            int eq = item.lastIndexOf('=');
+            if (eq <= 0) {
+                if (item.trim().length() > 0) {
+                    log.warn("invalid route config item: " + item);
+                }
+                continue;
+            }
+            try {
+                values.put(item.substring(0, eq).trim(), Integer.parseInt(item.substring(eq + 1).trim()));
+            }
+            catch (NumberFormatException e) {
+                log.warn("invalid route config item: " + item);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * parseRouteValues的结果中路由对应的值, 按路由注册的路径查找; 没有配置或route为null(没有匹配的路由)时返回null
+     */
+    public static Integer routeValue(Map<String, Integer> values, Router.Route route) {
+        return route != null ? values.get(route.getPattern()) : null;
+    }
+
+    /**
+     * parseRouteValues的结果中handler类cls对应的值, 用于按类区分的设置(例如对象池); 同一个类注册了多个配置的路径时取最大值,
+     * 没有配置时返回null. 按路由区分的设置使用routeValue(values, Router.Route)
+     */
+    public static synchronized Integer routeValue(Map<String, Integer> values, Class<?> cls) {
+        Integer value = null;
+        for (Map.Entry<String, Integer> e : values.entrySet()) {
+            boolean matched = urlMap.get(e.getKey()) == cls;
+            for (Map<String, Class<? extends RequestHandler>> routes : methodMap.values()) {
+                matched |= routes.get(e.getKey()) == cls;
+            }
+            if (matched && (value == null || e.getValue() > value)) {
+                value = e.getValue();
+            }
+        }
+        return value;
+    }
+
 }
@@ -0,0 +1,248 @@
+package com.fqserver.core.utils;
+
+import io.netty.util.concurrent.DefaultEventExecutor;
+import io.netty.util.concurrent.EventExecutor;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class PoolTest {
+
+    static class Item implements Pool.Poolable {
+        int resets;
+
+        @Override
+        public void reset() {
+            resets++;
+        }
+    }
+
+    static class ItemPool extends Pool<Item> {
+        int created;
+
+        ItemPool(int max, int maxPerThread) {
+            super(max, maxPerThread);
+        }
+
+        @Override
+        protected Item newObject() {
+            created++;
+            return new Item();
+        }
+    }
+
+    // 带有线程本地栈的Netty线程
+    private final EventExecutor executor = new DefaultEventExecutor();
+
+    @After
+    public void shutdown() {
+        executor.shutdownGracefully(0, 0, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 在Netty线程上执行, 把其中的断言失败抛回当前线程
+     */
+    private void onNettyThread(Runnable task) throws Throwable {
+        try {
+            executor.submit(task).get();
+        }
+        catch (ExecutionException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static long stat(Pool<?> pool, String name) {
+        return ((Number) pool.stats().get(name)).longValue();
+    }
+
+    @Test
+    public void reusesFreedObjectOnOtherThreads() {
+        ItemPool pool = new ItemPool(10, 4);
+        Item item = pool.obtain();
+        pool.free(item);
+
+        assertSame(item, pool.obtain());
+        assertEquals(1, pool.created);
+        assertEquals(1L, stat(pool, "misses"));
+        assertEquals(1L, stat(pool, "sharedHits"));
+        assertEquals(0L, stat(pool, "idle"));
+    }
+
+    @Test
+    public void resetsPoolableOnFree() {
+        ItemPool pool = new ItemPool(10, 4);
+        Item item = pool.obtain();
+        pool.free(item);
+        assertEquals(1, item.resets);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNull() {
+        new ItemPool(10, 4).free(null);
+    }
+
+    @Test
+    public void dropsObjectsBeyondSharedMax() {
+        ItemPool pool = new ItemPool(2, 0);
+        for (int i = 0; i < 3; i++) {
+            pool.free(new Item());
+        }
+
+        assertEquals(2, pool.getFree());
+        assertEquals(1L, stat(pool, "evictions"));
+        assertEquals(2L, stat(pool, "peak"));
+    }
+
+    @Test
+    public void nettyThreadUsesLocalStackFirst() throws Throwable {
+        final ItemPool pool = new ItemPool(10, 2);
+        onNettyThread(new Runnable() {
+            @Override
+            public void run() {
+                Item first = pool.obtain();
+                Item second = pool.obtain();
+                pool.free(first);
+                pool.free(second);
+
+                assertSame(second, pool.obtain());
+                assertSame(first, pool.obtain());
+                assertEquals(2L, stat(pool, "hits"));
+                assertEquals(0L, stat(pool, "sharedHits"));
+            }
+        });
+    }
+
+    @Test
+    public void fullStackOverflowsToShared() throws Throwable {
+        final ItemPool pool = new ItemPool(10, 2);
+        onNettyThread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < 3; i++) {
+                    pool.free(new Item());
+                }
+                assertEquals(3, pool.getFree());
+                assertEquals(3L, stat(pool, "idle"));
+            }
+        });
+
+        // 其他线程只能取得共享队列中的一个
+        assertEquals(1, pool.getFree());
+        pool.obtain();
+        assertNotNull(pool.obtain());
+        assertEquals(1L, stat(pool, "sharedHits"));
+        assertEquals(1L, stat(pool, "misses"));
+    }
+
+    @Test
+    public void clearDropsStacksOfOtherThreads() throws Throwable {
+        final ItemPool pool = new ItemPool(10, 4);
+        onNettyThread(new Runnable() {
+            @Override
+            public void run() {
+                pool.free(new Item());
+                pool.free(new Item());
+                assertEquals(2, pool.getFree());
+            }
+        });
+        pool.free(new Item());
+        assertEquals(3L, stat(pool, "idle"));
+
+        pool.clear();
+        assertEquals(0, pool.getFree());
+
+        // 清除后第一次使用时丢弃本线程栈中的旧对象
+        onNettyThread(new Runnable() {
+            @Override
+            public void run() {
+                assertEquals(0, pool.getFree());
+                pool.free(new Item());
+                assertEquals(1, pool.getFree());
+            }
+        });
+        assertEquals(1L, stat(pool, "idle"));
+    }
+
+    @Test
+    public void fillStopsAtSharedMax() {
+        ItemPool pool = new ItemPool(3, 4);
+
+        assertEquals(2, pool.fill(2));
+        assertEquals(1, pool.fill(5));
+        assertEquals(3, pool.getFree());
+        assertEquals(3L, stat(pool, "peak"));
+    }
+
+    @Test
+    public void peakIsHighestSizeUnderContention() throws InterruptedException {
+        final ItemPool pool = new ItemPool(4000, 0);
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int k = 0; k < 500; k++) {
+                        pool.free(new Item());
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(4000, pool.getFree());
+        assertEquals(4000L, stat(pool, "peak"));
+    }
+
+    public static class Pooled {
+        private Pooled() {}
+    }
+
+    public static class Unpooled {}
+
+    @Test
+    public void poolsReturnOnePoolPerType() {
+        Pool<Pooled> pool = Pools.get(Pooled.class, 5);
+
+        assertSame(pool, Pools.get(Pooled.class));
+        assertEquals(5, pool.max);
+        assertTrue(pool instanceof ReflectionPool);
+        assertTrue(Pools.stats().containsKey(Pooled.class.getName()));
+    }
+
+    @Test
+    public void poolsReuseFreedObjects() {
+        Pooled pooled = Pools.obtain(Pooled.class);
+        Pools.free(pooled);
+        assertSame(pooled, Pools.obtain(Pooled.class));
+    }
+
+    @Test
+    public void poolsIgnoreTypesNeverPooled() {
+        Pools.free(new Unpooled());
+        assertFalse(Pools.stats().containsKey(Unpooled.class.getName()));
+    }
+
+    @Test
+    public void poolsUseSetPool() {
+        ItemPool pool = new ItemPool(10, 4);
+        Pools.set(Item.class, pool);
+
+        assertSame(pool, Pools.get(Item.class));
+        Item item = Pools.obtain(Item.class);
+        Pools.free(item);
+        assertEquals(1, item.resets);
+        assertEquals(1, pool.getFree());
+    }
+}
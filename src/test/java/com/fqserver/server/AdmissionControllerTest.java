@@ -0,0 +1,225 @@
+package com.fqserver.server;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultHttpRequest;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpVersion;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class AdmissionControllerTest {
+
+    public static class Slow extends RequestHandler {}
+
+    public static class Fast extends RequestHandler {}
+
+    private final EmbeddedChannel channel = new EmbeddedChannel();
+
+    @BeforeClass
+    public static void registerRoutes() {
+        UrlMap.urlMap.put("/admission-test/slow", Slow.class);
+        UrlMap.urlMap.put("/admission-test/heavy", Slow.class);
+        UrlMap.urlMap.put("/admission-test/fast", Fast.class);
+        UrlMap.compile();
+    }
+
+    private static NettyConfig adaptive() {
+        NettyConfig config = new NettyConfig();
+        config.admissionMaxInFlight = 100;
+        config.admissionMinInFlight = 10;
+        config.admissionLatencyTarget = 200;
+        config.admissionAdaptive = true;
+        return config;
+    }
+
+    private static HttpRequest request(String uri) {
+        return new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, uri);
+    }
+
+    private static int limit(AdmissionController controller) {
+        return (Integer) controller.stats().get("limit");
+    }
+
+    /**
+     * 接受一个请求, 以latencyMillis的响应延迟释放
+     */
+    private void complete(AdmissionController controller, long latencyMillis) {
+        AdmissionController.Permit permit = controller.acquire(channel, request("/admission-test/fast"));
+        permit.start = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(latencyMillis);
+        permit.release();
+    }
+
+    @Test
+    public void notCreatedWithoutLimits() {
+        assertNull(AdmissionController.create(new NettyConfig()));
+    }
+
+    @Test
+    public void shrinksLimitWhenLatencyIsHigh() {
+        AdmissionController controller = new AdmissionController(adaptive());
+        assertEquals(100, limit(controller));
+
+        // 延迟是目标的5倍, 最多减半: 100 * 0.5 + sqrt(100)
+        complete(controller, 1000);
+        controller.tick();
+        assertEquals(60, limit(controller));
+        assertTrue((Long) controller.stats().get("latencyMillis") >= 1000);
+
+        // 60 * 0.5 + sqrt(60)
+        complete(controller, 1000);
+        controller.tick();
+        assertEquals(37, limit(controller));
+    }
+
+    @Test
+    public void shrinksInProportionToLatency() {
+        AdmissionController controller = new AdmissionController(adaptive());
+
+        // 延迟约为目标的1.25倍, 100 * 200 / 250 + sqrt(100)
+        complete(controller, 250);
+        controller.tick();
+        int limit = limit(controller);
+        assertTrue("limit: " + limit, limit >= 88 && limit <= 90);
+    }
+
+    @Test
+    public void keepsLimitAtMinimum() {
+        AdmissionController controller = new AdmissionController(adaptive());
+
+        for (int i = 0; i < 20; i++) {
+            complete(controller, 1000);
+            controller.tick();
+        }
+        assertEquals(10, limit(controller));
+    }
+
+    @Test
+    public void growsBackUpToMaximum() {
+        AdmissionController controller = new AdmissionController(adaptive());
+        for (int i = 0; i < 20; i++) {
+            complete(controller, 1000);
+            controller.tick();
+        }
+
+        // 延迟低于目标时每次增加sqrt(limit)
+        complete(controller, 1);
+        controller.tick();
+        assertEquals(13, limit(controller));
+
+        for (int i = 0; i < 50; i++) {
+            complete(controller, 1);
+            controller.tick();
+        }
+        assertEquals(100, limit(controller));
+    }
+
+    @Test
+    public void tickWithoutSamplesKeepsLimit() {
+        AdmissionController controller = new AdmissionController(adaptive());
+        complete(controller, 1000);
+        controller.tick();
+        assertEquals(60, limit(controller));
+
+        controller.tick();
+        assertEquals(60, limit(controller));
+    }
+
+    @Test
+    public void fixedLimitIsNotAdjusted() {
+        NettyConfig config = adaptive();
+        config.admissionAdaptive = false;
+        AdmissionController controller = new AdmissionController(config);
+
+        complete(controller, 1000);
+        controller.tick();
+        assertEquals(100, limit(controller));
+        assertTrue((Long) controller.stats().get("latencyMillis") >= 1000);
+    }
+
+    @Test
+    public void rejectsBeyondAdjustedLimit() {
+        AdmissionController controller = new AdmissionController(adaptive());
+        complete(controller, 1000);
+        controller.tick();
+
+        List<AdmissionController.Permit> permits = new ArrayList<AdmissionController.Permit>();
+        for (int i = 0; i < 60; i++) {
+            AdmissionController.Permit permit = controller.acquire(channel, request("/admission-test/fast"));
+            assertNotNull(permit);
+            permits.add(permit);
+        }
+        assertNull(controller.acquire(channel, request("/admission-test/fast")));
+        assertEquals(1L, controller.stats().get("rejectedInFlight"));
+
+        permits.get(0).release();
+        assertNotNull(controller.acquire(channel, request("/admission-test/fast")));
+    }
+
+    @Test
+    public void limitsRoutesSeparately() {
+        NettyConfig config = new NettyConfig();
+        config.admissionRouteLimits = "/admission-test/slow=2";
+        AdmissionController controller = new AdmissionController(config);
+
+        AdmissionController.Permit first = controller.acquire(channel, request("/admission-test/slow"));
+        assertNotNull(first);
+        assertNotNull(controller.acquire(channel, request("/admission-test/slow?n=1")));
+        assertNull(controller.acquire(channel, request("/admission-test/slow?n=2")));
+        assertNotNull(controller.acquire(channel, request("/admission-test/fast")));
+        assertEquals(1L, controller.stats().get("rejectedRoute"));
+        assertEquals(3, controller.stats().get("inFlight"));
+
+        first.release();
+        assertNotNull(controller.acquire(channel, request("/admission-test/slow?n=3")));
+    }
+
+    @Test
+    public void limitsEachPatternOfOneClass() {
+        NettyConfig config = new NettyConfig();
+        config.admissionRouteLimits = "/admission-test/slow=1,/admission-test/heavy=2";
+        AdmissionController controller = new AdmissionController(config);
+
+        assertNotNull(controller.acquire(channel, request("/admission-test/slow")));
+        assertNull(controller.acquire(channel, request("/admission-test/slow?n=1")));
+
+        assertNotNull(controller.acquire(channel, request("/admission-test/heavy")));
+        assertNotNull(controller.acquire(channel, request("/admission-test/heavy?n=1")));
+        assertNull(controller.acquire(channel, request("/admission-test/heavy?n=2")));
+        assertEquals(2L, controller.stats().get("rejectedRoute"));
+    }
+
+    @Test
+    public void unmatchedPathsShareDefaultRouteLimit() {
+        NettyConfig config = new NettyConfig();
+        config.admissionRouteMaxInFlight = 1;
+        AdmissionController controller = new AdmissionController(config);
+
+        assertNotNull(controller.acquire(channel, request("/admission-test/none")));
+        assertNull(controller.acquire(channel, request("/admission-test/other")));
+        assertNotNull(controller.acquire(channel, request("/admission-test/fast")));
+    }
+
+    @Test
+    public void statsPathIsNotLimited() {
+        NettyConfig config = new NettyConfig();
+        config.admissionMaxInFlight = 1;
+        config.statsPath = "/stats";
+        AdmissionController controller = new AdmissionController(config);
+
+        assertNotNull(controller.acquire(channel, request("/admission-test/fast")));
+        assertNull(controller.acquire(channel, request("/admission-test/fast?n=1")));
+        assertSame(AdmissionController.UNLIMITED, controller.acquire(channel, request("/stats?n=2")));
+    }
+}
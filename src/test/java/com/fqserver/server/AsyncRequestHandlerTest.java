@@ -0,0 +1,180 @@
+package com.fqserver.server;
+
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.util.CharsetUtil;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class AsyncRequestHandlerTest {
+
+    private static final long DEADLINE = 50;
+
+    /**
+     * 返回前读取body, 由测试完成返回的CompletionStage(相当于后端的回调)
+     */
+    public static class Backend extends AsyncRequestHandler {
+        static Backend last;
+
+        final CompletableFuture<Void> done = new CompletableFuture<Void>();
+        String body;
+
+        @Override
+        public CompletionStage<?> postAsync() {
+            last = this;
+            body = getPostStr();
+            if (getRequest().uri().endsWith("deadline")) {
+                setDeadline(DEADLINE);
+            }
+            return done;
+        }
+
+        void respond() {
+            writeResponse(HttpResponseStatus.OK, "echo:" + body);
+        }
+    }
+
+    private FullHttpServerHandlerTest.ClientChannel channel;
+
+    @BeforeClass
+    public static void registerRoutes() {
+        UrlMap.urlMap.put("/async-test/backend", Backend.class);
+        UrlMap.urlMap.put("/async-test/backend-deadline", Backend.class);
+        UrlMap.compile();
+    }
+
+    @Before
+    public void open() {
+        NettyConfig config = new NettyConfig();
+        config.httpKeepAlive = true;
+        config.asyncTimeout = 0;
+        channel = new FullHttpServerHandlerTest.ClientChannel(new FullHttpServerHandler(new HttpServer(config),
+                                                                                        null));
+    }
+
+    @After
+    public void close() {
+        channel.finishAndReleaseAll();
+        Backend.last = null;
+    }
+
+    private static FullHttpRequest request(String path, String body) {
+        return new DefaultFullHttpRequest(HttpVersion.HTTP_1_1,
+                                          HttpMethod.POST,
+                                          path,
+                                          Unpooled.copiedBuffer(body, CharsetUtil.UTF_8));
+    }
+
+    private FullHttpResponse response() {
+        return (FullHttpResponse) channel.readOutbound();
+    }
+
+    private static String body(FullHttpResponse response) {
+        try {
+            return response.content().toString(CharsetUtil.UTF_8);
+        }
+        finally {
+            response.release();
+        }
+    }
+
+    private void waitPastDeadline() throws InterruptedException {
+        Thread.sleep(DEADLINE * 3);
+        channel.runScheduledPendingTasks();
+    }
+
+    @Test
+    public void completionEndsRequestAndDispatchesNext() {
+        FullHttpRequest first = request("/async-test/backend", "a");
+        channel.writeInbound(first, request("/async-test/backend", "b"));
+
+        // 等待中: 请求没有释放, 后续请求排队
+        Backend a = Backend.last;
+        assertEquals("a", a.body);
+        assertEquals(1, first.refCnt());
+        assertNull(channel.readOutbound());
+
+        a.respond();
+        a.done.complete(null);
+        assertEquals(0, first.refCnt());
+        assertEquals("echo:a", body(response()));
+
+        Backend b = Backend.last;
+        assertTrue(a != b);
+        b.respond();
+        b.done.complete(null);
+        assertEquals("echo:b", body(response()));
+        assertTrue(channel.isOpen());
+    }
+
+    @Test
+    public void timeoutCancelsStageAndReleasesRequest() throws InterruptedException {
+        FullHttpRequest request = request("/async-test/backend-deadline", "a");
+        channel.writeInbound(request);
+        Backend handler = Backend.last;
+
+        waitPastDeadline();
+        assertEquals(HttpResponseStatus.GATEWAY_TIMEOUT, response().status());
+        assertTrue(handler.done.isCancelled());
+        assertTrue(handler.isExpired());
+        assertEquals(0, request.refCnt());
+        assertFalse(channel.isOpen());
+
+        // 回调中读取的是返回前复制的body, 之后写出的响应被丢弃
+        handler.respond();
+        assertNull(channel.readOutbound());
+    }
+
+    @Test
+    public void timeoutAfterResponseStartedClosesConnection() throws InterruptedException {
+        FullHttpRequest request = request("/async-test/backend-deadline", "a");
+        FullHttpRequest next = request("/async-test/backend", "b");
+        channel.writeInbound(request, next);
+        Backend handler = Backend.last;
+
+        // 已写出响应但CompletionStage没有完成
+        handler.respond();
+        waitPastDeadline();
+
+        assertEquals("echo:a", body(response()));
+        assertNull(channel.readOutbound());
+        assertTrue(handler.done.isCancelled());
+        assertEquals(0, request.refCnt());
+
+        // 不处理排队的请求, 关闭连接
+        assertTrue(Backend.last == handler);
+        assertEquals(0, next.refCnt());
+        assertFalse(channel.isOpen());
+    }
+
+    @Test
+    public void closeCancelsStageAndReleasesRequest() {
+        FullHttpRequest request = request("/async-test/backend", "a");
+        channel.writeInbound(request);
+        Backend handler = Backend.last;
+
+        channel.close();
+        assertTrue(handler.done.isCancelled());
+        assertTrue(handler.isExpired());
+        assertEquals(0, request.refCnt());
+
+        handler.respond();
+        assertNull(channel.readOutbound());
+    }
+}
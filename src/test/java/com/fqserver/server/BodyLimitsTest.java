@@ -0,0 +1,80 @@
+package com.fqserver.server;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.http.HttpMethod;
+
+import java.util.Collections;
+import java.util.Map;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class BodyLimitsTest {
+
+    public static class Shared extends RequestHandler {}
+
+    public static class Upload extends StreamingRequestHandler {
+        @Override
+        protected void onContent(ByteBuf chunk) {}
+
+        @Override
+        protected void onEnd() {}
+    }
+
+    @BeforeClass
+    public static void registerRoutes() {
+        UrlMap.urlMap.put("/body-limits-test/small", Shared.class);
+        UrlMap.urlMap.put("/body-limits-test/large", Shared.class);
+        UrlMap.urlMap.put("/body-limits-test/default", Shared.class);
+        UrlMap.urlMap.put("/body-limits-test/upload", Upload.class);
+        UrlMap.compile();
+    }
+
+    private static BodyLimits limits(String routes) {
+        NettyConfig config = new NettyConfig();
+        config.httpMaxContentLength = 1000;
+        config.httpRouteMaxContentLength = routes;
+        return new BodyLimits(config);
+    }
+
+    private static long limit(BodyLimits limits, String path) {
+        return limits.limit(UrlMap.match(HttpMethod.POST, path));
+    }
+
+    @Test
+    public void limitsEachPatternOfOneClass() {
+        BodyLimits limits = limits("/body-limits-test/small=10,/body-limits-test/large=100000");
+
+        assertEquals(10, limit(limits, "/body-limits-test/small"));
+        assertEquals(100000, limit(limits, "/body-limits-test/large"));
+        assertEquals(1000, limit(limits, "/body-limits-test/default"));
+        assertEquals(100000, limits.aggregatorMaxContentLength());
+    }
+
+    @Test
+    public void unmatchedPathUsesDefault() {
+        BodyLimits limits = limits("/body-limits-test/small=10");
+
+        assertNull(UrlMap.match(HttpMethod.POST, "/body-limits-test/none"));
+        assertEquals(1000, limit(limits, "/body-limits-test/none"));
+    }
+
+    @Test
+    public void streamingRoutesAreUnlimitedUnlessConfigured() {
+        assertEquals(BodyLimits.UNLIMITED, limit(limits(""), "/body-limits-test/upload"));
+        assertEquals(500, limit(limits("/body-limits-test/upload=500"), "/body-limits-test/upload"));
+        assertEquals(BodyLimits.UNLIMITED, limit(limits("/body-limits-test/small=0"), "/body-limits-test/small"));
+    }
+
+    @Test
+    public void classValueTakesLargestOfItsPatterns() {
+        Map<String, Integer> values = UrlMap.parseRouteValues("/body-limits-test/small=10,/body-limits-test/large=20");
+
+        assertEquals(Integer.valueOf(20), UrlMap.routeValue(values, Shared.class));
+        assertNull(UrlMap.routeValue(values, Upload.class));
+        assertNull(UrlMap.routeValue(Collections.<String, Integer> emptyMap(), (Router.Route) null));
+    }
+}
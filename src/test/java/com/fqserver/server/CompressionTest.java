@@ -0,0 +1,208 @@
+package com.fqserver.server;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.util.CharsetUtil;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CompressionTest {
+
+    private static final int GZIP = 0;
+    private static final int DEFLATE = 1;
+
+    private final Compression compression = new Compression(config("gzip,deflate"));
+
+    private static NettyConfig config(String encodings) {
+        NettyConfig config = new NettyConfig();
+        config.compression = true;
+        config.compressionEncodings = encodings;
+        config.compressionMinSize = 16;
+        return config;
+    }
+
+    private static FullHttpResponse response(HttpResponseStatus status, String type, String body) {
+        FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1,
+                                                                status,
+                                                                Unpooled.copiedBuffer(body, CharsetUtil.UTF_8));
+        if (type != null) {
+            response.headers().set(HttpHeaderNames.CONTENT_TYPE, type);
+        }
+        return response;
+    }
+
+    private static String repeat(String s, int times) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < times; i++) {
+            sb.append(s);
+        }
+        return sb.toString();
+    }
+
+    private static String read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[4096];
+        int n;
+        while ((n = in.read(buf)) > 0) {
+            out.write(buf, 0, n);
+        }
+        in.close();
+        return new String(out.toByteArray(), CharsetUtil.UTF_8);
+    }
+
+    @Test
+    public void notCreatedWhenDisabled() {
+        assertNull(Compression.create(new NettyConfig()));
+    }
+
+    @Test
+    public void noEncodingWithoutAcceptEncoding() {
+        assertEquals(-1, compression.negotiate(null));
+        assertEquals(-1, compression.negotiate(""));
+        assertEquals(-1, compression.negotiate("br, identity"));
+    }
+
+    @Test
+    public void picksListedEncoding() {
+        assertEquals(GZIP, compression.negotiate("gzip"));
+        assertEquals(DEFLATE, compression.negotiate("deflate"));
+        assertEquals(DEFLATE, compression.negotiate("br, deflate"));
+    }
+
+    @Test
+    public void prefersServerOrderWhenQualityIsEqual() {
+        assertEquals(GZIP, compression.negotiate("deflate, gzip"));
+        assertEquals(GZIP, compression.negotiate("deflate;q=0.5, gzip;q=0.5"));
+    }
+
+    @Test
+    public void prefersHigherQuality() {
+        assertEquals(DEFLATE, compression.negotiate("gzip;q=0.5, deflate"));
+        assertEquals(DEFLATE, compression.negotiate("gzip; Q=0.1, deflate;q=0.2"));
+        assertEquals(GZIP, compression.negotiate("gzip;level=1;q=0.9, deflate;q=0.8"));
+    }
+
+    @Test
+    public void zeroQualityRefusesEncoding() {
+        assertEquals(-1, compression.negotiate("gzip;q=0"));
+        assertEquals(DEFLATE, compression.negotiate("gzip;q=0, deflate"));
+        assertEquals(-1, compression.negotiate("gzip;q=invalid"));
+    }
+
+    @Test
+    public void wildcardMatchesUnlistedEncodings() {
+        assertEquals(GZIP, compression.negotiate("*"));
+        assertEquals(-1, compression.negotiate("*;q=0"));
+        assertEquals(DEFLATE, compression.negotiate("gzip;q=0, *"));
+        assertEquals(GZIP, compression.negotiate("deflate;q=0.1, *;q=0.5"));
+    }
+
+    @Test
+    public void acceptsAliasesAndAnyCase() {
+        assertEquals(GZIP, compression.negotiate("x-gzip"));
+        assertEquals(GZIP, compression.negotiate(" GZip "));
+    }
+
+    @Test
+    public void usesOnlyConfiguredEncodings() {
+        Compression deflateOnly = new Compression(config("deflate, br"));
+        assertEquals(-1, deflateOnly.negotiate("gzip"));
+        assertEquals(0, deflateOnly.negotiate("gzip, deflate"));
+    }
+
+    @Test
+    public void compressesTextResponses() {
+        assertTrue(compression.isCompressible(response(HttpResponseStatus.OK, "text/html; charset=utf-8", "a")));
+        assertTrue(compression.isCompressible(response(HttpResponseStatus.NOT_FOUND, "application/json", "a")));
+        assertFalse(compression.isCompressible(response(HttpResponseStatus.OK, "image/png", "a")));
+        assertFalse(compression.isCompressible(response(HttpResponseStatus.OK, null, "a")));
+    }
+
+    @Test
+    public void skipsResponsesWithoutBodyOrAlreadyEncoded() {
+        assertFalse(compression.isCompressible(response(HttpResponseStatus.NO_CONTENT, "text/plain", "")));
+        assertFalse(compression.isCompressible(response(HttpResponseStatus.NOT_MODIFIED, "text/plain", "")));
+
+        FullHttpResponse encoded = response(HttpResponseStatus.OK, "text/plain", "a");
+        encoded.headers().set(HttpHeaderNames.CONTENT_ENCODING, "gzip");
+        assertFalse(compression.isCompressible(encoded));
+    }
+
+    @Test
+    public void gzipRoundTrip() throws IOException {
+        String body = repeat("hello compression ", 100);
+        ByteBuf content = Unpooled.copiedBuffer(body, CharsetUtil.UTF_8);
+        ByteBuf out = compression.compress(ByteBufAllocator.DEFAULT, content, GZIP);
+        try {
+            assertTrue(out.readableBytes() < content.readableBytes());
+            assertEquals(body, read(new GZIPInputStream(new ByteBufInputStream(out))));
+        }
+        finally {
+            content.release();
+            out.release();
+        }
+    }
+
+    @Test
+    public void deflateRoundTrip() throws IOException {
+        String body = repeat("hello compression ", 100);
+        ByteBuf content = Unpooled.copiedBuffer(body, CharsetUtil.UTF_8);
+        ByteBuf out = compression.compress(ByteBufAllocator.DEFAULT, content, DEFLATE);
+        try {
+            assertEquals(body, read(new InflaterInputStream(new ByteBufInputStream(out))));
+        }
+        finally {
+            content.release();
+            out.release();
+        }
+    }
+
+    @Test
+    public void keepsIncompressibleBody() {
+        byte[] data = new byte[1024];
+        new Random(1).nextBytes(data);
+        ByteBuf content = Unpooled.wrappedBuffer(data);
+
+        assertNull(compression.compress(ByteBufAllocator.DEFAULT, content, GZIP));
+        assertEquals(0L, compression.stats().get("compressed"));
+        content.release();
+    }
+
+    @Test
+    public void replacesBodyAndSetsHeaders() {
+        String body = repeat("hello compression ", 100);
+        FullHttpResponse response = response(HttpResponseStatus.OK, "text/plain", body);
+        ByteBuf out = compression.compress(ByteBufAllocator.DEFAULT, response.content(), GZIP);
+
+        FullHttpResponse encoded = compression.apply(response, out, GZIP);
+        compression.vary(encoded);
+
+        assertEquals("gzip", encoded.headers().get(HttpHeaderNames.CONTENT_ENCODING));
+        assertEquals(out.readableBytes(), encoded.headers().getInt(HttpHeaderNames.CONTENT_LENGTH).intValue());
+        assertEquals("Accept-Encoding", encoded.headers().get(HttpHeaderNames.VARY));
+        assertEquals(body.length(), response.content().readableBytes());
+        assertEquals(1L, compression.stats().get("compressed"));
+
+        response.release();
+        encoded.release();
+    }
+}
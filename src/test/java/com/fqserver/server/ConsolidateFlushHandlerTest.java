@@ -0,0 +1,129 @@
+package com.fqserver.server;
+
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.embedded.EmbeddedChannel;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class ConsolidateFlushHandlerTest {
+
+    /**
+     * 每读到一个消息写出两个响应并分别flush
+     */
+    static class Responder extends ChannelInboundHandlerAdapter {
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+            ctx.writeAndFlush(msg + "-1");
+            ctx.writeAndFlush(msg + "-2");
+        }
+    }
+
+    /**
+     * 记录写出的消息和flush次数, 不再往下传递. EmbeddedChannel写出每个消息时都会执行排队的任务,
+     * 要看到多次写出合并为一次flush, 写出就不能到达EmbeddedChannel
+     */
+    static class FlushCounter extends ChannelOutboundHandlerAdapter {
+        final List<Object> written = new ArrayList<Object>();
+        int flushes;
+
+        @Override
+        public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+            written.add(msg);
+            promise.setSuccess();
+        }
+
+        @Override
+        public void flush(ChannelHandlerContext ctx) throws Exception {
+            flushes++;
+        }
+    }
+
+    // EmbeddedChannel.writeAndFlush会执行排队的任务, 经pipeline写出才能看到推迟的flush
+    private static void writeAndFlush(EmbeddedChannel channel, Object msg) {
+        channel.pipeline().writeAndFlush(msg);
+    }
+
+    // EmbeddedChannel在flush时才把消息放入outboundMessages
+    private static int flushed(EmbeddedChannel channel) {
+        return channel.outboundMessages().size();
+    }
+
+    @Test
+    public void flushesDuringReadAtReadComplete() {
+        EmbeddedChannel channel = new EmbeddedChannel(new ConsolidateFlushHandler(256), new Responder());
+
+        channel.pipeline().fireChannelRead("a");
+        channel.pipeline().fireChannelRead("b");
+        assertEquals(0, flushed(channel));
+
+        channel.pipeline().fireChannelReadComplete();
+        assertEquals(4, flushed(channel));
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void defersFlushOutsideReadToNextTask() {
+        FlushCounter counter = new FlushCounter();
+        EmbeddedChannel channel = new EmbeddedChannel(counter, new ConsolidateFlushHandler(256));
+
+        writeAndFlush(channel, "a");
+        writeAndFlush(channel, "b");
+        assertEquals(2, counter.written.size());
+        assertEquals(0, counter.flushes);
+
+        // 两次flush合并为一次
+        channel.runPendingTasks();
+        assertEquals(1, counter.flushes);
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void flushesAfterExplicitFlushCount() {
+        EmbeddedChannel channel = new EmbeddedChannel(new ConsolidateFlushHandler(2));
+
+        writeAndFlush(channel, "a");
+        assertEquals(0, flushed(channel));
+        writeAndFlush(channel, "b");
+        assertEquals(2, flushed(channel));
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void keepsFlushIssuedWhileFlushing() {
+        final EmbeddedChannel channel = new EmbeddedChannel(new ConsolidateFlushHandler(256));
+
+        // 写出完成后再写出(例如响应后关闭HTTP/2 stream时写出RST_STREAM)
+        channel.pipeline().writeAndFlush("response").addListener(new ChannelFutureListener() {
+            @Override
+            public void operationComplete(ChannelFuture future) {
+                writeAndFlush(channel, "reset");
+            }
+        });
+        assertEquals(0, flushed(channel));
+
+        // 第一次flush中安排的flush随后执行, 没有丢失
+        channel.runPendingTasks();
+        assertEquals(2, flushed(channel));
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void flushesPendingOnClose() {
+        EmbeddedChannel channel = new EmbeddedChannel(new ConsolidateFlushHandler(256));
+
+        writeAndFlush(channel, "a");
+        channel.close();
+        assertEquals(1, flushed(channel));
+        channel.finishAndReleaseAll();
+    }
+}
@@ -0,0 +1,209 @@
+package com.fqserver.server;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.util.CharsetUtil;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.ArrayDeque;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class FullHttpServerHandlerTest {
+
+    public static class Echo extends RequestHandler {
+        @Override
+        public void get() {
+            writeResponse(HttpResponseStatus.OK, getRequest().uri());
+        }
+    }
+
+    static class ClientChannel extends EmbeddedChannel {
+        ClientChannel(ChannelHandler... handlers) {
+            super(handlers);
+        }
+
+        @Override
+        protected SocketAddress remoteAddress0() {
+            return new InetSocketAddress("10.2.0.1", 40000);
+        }
+    }
+
+    /**
+     * 任务由测试依次执行; 提交次数超过accept后拒绝
+     */
+    static class ManualExecutor extends HandlerExecutor {
+        final ArrayDeque<Runnable> tasks = new ArrayDeque<Runnable>();
+        final int accept;
+        int submitted;
+
+        ManualExecutor(int accept) {
+            super("manual");
+            this.accept = accept;
+        }
+
+        @Override
+        protected void submit(Runnable task) {
+            if (++submitted > accept) {
+                throw new RejectedExecutionException();
+            }
+            tasks.add(task);
+        }
+
+        void runAll() {
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                task.run();
+            }
+        }
+
+        @Override
+        public void shutdown() {}
+    }
+
+    /**
+     * hold为true时不写出, 相当于socket暂时不可写, 写出完成(以及之后的关闭)被推迟
+     */
+    static class HoldFlush extends ChannelOutboundHandlerAdapter {
+        boolean hold = true;
+
+        @Override
+        public void flush(ChannelHandlerContext ctx) throws Exception {
+            if (!hold) {
+                ctx.flush();
+            }
+        }
+    }
+
+    private ClientChannel channel;
+
+    @BeforeClass
+    public static void registerRoutes() {
+        UrlMap.urlMap.put("/pipelining-test/echo", Echo.class);
+        UrlMap.compile();
+    }
+
+    @After
+    public void close() {
+        channel.finishAndReleaseAll();
+    }
+
+    private static NettyConfig config() {
+        NettyConfig config = new NettyConfig();
+        config.httpKeepAlive = true;
+        return config;
+    }
+
+    private void open(NettyConfig config, HandlerExecutor executor) {
+        channel = new ClientChannel(new FullHttpServerHandler(new HttpServer(config), executor));
+    }
+
+    private static FullHttpRequest request(int n) {
+        return new DefaultFullHttpRequest(HttpVersion.HTTP_1_1,
+                                          HttpMethod.GET,
+                                          "/pipelining-test/echo?n=" + n,
+                                          Unpooled.buffer(0));
+    }
+
+    private FullHttpResponse response() {
+        return (FullHttpResponse) channel.readOutbound();
+    }
+
+    private static String body(FullHttpResponse response) {
+        try {
+            return response.content().toString(CharsetUtil.UTF_8);
+        }
+        finally {
+            response.release();
+        }
+    }
+
+    @Test
+    public void answersPipelinedRequestsInOrder() {
+        ManualExecutor executor = new ManualExecutor(Integer.MAX_VALUE);
+        open(config(), executor);
+
+        channel.writeInbound(request(0), request(1), request(2));
+        // 同一连接上一次只处理一个请求, 其余排队
+        assertEquals(1, executor.submitted);
+        assertNull(channel.readOutbound());
+
+        executor.runAll();
+        assertEquals(3, executor.submitted);
+        for (int i = 0; i < 3; i++) {
+            FullHttpResponse response = response();
+            assertTrue(HttpHeaderValues.KEEP_ALIVE.contentEqualsIgnoreCase(response.headers()
+                                                                                   .get(CachedHeaders.CONNECTION)));
+            assertEquals("/pipelining-test/echo?n=" + i, body(response));
+        }
+        assertTrue(channel.isOpen());
+    }
+
+    @Test
+    public void closesAfterKeepAliveMaxRequests() {
+        NettyConfig config = config();
+        config.keepAliveMaxRequests = 2;
+        open(config, null);
+
+        channel.writeInbound(request(0));
+        FullHttpResponse first = response();
+        assertTrue(HttpHeaderValues.KEEP_ALIVE.contentEqualsIgnoreCase(first.headers()
+                                                                            .get(CachedHeaders.CONNECTION)));
+        body(first);
+        assertTrue(channel.isOpen());
+
+        channel.writeInbound(request(1));
+        FullHttpResponse second = response();
+        assertTrue(HttpHeaderValues.CLOSE.contentEqualsIgnoreCase(second.headers()
+                                                                        .get(CachedHeaders.CONNECTION)));
+        assertEquals("/pipelining-test/echo?n=1", body(second));
+        assertFalse(channel.isOpen());
+    }
+
+    @Test
+    public void rejectedRequestDropsPendingRequests() {
+        ManualExecutor executor = new ManualExecutor(1);
+        HoldFlush flush = new HoldFlush();
+        channel = new ClientChannel(flush, new FullHttpServerHandler(new HttpServer(config()), executor));
+
+        FullHttpRequest last = request(2);
+        channel.writeInbound(request(0), request(1), last);
+
+        // 503还没有写出, 连接还没有关闭
+        executor.runAll();
+        assertTrue(channel.isOpen());
+        assertEquals(2, executor.submitted);
+
+        flush.hold = false;
+        channel.flush();
+        assertEquals("/pipelining-test/echo?n=0", body(response()));
+        FullHttpResponse rejected = response();
+        assertEquals(HttpResponseStatus.SERVICE_UNAVAILABLE, rejected.status());
+        rejected.release();
+
+        // 503后关闭连接, 排队的请求被释放而不是再次分发
+        assertEquals(2, executor.submitted);
+        assertEquals(0, last.refCnt());
+        assertNull(channel.readOutbound());
+        assertFalse(channel.isOpen());
+    }
+}
@@ -0,0 +1,216 @@
+package com.fqserver.server;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultHttpRequest;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpVersion;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RateLimiterTest {
+
+    public static class Strict extends RequestHandler {}
+
+    public static class Free extends RequestHandler {}
+
+    private static class ClientChannel extends EmbeddedChannel {
+        private final InetSocketAddress remote;
+
+        ClientChannel(String ip) {
+            this.remote = new InetSocketAddress(ip, 40000);
+        }
+
+        @Override
+        protected SocketAddress remoteAddress0() {
+            return remote;
+        }
+    }
+
+    @BeforeClass
+    public static void registerRoutes() {
+        UrlMap.urlMap.put("/rate-limiter-test/strict", Strict.class);
+        UrlMap.urlMap.put("/rate-limiter-test/strict-b", Strict.class);
+        UrlMap.urlMap.put("/rate-limiter-test/free", Free.class);
+        UrlMap.compile();
+    }
+
+    private static NettyConfig config() {
+        NettyConfig config = new NettyConfig();
+        config.rateLimitRoutes = "/rate-limiter-test/strict=1";
+        config.rateLimitBurst = 3;
+        config.statsPath = "/stats";
+        return config;
+    }
+
+    private static HttpRequest request(String uri) {
+        return new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, uri);
+    }
+
+    private static HttpRequest forwarded(String uri, String forwardedFor) {
+        HttpRequest req = request(uri);
+        req.headers().set(CachedHeaders.X_FORWARDED_FOR, forwardedFor);
+        return req;
+    }
+
+    @Test
+    public void notCreatedWithoutRates() {
+        assertNull(RateLimiter.create(new NettyConfig()));
+    }
+
+    @Test
+    public void allowsBurstThenRejects() {
+        RateLimiter limiter = new RateLimiter(config());
+        ClientChannel channel = new ClientChannel("10.1.0.1");
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(limiter.tryAcquire(channel, request("/rate-limiter-test/strict?n=" + i)));
+        }
+        assertFalse(limiter.tryAcquire(channel, request("/rate-limiter-test/strict?n=3")));
+
+        assertEquals(3L, limiter.stats().get("allowed"));
+        assertEquals(1L, limiter.stats().get("rejected"));
+    }
+
+    @Test
+    public void limitsEachClientSeparately() {
+        RateLimiter limiter = new RateLimiter(config());
+        ClientChannel first = new ClientChannel("10.1.0.1");
+        ClientChannel second = new ClientChannel("10.1.0.2");
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(limiter.tryAcquire(first, request("/rate-limiter-test/strict?n=" + i)));
+        }
+        assertFalse(limiter.tryAcquire(first, request("/rate-limiter-test/strict?n=3")));
+        assertTrue(limiter.tryAcquire(second, request("/rate-limiter-test/strict?n=4")));
+    }
+
+    @Test
+    public void onlyLimitsConfiguredRoutes() {
+        RateLimiter limiter = new RateLimiter(config());
+        ClientChannel channel = new ClientChannel("10.1.0.1");
+
+        for (int i = 0; i < 10; i++) {
+            assertTrue(limiter.tryAcquire(channel, request("/rate-limiter-test/free?n=" + i)));
+            assertTrue(limiter.tryAcquire(channel, request("/rate-limiter-test/unknown?n=" + i)));
+        }
+        assertEquals(0, limiter.stats().get("buckets"));
+    }
+
+    @Test
+    public void defaultRateAppliesToUnconfiguredRoutes() {
+        NettyConfig config = config();
+        config.rateLimitRate = 1;
+        config.rateLimitBurst = 1;
+        RateLimiter limiter = new RateLimiter(config);
+        ClientChannel channel = new ClientChannel("10.1.0.1");
+
+        assertTrue(limiter.tryAcquire(channel, request("/rate-limiter-test/free?n=1")));
+        assertFalse(limiter.tryAcquire(channel, request("/rate-limiter-test/free?n=2")));
+        // 不同路由各自一个令牌桶
+        assertTrue(limiter.tryAcquire(channel, request("/rate-limiter-test/unknown?n=3")));
+    }
+
+    @Test
+    public void limitsEachPatternOfOneClass() {
+        NettyConfig config = config();
+        config.rateLimitRoutes = "/rate-limiter-test/strict=1,/rate-limiter-test/strict-b=2";
+        config.rateLimitBurst = 1;
+        RateLimiter limiter = new RateLimiter(config);
+        ClientChannel channel = new ClientChannel("10.1.0.1");
+
+        assertTrue(limiter.tryAcquire(channel, request("/rate-limiter-test/strict?n=1")));
+        assertFalse(limiter.tryAcquire(channel, request("/rate-limiter-test/strict?n=2")));
+        // 同一个handler类的另一个路径有自己的令牌桶
+        assertTrue(limiter.tryAcquire(channel, request("/rate-limiter-test/strict-b?n=3")));
+        assertFalse(limiter.tryAcquire(channel, request("/rate-limiter-test/strict-b?n=4")));
+        assertEquals(2, limiter.stats().get("buckets"));
+    }
+
+    @Test
+    public void skipsStatsPath() {
+        NettyConfig config = config();
+        config.rateLimitRate = 1;
+        config.rateLimitBurst = 1;
+        RateLimiter limiter = new RateLimiter(config);
+        ClientChannel channel = new ClientChannel("10.1.0.1");
+
+        for (int i = 0; i < 5; i++) {
+            assertTrue(limiter.tryAcquire(channel, request("/stats")));
+            assertTrue(limiter.tryAcquire(channel, request("/stats?n=" + i)));
+        }
+        assertTrue(limiter.tryAcquire(channel, request("/statsx")));
+        assertFalse(limiter.tryAcquire(channel, request("/statsx?n=1")));
+    }
+
+    @Test
+    public void usesRemoteAddressWithoutTrustedProxy() {
+        RateLimiter limiter = new RateLimiter(config());
+        ClientChannel channel = new ClientChannel("10.1.0.1");
+
+        assertEquals("10.1.0.1", limiter.clientIp(channel, forwarded("/", "1.1.1.1")));
+    }
+
+    @Test
+    public void takesRightmostUntrustedForwardedAddress() {
+        NettyConfig config = config();
+        config.rateLimitTrustedProxies = "10.0.0.1, 10.0.0.2";
+        RateLimiter limiter = new RateLimiter(config);
+        ClientChannel proxy = new ClientChannel("10.0.0.1");
+
+        assertEquals("10.0.0.1", limiter.clientIp(proxy, request("/")));
+        assertEquals("2.2.2.2", limiter.clientIp(proxy, forwarded("/", "1.1.1.1, 2.2.2.2, 10.0.0.2")));
+        assertEquals("2.2.2.2", limiter.clientIp(proxy, forwarded("/", "1.1.1.1,2.2.2.2,,")));
+        assertEquals("10.0.0.2", limiter.clientIp(proxy, forwarded("/", "10.0.0.2")));
+        assertEquals("10.0.0.1", limiter.clientIp(proxy, forwarded("/", " , ")));
+    }
+
+    @Test
+    public void forwardedClientsAreLimitedSeparately() {
+        NettyConfig config = config();
+        config.rateLimitTrustedProxies = "10.0.0.1";
+        RateLimiter limiter = new RateLimiter(config);
+        ClientChannel proxy = new ClientChannel("10.0.0.1");
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(limiter.tryAcquire(proxy, forwarded("/rate-limiter-test/strict?n=" + i, "1.1.1.1")));
+        }
+        assertFalse(limiter.tryAcquire(proxy, forwarded("/rate-limiter-test/strict?n=3", "1.1.1.1")));
+        // 客户端伪造的X-Forwarded-For在左边, 不影响取到的地址
+        assertFalse(limiter.tryAcquire(proxy, forwarded("/rate-limiter-test/strict?n=4", "9.9.9.9, 1.1.1.1")));
+        assertTrue(limiter.tryAcquire(proxy, forwarded("/rate-limiter-test/strict?n=5", "2.2.2.2")));
+    }
+
+    @Test
+    public void evictsBucketsBeyondMaxClients() {
+        NettyConfig config = config();
+        config.rateLimitTrustedProxies = "10.0.0.1";
+        config.rateLimitMaxClients = 256;
+        RateLimiter limiter = new RateLimiter(config);
+        ClientChannel proxy = new ClientChannel("10.0.0.1");
+
+        for (int i = 0; i < 2000; i++) {
+            String ip = "1.1." + (i / 256) + "." + (i % 256);
+            assertTrue(limiter.tryAcquire(proxy, forwarded("/rate-limiter-test/strict?n=" + i, ip)));
+        }
+
+        int buckets = (Integer) limiter.stats().get("buckets");
+        assertTrue("buckets: " + buckets, buckets <= 256);
+        assertTrue((Long) limiter.stats().get("evictions") >= 2000 - 256);
+    }
+
+    @Test
+    public void parsesProxies() {
+        assertEquals(2, RateLimiter.parseProxies(" 10.0.0.1 ,,10.0.0.2, ").size());
+        assertTrue(RateLimiter.parseProxies("").isEmpty());
+    }
+}
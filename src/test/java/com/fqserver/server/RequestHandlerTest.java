@@ -0,0 +1,110 @@
+package com.fqserver.server;
+
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.util.CharsetUtil;
+
+import java.util.Collections;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.fqserver.core.http.HttpUtil.HttpContentBean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RequestHandlerTest {
+
+    // 不需要HttpServer的Server/Date响应头
+    public static class Plain extends RequestHandler {
+        @Override
+        protected void addServerHeader(HttpResponse response) {}
+    }
+
+    public static class Accepted extends Plain {
+        @Override
+        protected void writeResponse(byte[] data) {
+            writeResponse(HttpResponseStatus.ACCEPTED, data);
+        }
+    }
+
+    public static class Wrapped extends Plain {
+        @Override
+        protected HttpContentBean beforeBuildResponse(byte[] data) {
+            byte[] wrapped = ("[" + new String(data, CharsetUtil.UTF_8) + "]").getBytes(CharsetUtil.UTF_8);
+            return new HttpContentBean(wrapped, null, 0, data.length);
+        }
+    }
+
+    public static class WrappedV2 extends RequestHandlerV2 {
+        @Override
+        protected HttpContentBean beforeBuildResponse(byte[] data) {
+            return null;
+        }
+    }
+
+    private final EmbeddedChannel channel = new EmbeddedChannel(new ChannelInboundHandlerAdapter());
+
+    @After
+    public void close() {
+        channel.finishAndReleaseAll();
+    }
+
+    private FullHttpResponse writeMap(RequestHandler handler) {
+        handler.setCtx(channel.pipeline().firstContext());
+        handler.write(Collections.<String, Object> singletonMap("a", 1));
+        return (FullHttpResponse) channel.readOutbound();
+    }
+
+    @Test
+    public void detectsOverriddenByteHooks() {
+        assertFalse(new Plain().usesByteHooks());
+        assertFalse(new RequestHandlerV2().usesByteHooks());
+        assertTrue(new RedirectRequestHandler().usesByteHooks());
+        assertTrue(new Accepted().usesByteHooks());
+        assertTrue(new Wrapped().usesByteHooks());
+        assertTrue(new WrappedV2().usesByteHooks());
+    }
+
+    @Test
+    public void writesMapDirectlyWithoutHooks() {
+        FullHttpResponse response = writeMap(new Plain());
+        try {
+            assertEquals(HttpResponseStatus.OK, response.status());
+            assertTrue(response.content().isDirect());
+            assertEquals("{\"a\":1}", response.content().toString(CharsetUtil.UTF_8));
+        }
+        finally {
+            response.release();
+        }
+    }
+
+    @Test
+    public void writeMapGoesThroughOverriddenWriteResponse() {
+        FullHttpResponse response = writeMap(new Accepted());
+        try {
+            assertEquals(HttpResponseStatus.ACCEPTED, response.status());
+            assertEquals("{\"a\":1}", response.content().toString(CharsetUtil.UTF_8));
+        }
+        finally {
+            response.release();
+        }
+    }
+
+    @Test
+    public void writeMapGoesThroughOverriddenBeforeBuildResponse() {
+        FullHttpResponse response = writeMap(new Wrapped());
+        try {
+            assertEquals("[{\"a\":1}]", response.content().toString(CharsetUtil.UTF_8));
+            assertEquals(9, response.headers().getInt(CachedHeaders.CONTENT_LENGTH).intValue());
+        }
+        finally {
+            response.release();
+        }
+    }
+}
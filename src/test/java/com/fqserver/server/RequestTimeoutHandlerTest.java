@@ -0,0 +1,85 @@
+package com.fqserver.server;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http2.DefaultHttp2Headers;
+import io.netty.handler.codec.http2.DefaultHttp2HeadersFrame;
+import io.netty.handler.codec.http2.Http2Headers;
+import io.netty.handler.codec.http2.Http2HeadersFrame;
+import io.netty.handler.codec.http2.Http2StreamFrameToHttpObjectCodec;
+import io.netty.util.ReferenceCountUtil;
+
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * HTTP/2的stream子channel上的读超时: pipeline与configureRequestStages为stream建立的前两级相同
+ */
+public class RequestTimeoutHandlerTest {
+
+    private static final long BODY_TIMEOUT = 50;
+
+    private final TimeoutStats stats = new TimeoutStats();
+    private EmbeddedChannel stream;
+
+    @After
+    public void close() {
+        stream.finishAndReleaseAll();
+    }
+
+    private void open() {
+        stream = new EmbeddedChannel(new Http2StreamFrameToHttpObjectCodec(true),
+                                     new RequestTimeoutHandler(1000, BODY_TIMEOUT, stats));
+    }
+
+    private static Http2HeadersFrame headers(boolean endStream) {
+        Http2Headers headers = new DefaultHttp2Headers().method("POST")
+                                                        .path("/upload")
+                                                        .scheme("http")
+                                                        .authority("localhost");
+        headers.setInt(HttpHeaderNames.CONTENT_LENGTH, endStream ? 0 : 100);
+        return new DefaultHttp2HeadersFrame(headers, endStream);
+    }
+
+    private void waitPastBodyTimeout() throws InterruptedException {
+        Thread.sleep(BODY_TIMEOUT * 3);
+        stream.runScheduledPendingTasks();
+    }
+
+    @Test
+    public void streamWithoutBodyTimesOut() throws InterruptedException {
+        open();
+
+        // 只有HEADERS, DATA一直没有到达
+        stream.writeInbound(headers(false));
+        ReferenceCountUtil.release(stream.readInbound());
+        waitPastBodyTimeout();
+
+        Http2HeadersFrame response = stream.readOutbound();
+        assertEquals("408", response.headers().status().toString());
+        assertFalse(stream.isOpen());
+        assertEquals(1L, stats.stats().get("body"));
+    }
+
+    @Test
+    public void completeStreamDoesNotTimeOut() throws InterruptedException {
+        open();
+
+        stream.writeInbound(headers(true));
+        ReferenceCountUtil.release(stream.readInbound());
+        waitPastBodyTimeout();
+
+        assertNull(stream.readOutbound());
+        assertTrue(stream.isOpen());
+        Map<String, Object> timeouts = stats.stats();
+        assertEquals(0L, timeouts.get("header"));
+        assertEquals(0L, timeouts.get("body"));
+    }
+}
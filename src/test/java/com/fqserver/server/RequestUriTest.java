@@ -0,0 +1,168 @@
+package com.fqserver.server;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class RequestUriTest {
+
+    private final RequestUri uri = new RequestUri();
+
+    @Test
+    public void splitsPathAndQuery() {
+        uri.parse("/user/info?id=1&name=a");
+
+        assertEquals("/user/info", uri.path());
+        assertEquals("id=1&name=a", uri.rawQuery());
+        assertEquals("1", uri.getParameter("id"));
+        assertEquals("a", uri.getParameter("name"));
+    }
+
+    @Test
+    public void pathWithoutQuery() {
+        uri.parse("/user/info");
+
+        assertEquals("/user/info", uri.path());
+        assertEquals("", uri.rawQuery());
+        assertNull(uri.getParameter("id"));
+        assertEquals(Collections.emptyMap(), uri.parameters());
+    }
+
+    @Test
+    public void dropsFragment() {
+        uri.parse("/a#frag");
+        assertEquals("/a", uri.path());
+        assertEquals("", uri.rawQuery());
+
+        uri.parse("/a?x=1#frag");
+        assertEquals("/a", uri.path());
+        assertEquals("x=1", uri.rawQuery());
+        assertEquals("1", uri.getParameter("x"));
+    }
+
+    @Test
+    public void parsesAbsoluteForm() {
+        uri.parse("http://example.com:8080/a/b?x=1");
+        assertEquals("/a/b", uri.path());
+        assertEquals("1", uri.getParameter("x"));
+
+        uri.parse("http://example.com");
+        assertEquals("/", uri.path());
+
+        uri.parse("http://example.com?x=2");
+        assertEquals("/", uri.path());
+        assertEquals("2", uri.getParameter("x"));
+    }
+
+    @Test
+    public void emptyUriHasEmptyPath() {
+        assertEquals("", uri.parse("").path());
+        assertEquals("", RequestUri.path(""));
+    }
+
+    @Test
+    public void decodesPathButKeepsPlus() {
+        assertEquals("/a b/c+d", uri.parse("/a%20b/c+d?q=1").path());
+        assertEquals("/café", RequestUri.path("/caf%C3%A9"));
+        assertEquals("/a+b", RequestUri.path("/a+b"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void malformedPathEscapeThrows() {
+        RequestUri.path("/a%zz");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void truncatedPathEscapeThrows() {
+        uri.parse("/a%2").path();
+    }
+
+    @Test
+    public void staticPathMatchesParsedPath() {
+        String[] uris = { "/", "/a/b?x=1", "/a%2Fb#f", "http://h/p?q", "http://h" };
+        for (String s : uris) {
+            assertEquals(s, uri.parse(s).path(), RequestUri.path(s));
+        }
+    }
+
+    @Test
+    public void decodesQueryValuesAndNames() {
+        uri.parse("/?q=a+b%26c&na%20me=v&plus=%2B");
+
+        assertEquals("a b&c", uri.getParameter("q"));
+        assertEquals("v", uri.getParameter("na me"));
+        assertEquals("+", uri.getParameter("plus"));
+    }
+
+    @Test
+    public void collectsRepeatedParameters() {
+        uri.parse("/?a=1&b=2&a=3");
+
+        assertEquals("1", uri.getParameter("a"));
+        assertEquals(Arrays.asList("1", "3"), uri.getParameters("a"));
+        assertEquals(Collections.emptyList(), uri.getParameters("c"));
+
+        Map<String, List<String>> parameters = uri.parameters();
+        assertEquals(Arrays.asList("a", "b"), Arrays.asList(parameters.keySet().toArray()));
+        assertEquals(Arrays.asList("1", "3"), parameters.get("a"));
+
+        assertEquals("1", uri.firstParameters().get("a"));
+        assertEquals("2", uri.firstParameters().get("b"));
+    }
+
+    @Test
+    public void handlesSeparatorsAndEmptyParts() {
+        uri.parse("/?a=1;b=2&&flag&=x&c=&d=e=f");
+
+        assertEquals("1", uri.getParameter("a"));
+        assertEquals("2", uri.getParameter("b"));
+        assertEquals("", uri.getParameter("flag"));
+        assertEquals("", uri.getParameter("c"));
+        assertEquals("e=f", uri.getParameter("d"));
+        assertEquals(5, uri.parameters().size());
+    }
+
+    @Test
+    public void limitsParameterCount() {
+        StringBuilder query = new StringBuilder("/?");
+        for (int i = 0; i < 1100; i++) {
+            query.append("p").append(i).append("=").append(i).append('&');
+        }
+        uri.parse(query.toString());
+
+        assertEquals(1024, uri.parameters().size());
+        assertEquals("1023", uri.getParameter("p1023"));
+        assertNull(uri.getParameter("p1024"));
+    }
+
+    @Test
+    public void reuseClearsPreviousRequest() {
+        uri.parse("/first?a=1&b=2");
+        assertEquals("1", uri.getParameter("a"));
+        assertEquals(2, uri.parameters().size());
+
+        uri.parse("/second?c=3");
+        assertEquals("/second", uri.path());
+        assertNull(uri.getParameter("a"));
+        assertEquals("3", uri.getParameter("c"));
+        assertEquals(1, uri.parameters().size());
+        assertEquals(1, uri.firstParameters().size());
+    }
+
+    @Test
+    public void parsesBareQuery() {
+        uri.parseQuery("a=1&b=2");
+        assertEquals("1", uri.getParameter("a"));
+        assertEquals("2", uri.getParameter("b"));
+
+        uri.parseQuery("/ignored?c=3#frag");
+        assertEquals("3", uri.getParameter("c"));
+        assertEquals("c=3", uri.rawQuery());
+    }
+}
@@ -0,0 +1,282 @@
+package com.fqserver.server;
+
+import io.netty.handler.codec.http.HttpMethod;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class RouteProcessorTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File sources;
+    private File classes;
+    private File generated;
+    private final DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+
+    /**
+     * 以RouteProcessor编译源文件(文件名 -> 内容成对给出), 返回是否编译成功
+     */
+    private boolean compile(List<String> options, String... files) throws IOException {
+        sources = folder.newFolder("src");
+        classes = folder.newFolder("classes");
+        generated = folder.newFolder("generated");
+
+        List<File> javaFiles = new ArrayList<File>();
+        for (int i = 0; i < files.length; i += 2) {
+            File file = new File(sources, files[i]);
+            file.getParentFile().mkdirs();
+            Files.write(file.toPath(), files[i + 1].getBytes(StandardCharsets.UTF_8));
+            javaFiles.add(file);
+        }
+
+        // surefire以manifest jar启动时java.class.path中只有一个jar
+        String classpath = System.getProperty("surefire.test.class.path", System.getProperty("java.class.path"));
+        List<String> args = new ArrayList<String>(Arrays.asList("-classpath",
+                                                                classpath,
+                                                                "-d",
+                                                                classes.getPath(),
+                                                                "-s",
+                                                                generated.getPath(),
+                                                                "-processor",
+                                                                RouteProcessor.class.getName()));
+        args.addAll(options);
+
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        StandardJavaFileManager fileManager = compiler.getStandardFileManager(diagnostics,
+                                                                              Locale.ROOT,
+                                                                              StandardCharsets.UTF_8);
+        try {
+            return compiler.getTask(null,
+                                    fileManager,
+                                    diagnostics,
+                                    args,
+                                    null,
+                                    fileManager.getJavaFileObjectsFromFiles(javaFiles)).call();
+        }
+        finally {
+            fileManager.close();
+        }
+    }
+
+    private boolean compile(String... files) throws IOException {
+        return compile(new ArrayList<String>(), files);
+    }
+
+    private static String handler(String pkg, String annotation, String name) {
+        return "package " + pkg + ";\n"
+               + annotation + "\n"
+               + "public class " + name + " extends com.fqserver.server.RequestHandler {}\n";
+    }
+
+    private String errors() {
+        StringBuilder sb = new StringBuilder();
+        for (Diagnostic<? extends JavaFileObject> d : diagnostics.getDiagnostics()) {
+            if (d.getKind() == Diagnostic.Kind.ERROR) {
+                sb.append(d.getMessage(Locale.ROOT)).append('\n');
+            }
+        }
+        return sb.toString();
+    }
+
+    private String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+
+    private void assertError(String message, String... files) throws IOException {
+        assertFalse(compile(files));
+        assertTrue(errors(), errors().contains(message));
+        assertFalse(new File(classes, "META-INF/services/" + RouteTable.class.getName()).exists());
+    }
+
+    @Test
+    public void generatesTableInFirstPackage() throws IOException {
+        assertTrue(errors(),
+                   compile("b/Second.java",
+                           handler("b", "@com.fqserver.server.Route(path = \"/processor-test/second\")", "Second"),
+                           "a/First.java",
+                           handler("a", "@com.fqserver.server.Route(path = \"/processor-test/first\")", "First")));
+
+        assertTrue(new File(generated, "a/GeneratedRouteTable.java").isFile());
+        assertEquals("a.GeneratedRouteTable\n",
+                     read(new File(classes, "META-INF/services/" + RouteTable.class.getName())));
+    }
+
+    @Test
+    public void usesConfiguredTableName() throws IOException {
+        assertTrue(errors(),
+                   compile(Arrays.asList("-A" + RouteProcessor.TABLE_OPTION + "=routes.AppRoutes"),
+                           "a/First.java",
+                           handler("a", "@com.fqserver.server.Route(path = \"/processor-test/first\")", "First")));
+
+        assertTrue(new File(generated, "routes/AppRoutes.java").isFile());
+        assertTrue(new File(classes, "routes/AppRoutes.class").isFile());
+        assertEquals("routes.AppRoutes\n",
+                     read(new File(classes, "META-INF/services/" + RouteTable.class.getName())));
+    }
+
+    @Test
+    public void registersRoutesAndFactories() throws Exception {
+        assertTrue(errors(),
+                   compile("demo/Users.java",
+                           "package demo;\n"
+                                   + "import com.fqserver.server.RequestHandler;\n"
+                                   + "import com.fqserver.server.Route;\n"
+                                   + "public class Users {\n"
+                                   + "    @Route(path = \"/processor-test/user/{id}\", methods = { \"get\", \"DELETE\" })\n"
+                                   + "    public static class User extends RequestHandler {}\n"
+                                   + "    @Route(path = { \"/processor-test/users\", \"/processor-test/people/*\" })\n"
+                                   + "    public static class List extends RequestHandler {}\n"
+                                   + "}\n"));
+
+        String table = read(new File(generated, "demo/GeneratedRouteTable.java"));
+        assertFalse(table, table.contains("newInstance"));
+        assertTrue(table, table.contains("return new demo.Users.User();"));
+
+        URLClassLoader loader = new URLClassLoader(new URL[] { classes.toURI().toURL() },
+                                                   getClass().getClassLoader());
+        try {
+            RouteTable routes = (RouteTable) loader.loadClass("demo.GeneratedRouteTable").newInstance();
+            routes.register();
+            UrlMap.compile();
+
+            Class<?> user = loader.loadClass("demo.Users$User");
+            Class<?> list = loader.loadClass("demo.Users$List");
+
+            Router.Match match = UrlMap.match(HttpMethod.GET, "/processor-test/user/7");
+            assertSame(user, match.getHandler());
+            assertEquals("7", match.getParam("id"));
+            assertSame(user, UrlMap.match(HttpMethod.DELETE, "/processor-test/user/7").getHandler());
+            assertNull(UrlMap.match(HttpMethod.POST, "/processor-test/user/7"));
+
+            assertSame(list, UrlMap.match(HttpMethod.POST, "/processor-test/users").getHandler());
+            match = UrlMap.match(HttpMethod.GET, "/processor-test/people/a/b");
+            assertSame(list, match.getHandler());
+
+            RequestHandler handler = match.getRoute().newHandler();
+            assertNotNull(handler);
+            assertSame(list, handler.getClass());
+        }
+        finally {
+            loader.close();
+        }
+    }
+
+    @Test
+    public void splitsLargeTablesIntoChunks() throws Exception {
+        // 单个register方法放不下3000个路由(code too large)
+        int count = 3000;
+        StringBuilder source = new StringBuilder("package big;\npublic class Handlers {\n");
+        for (int i = 0; i < count; i++) {
+            source.append("    @com.fqserver.server.Route(path = \"/processor-test/big/").append(i).append("\")\n")
+                  .append("    public static class H").append(i)
+                  .append(" extends com.fqserver.server.RequestHandler {}\n");
+        }
+        source.append("}\n");
+        assertTrue(errors(), compile("big/Handlers.java", source.toString()));
+
+        String table = read(new File(generated, "big/GeneratedRouteTable.java"));
+        assertTrue(table.contains("private static void register5()"));
+        assertFalse(table.contains("register6"));
+
+        URLClassLoader loader = new URLClassLoader(new URL[] { classes.toURI().toURL() },
+                                                   getClass().getClassLoader());
+        try {
+            RouteTable routes = (RouteTable) loader.loadClass("big.GeneratedRouteTable").newInstance();
+            routes.register();
+            UrlMap.compile();
+
+            for (int i : new int[] { 0, 499, 500, count - 1 }) {
+                Router.Match match = UrlMap.match(HttpMethod.GET, "/processor-test/big/" + i);
+                assertSame(loader.loadClass("big.Handlers$H" + i), match.getHandler());
+                assertSame(match.getHandler(), match.getRoute().newHandler().getClass());
+            }
+        }
+        finally {
+            loader.close();
+        }
+    }
+
+    @Test
+    public void rejectsClassNotExtendingRequestHandler() throws IOException {
+        assertError("must extend",
+                    "a/Plain.java",
+                    "package a;\n@com.fqserver.server.Route(path = \"/plain\")\npublic class Plain {}\n");
+    }
+
+    @Test
+    public void rejectsNonPublicClass() throws IOException {
+        assertError("must be public",
+                    "a/Hidden.java",
+                    "package a;\n@com.fqserver.server.Route(path = \"/hidden\")\n"
+                            + "class Hidden extends com.fqserver.server.RequestHandler {}\n");
+    }
+
+    @Test
+    public void rejectsInnerClass() throws IOException {
+        assertError("must be static",
+                    "a/Outer.java",
+                    "package a;\npublic class Outer {\n"
+                            + "    @com.fqserver.server.Route(path = \"/inner\")\n"
+                            + "    public class Inner extends com.fqserver.server.RequestHandler {}\n}\n");
+    }
+
+    @Test
+    public void rejectsMissingNoArgConstructor() throws IOException {
+        assertError("no-arg constructor",
+                    "a/Args.java",
+                    "package a;\n@com.fqserver.server.Route(path = \"/args\")\n"
+                            + "public class Args extends com.fqserver.server.RequestHandler {\n"
+                            + "    public Args(int value) {}\n}\n");
+    }
+
+    @Test
+    public void rejectsRelativePath() throws IOException {
+        assertError("must start with '/'",
+                    "a/Relative.java",
+                    handler("a", "@com.fqserver.server.Route(path = \"relative\")", "Relative"));
+    }
+
+    @Test
+    public void rejectsUnknownMethod() throws IOException {
+        assertError("unknown route method: FETCH",
+                    "a/Fetch.java",
+                    handler("a", "@com.fqserver.server.Route(path = \"/fetch\", methods = \"fetch\")", "Fetch"));
+    }
+
+    @Test
+    public void rejectsDuplicateRoutes() throws IOException {
+        assertError("duplicate route: GET /same",
+                    "a/First.java",
+                    handler("a", "@com.fqserver.server.Route(path = \"/same\", methods = \"GET\")", "First"),
+                    "a/Second.java",
+                    handler("a", "@com.fqserver.server.Route(path = \"/same\", methods = \"get\")", "Second"));
+    }
+}
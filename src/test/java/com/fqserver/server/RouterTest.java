@@ -0,0 +1,225 @@
+package com.fqserver.server;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class RouterTest {
+
+    public static class Info extends RequestHandler {}
+
+    public static class User extends RequestHandler {}
+
+    public static class Me extends RequestHandler {}
+
+    public static class Edit extends RequestHandler {}
+
+    public static class New extends RequestHandler {}
+
+    public static class File extends RequestHandler {}
+
+    public static class Files extends RequestHandler {}
+
+    public static class Static extends RequestHandler {}
+
+    public static class Images extends RequestHandler {}
+
+    public static class Root extends RequestHandler {}
+
+    public static class Post extends RequestHandler {}
+
+    private Map<String, Class<? extends RequestHandler>> any;
+    private Map<String, Map<String, Class<? extends RequestHandler>>> methods;
+    private Map<Class<?>, Supplier<? extends RequestHandler>> factories;
+
+    @Before
+    public void setUp() {
+        any = new LinkedHashMap<String, Class<? extends RequestHandler>>();
+        methods = new LinkedHashMap<String, Map<String, Class<? extends RequestHandler>>>();
+        factories = new HashMap<Class<?>, Supplier<? extends RequestHandler>>();
+    }
+
+    private Router router() {
+        return new Router(any, methods, factories);
+    }
+
+    private void put(String method, String pattern, Class<? extends RequestHandler> cls) {
+        Map<String, Class<? extends RequestHandler>> routes = methods.get(method);
+        if (routes == null) {
+            routes = new LinkedHashMap<String, Class<? extends RequestHandler>>();
+            methods.put(method, routes);
+        }
+        routes.put(pattern, cls);
+    }
+
+    private static Class<? extends RequestHandler> handler(Router router, String method, String path) {
+        Router.Match match = router.find(method, path);
+        return match != null ? match.getHandler() : null;
+    }
+
+    @Test
+    public void matchesStaticPath() {
+        any.put("/user/info", Info.class);
+        Router router = router();
+
+        assertSame(Info.class, handler(router, "GET", "/user/info"));
+        assertNull(router.find("GET", "/user/info/"));
+        assertNull(router.find("GET", "/user"));
+        assertNull(router.find("GET", "/user/other"));
+    }
+
+    @Test
+    public void rejectsPathsWithoutLeadingSlash() {
+        any.put("/*", Root.class);
+        Router router = router();
+
+        assertNull(router.find("GET", null));
+        assertNull(router.find("GET", "user"));
+        assertSame(Root.class, handler(router, "GET", "/"));
+    }
+
+    @Test
+    public void capturesPathParams() {
+        any.put("/user/{id}/book/{book}", User.class);
+        Router router = router();
+
+        Router.Match match = router.find("GET", "/user/42/book/7");
+        assertSame(User.class, match.getHandler());
+        assertEquals("42", match.getParam("id"));
+        assertEquals("7", match.getParam("book"));
+        assertNull(match.getParam("other"));
+    }
+
+    @Test
+    public void pathParamDoesNotMatchEmptySegment() {
+        any.put("/user/{id}/info", User.class);
+        Router router = router();
+
+        assertNull(router.find("GET", "/user//info"));
+    }
+
+    @Test
+    public void staticSegmentWinsOverParam() {
+        any.put("/user/{id}", User.class);
+        any.put("/user/me", Me.class);
+        Router router = router();
+
+        assertSame(Me.class, handler(router, "GET", "/user/me"));
+        assertSame(User.class, handler(router, "GET", "/user/you"));
+    }
+
+    @Test
+    public void fallsBackToParamWhenStaticBranchFails() {
+        any.put("/item/new", New.class);
+        any.put("/item/{id}/edit", Edit.class);
+        Router router = router();
+
+        Router.Match match = router.find("GET", "/item/new/edit");
+        assertSame(Edit.class, match.getHandler());
+        assertEquals("new", match.getParam("id"));
+        assertSame(New.class, handler(router, "GET", "/item/new"));
+    }
+
+    @Test
+    public void paramWinsOverWildcard() {
+        any.put("/files/*", Files.class);
+        any.put("/files/{name}", File.class);
+        Router router = router();
+
+        assertSame(File.class, handler(router, "GET", "/files/a.txt"));
+        assertSame(Files.class, handler(router, "GET", "/files/dir/a.txt"));
+        assertSame(Files.class, handler(router, "GET", "/files/"));
+    }
+
+    @Test
+    public void longerWildcardPrefixWins() {
+        any.put("/*", Root.class);
+        any.put("/static/*", Static.class);
+        any.put("/static/img/*", Images.class);
+        Router router = router();
+
+        assertSame(Images.class, handler(router, "GET", "/static/img/a.png"));
+        assertSame(Static.class, handler(router, "GET", "/static/css/a.css"));
+        assertSame(Root.class, handler(router, "GET", "/static"));
+        assertSame(Root.class, handler(router, "GET", "/other/path"));
+    }
+
+    @Test
+    public void methodRouteWinsOverAnyMethod() {
+        any.put("/form", Info.class);
+        put("POST", "/form", Post.class);
+        Router router = router();
+
+        assertSame(Post.class, handler(router, "POST", "/form"));
+        assertSame(Info.class, handler(router, "GET", "/form"));
+        assertSame(Info.class, handler(router, null, "/form"));
+    }
+
+    @Test
+    public void methodOnlyRouteDoesNotMatchOtherMethods() {
+        put("POST", "/form", Post.class);
+        Router router = router();
+
+        assertSame(Post.class, handler(router, "POST", "/form"));
+        assertNull(router.find("GET", "/form"));
+        assertNull(router.find(null, "/form"));
+    }
+
+    @Test
+    public void ignoresInvalidPatterns() {
+        any.put("user", User.class);
+        any.put("/info", Info.class);
+        Router router = router();
+
+        assertEquals(1, router.routes().size());
+        assertEquals("/info", router.routes().get(0).getPattern());
+    }
+
+    @Test
+    public void createsHandlersFromFactoryOrReflection() {
+        final Me me = new Me();
+        any.put("/me", Me.class);
+        any.put("/info", Info.class);
+        factories.put(Me.class, new Supplier<Me>() {
+            @Override
+            public Me get() {
+                return me;
+            }
+        });
+        Router router = router();
+
+        assertSame(me, router.find("GET", "/me").getRoute().newHandler());
+        assertTrue(router.find("GET", "/info").getRoute().newHandler() instanceof Info);
+    }
+
+    @Test
+    public void sharesMatchForRoutesWithoutParams() {
+        any.put("/info", Info.class);
+        Router router = router();
+
+        assertSame(router.find("GET", "/info"), router.find("POST", "/info"));
+    }
+
+    @Test
+    public void countsHitsPerRoute() {
+        any.put("/info", Info.class);
+        put("POST", "/form", Post.class);
+        Router router = router();
+
+        router.find("GET", "/info").getRoute().hit();
+        router.find("GET", "/info").getRoute().hit();
+
+        Map<String, Object> stats = router.stats();
+        assertEquals(2L, stats.get("1 * /info"));
+        assertEquals(0L, stats.get("2 POST /form"));
+    }
+}
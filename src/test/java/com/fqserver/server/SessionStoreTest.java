@@ -0,0 +1,185 @@
+package com.fqserver.server;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class SessionStoreTest {
+
+    private static final int TIMEOUT = 60;
+
+    private static SessionStore store(int maxSize) {
+        return new SessionStore(maxSize, TIMEOUT, "SESSIONID");
+    }
+
+    /**
+     * 把session的访问时间设为secondsAgo秒之前
+     */
+    private static void age(Session session, int secondsAgo) {
+        session.access(System.currentTimeMillis() - secondsAgo * 1000L);
+    }
+
+    private static long stat(SessionStore store, String name) {
+        return (Long) store.stats().get(name);
+    }
+
+    @Test
+    public void notCreatedWithoutMaxSize() {
+        NettyConfig config = new NettyConfig();
+        config.sessionMaxSize = 0;
+        assertNull(SessionStore.create(config));
+
+        config.sessionMaxSize = 10;
+        assertEquals(config.sessionCookieName, SessionStore.create(config).getCookieName());
+    }
+
+    @Test
+    public void getsCreatedSession() {
+        SessionStore store = store(10);
+        Session session = store.create();
+
+        assertSame(session, store.get(session.getId()));
+        assertNull(store.get(null));
+        assertNull(store.get("unknown"));
+        assertEquals(1, store.size());
+        assertEquals(1L, stat(store, "created"));
+    }
+
+    @Test
+    public void createsUniqueUrlSafeIds() {
+        SessionStore store = store(1000);
+        Set<String> ids = new HashSet<String>();
+        for (int i = 0; i < 1000; i++) {
+            String id = store.create().getId();
+            assertEquals(22, id.length());
+            assertTrue(id, id.matches("[A-Za-z0-9_-]+"));
+            ids.add(id);
+        }
+        assertEquals(1000, ids.size());
+    }
+
+    @Test
+    public void getUpdatesAccessTime() {
+        SessionStore store = store(10);
+        Session session = store.create();
+        age(session, TIMEOUT - 1);
+
+        assertSame(session, store.get(session.getId()));
+        assertTrue(System.currentTimeMillis() - session.getLastAccessedTime() < 1000);
+    }
+
+    @Test
+    public void expiresIdleSessionOnGet() {
+        SessionStore store = store(10);
+        Session session = store.create();
+        session.setAttribute("user", "a");
+        age(session, TIMEOUT + 1);
+
+        assertNull(store.get(session.getId()));
+        assertFalse(session.isValid());
+        assertNull(session.getAttribute("user"));
+        assertEquals(0, store.size());
+        assertEquals(1L, stat(store, "expired"));
+    }
+
+    @Test
+    public void sweepRemovesOnlyExpiredSessions() {
+        SessionStore store = store(10);
+        Session idle = store.create();
+        Session active = store.create();
+        age(idle, TIMEOUT + 1);
+        age(active, TIMEOUT - 1);
+
+        store.sweep();
+
+        assertFalse(idle.isValid());
+        assertTrue(active.isValid());
+        assertEquals(1, store.size());
+        assertEquals(1L, stat(store, "expired"));
+    }
+
+    @Test
+    public void invalidateRemovesSession() {
+        SessionStore store = store(10);
+        Session session = store.create();
+
+        session.invalidate();
+        session.invalidate();
+
+        assertFalse(session.isValid());
+        assertNull(store.get(session.getId()));
+        assertEquals(1L, stat(store, "invalidated"));
+    }
+
+    @Test
+    public void evictsLeastRecentlyAccessedWhenFull() {
+        SessionStore store = store(4);
+        List<Session> sessions = new ArrayList<Session>();
+        for (int i = 0; i < 4; i++) {
+            Session session = store.create();
+            age(session, 10 + i);
+            sessions.add(session);
+        }
+
+        store.create();
+
+        assertEquals(4, store.size());
+        assertFalse(sessions.get(3).isValid());
+        for (int i = 0; i < 3; i++) {
+            assertTrue(sessions.get(i).isValid());
+        }
+        assertEquals(1L, stat(store, "evicted"));
+    }
+
+    @Test
+    public void evictsExpiredBeforeActive() {
+        SessionStore store = store(4);
+        List<Session> sessions = new ArrayList<Session>();
+        for (int i = 0; i < 4; i++) {
+            sessions.add(store.create());
+        }
+        age(sessions.get(0), 30);
+        age(sessions.get(1), TIMEOUT + 1);
+        age(sessions.get(2), TIMEOUT + 2);
+
+        store.create();
+
+        assertEquals(3, store.size());
+        assertTrue(sessions.get(0).isValid());
+        assertFalse(sessions.get(1).isValid());
+        assertFalse(sessions.get(2).isValid());
+        assertEquals(2L, stat(store, "expired"));
+        assertEquals(0L, stat(store, "evicted"));
+    }
+
+    @Test
+    public void staysWithinMaxSizeWhenSampling() {
+        SessionStore store = store(1024);
+        for (int i = 0; i < 1024; i++) {
+            age(store.create(), 1 + i % (TIMEOUT - 1));
+        }
+
+        for (int i = 0; i < 1000; i++) {
+            store.create();
+        }
+
+        assertEquals(1024, store.size());
+        assertEquals(1000L, stat(store, "evicted"));
+    }
+
+    @Test
+    public void sweepsAtMostEveryMinute() {
+        assertEquals(60000, store(10).sweepInterval());
+        assertEquals(5000, new SessionStore(10, 5, "SESSIONID").sweepInterval());
+        assertEquals(1000, new SessionStore(10, 0, "SESSIONID").sweepInterval());
+    }
+}
@@ -0,0 +1,157 @@
+package com.fqserver.server;
+
+import io.netty.handler.codec.DateFormatter;
+import io.netty.handler.codec.http.DefaultHttpHeaders;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaders;
+
+import java.util.Date;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class StaticFileRequestHandlerTest {
+
+    private static final long LENGTH = 100;
+
+    private static final String ETAG = "\"64-abc\"";
+
+    // 毫秒部分在HTTP日期中丢失
+    private static final long LAST_MODIFIED = 1500000000123L;
+
+    private static HttpHeaders headers(CharSequence name, Object value) {
+        return new DefaultHttpHeaders().set(name, value);
+    }
+
+    private static String date(long millis) {
+        return DateFormatter.format(new Date(millis));
+    }
+
+    @Test
+    public void parsesClosedRange() {
+        assertArrayEquals(new long[] { 0, 9 }, StaticFileRequestHandler.parseRange("bytes=0-9", LENGTH));
+        assertArrayEquals(new long[] { 5, 5 }, StaticFileRequestHandler.parseRange("bytes=5-5", LENGTH));
+    }
+
+    @Test
+    public void clampsEndToLastByte() {
+        assertArrayEquals(new long[] { 50, 99 }, StaticFileRequestHandler.parseRange("bytes=50-1000", LENGTH));
+    }
+
+    @Test
+    public void parsesOpenRange() {
+        assertArrayEquals(new long[] { 90, 99 }, StaticFileRequestHandler.parseRange("bytes=90-", LENGTH));
+    }
+
+    @Test
+    public void parsesSuffixRange() {
+        assertArrayEquals(new long[] { 90, 99 }, StaticFileRequestHandler.parseRange("bytes=-10", LENGTH));
+        assertArrayEquals(new long[] { 0, 99 }, StaticFileRequestHandler.parseRange("bytes=-1000", LENGTH));
+    }
+
+    @Test
+    public void ignoresEndBeforeStart() {
+        assertEquals(0, StaticFileRequestHandler.parseRange("bytes=5-3", LENGTH).length);
+    }
+
+    @Test
+    public void ignoresInvalidOrMultipleRanges() {
+        assertEquals(0, StaticFileRequestHandler.parseRange("items=0-9", LENGTH).length);
+        assertEquals(0, StaticFileRequestHandler.parseRange("bytes=0-9,20-29", LENGTH).length);
+        assertEquals(0, StaticFileRequestHandler.parseRange("bytes=a-9", LENGTH).length);
+        assertEquals(0, StaticFileRequestHandler.parseRange("bytes=10", LENGTH).length);
+        assertEquals(0, StaticFileRequestHandler.parseRange("bytes=-", LENGTH).length);
+    }
+
+    @Test
+    public void rejectsUnsatisfiableRange() {
+        assertNull(StaticFileRequestHandler.parseRange("bytes=100-", LENGTH));
+        assertNull(StaticFileRequestHandler.parseRange("bytes=200-300", LENGTH));
+        assertNull(StaticFileRequestHandler.parseRange("bytes=-0", LENGTH));
+    }
+
+    @Test
+    public void modifiedWithoutConditions() {
+        assertFalse(StaticFileRequestHandler.isNotModified(new DefaultHttpHeaders(), ETAG, LAST_MODIFIED));
+    }
+
+    @Test
+    public void notModifiedWhenEtagMatches() {
+        assertTrue(StaticFileRequestHandler.isNotModified(headers(HttpHeaderNames.IF_NONE_MATCH, ETAG),
+                                                          ETAG,
+                                                          LAST_MODIFIED));
+        assertTrue(StaticFileRequestHandler.isNotModified(headers(HttpHeaderNames.IF_NONE_MATCH,
+                                                                  "\"other\", W/" + ETAG),
+                                                          ETAG,
+                                                          LAST_MODIFIED));
+        assertTrue(StaticFileRequestHandler.isNotModified(headers(HttpHeaderNames.IF_NONE_MATCH, " * "),
+                                                          ETAG,
+                                                          LAST_MODIFIED));
+        assertFalse(StaticFileRequestHandler.isNotModified(headers(HttpHeaderNames.IF_NONE_MATCH, "\"other\""),
+                                                           ETAG,
+                                                           LAST_MODIFIED));
+    }
+
+    @Test
+    public void notModifiedSinceSameSecond() {
+        assertTrue(StaticFileRequestHandler.isNotModified(headers(HttpHeaderNames.IF_MODIFIED_SINCE,
+                                                                  date(LAST_MODIFIED)),
+                                                          ETAG,
+                                                          LAST_MODIFIED));
+        assertTrue(StaticFileRequestHandler.isNotModified(headers(HttpHeaderNames.IF_MODIFIED_SINCE,
+                                                                  date(LAST_MODIFIED + 60000)),
+                                                          ETAG,
+                                                          LAST_MODIFIED));
+        assertFalse(StaticFileRequestHandler.isNotModified(headers(HttpHeaderNames.IF_MODIFIED_SINCE,
+                                                                   date(LAST_MODIFIED - 1000)),
+                                                           ETAG,
+                                                           LAST_MODIFIED));
+        assertFalse(StaticFileRequestHandler.isNotModified(headers(HttpHeaderNames.IF_MODIFIED_SINCE, "yesterday"),
+                                                           ETAG,
+                                                           LAST_MODIFIED));
+    }
+
+    @Test
+    public void etagTakesPrecedenceOverDate() {
+        HttpHeaders headers = headers(HttpHeaderNames.IF_NONE_MATCH, "\"other\"");
+        headers.set(HttpHeaderNames.IF_MODIFIED_SINCE, date(LAST_MODIFIED));
+        assertFalse(StaticFileRequestHandler.isNotModified(headers, ETAG, LAST_MODIFIED));
+    }
+
+    @Test
+    public void rangeFreshWithoutIfRange() {
+        assertTrue(StaticFileRequestHandler.isRangeFresh(new DefaultHttpHeaders(), ETAG, LAST_MODIFIED));
+    }
+
+    @Test
+    public void rangeFreshWhenIfRangeMatches() {
+        assertTrue(StaticFileRequestHandler.isRangeFresh(headers(HttpHeaderNames.IF_RANGE, ETAG),
+                                                         ETAG,
+                                                         LAST_MODIFIED));
+        assertTrue(StaticFileRequestHandler.isRangeFresh(headers(HttpHeaderNames.IF_RANGE, date(LAST_MODIFIED)),
+                                                         ETAG,
+                                                         LAST_MODIFIED));
+    }
+
+    @Test
+    public void rangeIgnoredWhenIfRangeIsStale() {
+        assertFalse(StaticFileRequestHandler.isRangeFresh(headers(HttpHeaderNames.IF_RANGE, "\"other\""),
+                                                          ETAG,
+                                                          LAST_MODIFIED));
+        assertFalse(StaticFileRequestHandler.isRangeFresh(headers(HttpHeaderNames.IF_RANGE, "W/" + ETAG),
+                                                          ETAG,
+                                                          LAST_MODIFIED));
+        assertFalse(StaticFileRequestHandler.isRangeFresh(headers(HttpHeaderNames.IF_RANGE,
+                                                                  date(LAST_MODIFIED + 60000)),
+                                                          ETAG,
+                                                          LAST_MODIFIED));
+        assertFalse(StaticFileRequestHandler.isRangeFresh(headers(HttpHeaderNames.IF_RANGE, "yesterday"),
+                                                          ETAG,
+                                                          LAST_MODIFIED));
+    }
+}